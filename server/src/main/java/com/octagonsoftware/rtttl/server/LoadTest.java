@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl.server;
+
+import com.octagonsoftware.rtttl.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the latency and throughput of an {@link RTTTLServer} endpoint by sending the same request from several
+ * client threads for a fixed time.
+ * <p>
+ * Run from the command line, with the rtttl jar in the same directory, it starts a server on the loopback interface
+ * and prints the results:
+ * <pre>
+ * java -jar rtttl-server.jar [endpoint [clients [seconds [serverThreads]]]]
+ * </pre>
+ */
+public class LoadTest
+{
+    /** Tune sent by the command line load test */
+    public static final String DEFAULT_TUNE =
+        "Simpsons:d=4,o=5,b=160:32p,c.6,e6,f#6,8a6,g.6,e6,c6,8a,8f#,8f#,8f#,2g";
+
+    /** Results of a load test */
+    public static class Result
+    {
+        /** Latency of each successful request, in nanoseconds */
+        public final LatencyHistogram latency;
+
+        /** Number of requests that failed */
+        public final long failureCount;
+
+        /** Length of the test, in nanoseconds */
+        public final long elapsedNanos;
+
+        Result(LatencyHistogram latency, long failureCount, long elapsedNanos) {
+            this.latency = latency;
+            this.failureCount = failureCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** Returns the number of successful requests per second */
+        public double requestsPerSecond() {
+            return latency.count() * 1e9 / elapsedNanos;
+        }
+
+        @Override public String toString() {
+            return String.format(Locale.ROOT, "%d requests, %d failed, %.1f requests/s, p50 %.3f ms, p99 %.3f ms, " +
+                "max %.3f ms", latency.count(), failureCount, requestsPerSecond(),
+                latency.valueAtPercentile(50.0) / 1e6, latency.valueAtPercentile(99.0) / 1e6, latency.max() / 1e6);
+        }
+    }
+
+    /**
+     * Sends POST requests with the given body to the given URL from several threads until the time is up.
+     *
+     * @param url The URL to send requests to
+     * @param body The body of each request
+     * @param clientCount The number of client threads. Must be greater than 0.
+     * @param durationMillis The length of the test, in milliseconds
+     * @return The results
+     * @throws InterruptedException If interrupted while waiting for the clients.
+     */
+    public static Result run(final URL url, final byte[] body, int clientCount, long durationMillis)
+        throws InterruptedException
+    {
+        if (clientCount <= 0) {
+            throw new IllegalArgumentException("clientCount must be > 0.");
+        }
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failureCount = new AtomicLong();
+        long start = System.nanoTime();
+        final long deadline = start + durationMillis * 1000000L;
+        List<Thread> clients = new ArrayList<Thread>();
+        for (int i = 0; i < clientCount; i++) {
+            Thread client = new Thread("rtttl-load-" + i) {
+                @Override public void run() {
+                    byte[] buffer = new byte[8192];
+                    while (System.nanoTime() < deadline) {
+                        long requestStart = System.nanoTime();
+                        try {
+                            if (send(url, body, buffer)) {
+                                latency.record(System.nanoTime() - requestStart);
+                            } else {
+                                failureCount.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failureCount.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return new Result(latency, failureCount.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Sends one request and reads the whole response, returning whether it succeeded.
+     */
+    private static boolean send(URL url, byte[] body, byte[] buffer)
+        throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        OutputStream out = connection.getOutputStream();
+        out.write(body);
+        out.close();
+        int status = connection.getResponseCode();
+        InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            // Read to the end so the connection can be reused
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+            in.close();
+        }
+        return status == 200;
+    }
+
+    /**
+     * Starts a server on the loopback interface, runs a load test against one endpoint and prints the results.
+     */
+    public static void main(String[] args)
+        throws IOException, InterruptedException
+    {
+        String endpoint = args.length > 0 ? args[0] : "parse";
+        int clientCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int serverThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(serverThreads);
+        RTTTLServer server = new RTTTLServer(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0),
+            executor);
+        server.start();
+        try {
+            URL url = new URL("http", "127.0.0.1", server.address().getPort(), "/" + endpoint);
+            byte[] body = DEFAULT_TUNE.getBytes("UTF-8");
+            // Warm up the server and the caches before measuring
+            run(url, body, clientCount, 1000);
+            System.out.println("/" + endpoint + ": " + run(url, body, clientCount, seconds * 1000L));
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl.server;
+
+import com.octagonsoftware.rtttl.ParseLimits;
+import com.octagonsoftware.rtttl.RTTTLEncoder;
+import com.octagonsoftware.rtttl.RTTTLParser;
+import com.octagonsoftware.rtttl.RenderCache;
+import com.octagonsoftware.rtttl.Tone;
+import com.octagonsoftware.rtttl.ToneRenderer;
+import com.octagonsoftware.rtttl.ToneSequence;
+import com.octagonsoftware.rtttl.Waveform;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small HTTP service that parses, encodes and renders RTTTL tunes, built on the JDK's {@code com.sun.net.httpserver}.
+ * <p>
+ * Every endpoint takes an RTTTL string as the body of a POST request, and accepts an optional {@code transpose}
+ * query parameter giving a number of semitones:
+ * <ul>
+ * <li>{@code /parse} returns the parsed tune as JSON.</li>
+ * <li>{@code /encode} returns the tune as normalized RTTTL text.</li>
+ * <li>{@code /render} returns the tune as a 16-bit mono WAV file, with optional {@code sampleRate} and
+ * {@code waveform} parameters.</li>
+ * </ul>
+ * Invalid tunes and parameters get a 400 response with a message. Parsed tunes are kept in an LRU cache keyed by
+ * the request body, whose estimated heap use is kept within a limit in bytes, and rendered samples in a
+ * {@link RenderCache}, so popular tunes are parsed and rendered once.
+ * <p>
+ * Requests run on the executor given to the constructor. On JDKs with virtual threads, an executor that starts a
+ * virtual thread per task lets slow clients cost almost nothing while they wait; otherwise a fixed pool bounds the
+ * number of requests handled at once.
+ * <p>
+ * Instances are thread safe.
+ */
+public class RTTTLServer
+{
+    /** Limits applied to request bodies if not specified */
+    public static final ParseLimits DEFAULT_LIMITS = new ParseLimits(16384, 2000, 100, 100, 300.0f);
+
+    /** Estimated heap use of the parse cache if not specified, in bytes */
+    public static final long DEFAULT_PARSE_CACHE_BYTES = 16L << 20;
+
+    /** Estimated heap use of a parse cache entry, besides its body and tones, in bytes */
+    private static final int PARSE_CACHE_ENTRY_BYTES = 160;
+
+    /** Estimated heap use of each tone of a parse cache entry, in bytes */
+    private static final int PARSE_CACHE_TONE_BYTES = 32;
+
+    /** Size of the render cache if not specified, in bytes */
+    public static final long DEFAULT_RENDER_CACHE_BYTES = 64L << 20;
+
+    /** Lowest sample rate accepted by the render endpoint, in hz */
+    public static final int MIN_SAMPLE_RATE = 4000;
+
+    /** Highest sample rate accepted by the render endpoint, in hz */
+    public static final int MAX_SAMPLE_RATE = 96000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+
+    private final ParseLimits limits;
+
+    private final RTTTLParser parser;
+
+    private final RTTTLEncoder encoder = new RTTTLEncoder();
+
+    private final RenderCache renderCache;
+
+    /** Parsed tunes by request body, least recently used first, guarded by itself */
+    private final LinkedHashMap<String, ToneSequence> parseCache =
+        new LinkedHashMap<String, ToneSequence>(16, 0.75f, true);
+
+    private final long maxParseCacheBytes;
+
+    /** Estimated heap use of the parse cache, guarded by parseCache */
+    private long parseCacheBytes;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private final AtomicLong parseCacheHitCount = new AtomicLong();
+
+    /**
+     * Creates a server with the default limits and cache sizes. The server listens once started.
+     *
+     * @param address The address to listen on; port 0 chooses a free port
+     * @param executor The executor that runs requests
+     * @throws IOException If the address cannot be bound.
+     */
+    public RTTTLServer(InetSocketAddress address, Executor executor)
+        throws IOException
+    {
+        this(address, executor, DEFAULT_LIMITS, DEFAULT_PARSE_CACHE_BYTES,
+            new RenderCache(DEFAULT_RENDER_CACHE_BYTES, false));
+    }
+
+    /**
+     * Creates a server. The server listens once started.
+     *
+     * @param address The address to listen on; port 0 chooses a free port
+     * @param executor The executor that runs requests
+     * @param limits The limits applied to request bodies
+     * @param parseCacheBytes The estimated heap use of the cache of parsed tunes, in bytes. Must be at least 0.
+     * @param renderCache The cache of rendered samples
+     * @throws IOException If the address cannot be bound.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public RTTTLServer(InetSocketAddress address, Executor executor, ParseLimits limits, long parseCacheBytes,
+        RenderCache renderCache)
+        throws IOException
+    {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        if (limits == null) {
+            throw new IllegalArgumentException("limits cannot be null.");
+        }
+        if (parseCacheBytes < 0) {
+            throw new IllegalArgumentException("parseCacheBytes must be >= 0.");
+        }
+        if (renderCache == null) {
+            throw new IllegalArgumentException("renderCache cannot be null.");
+        }
+        this.limits = limits;
+        this.parser = new RTTTLParser(limits);
+        this.renderCache = renderCache;
+        this.maxParseCacheBytes = parseCacheBytes;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/parse", new Endpoint() {
+            @Override Response handle(ToneSequence toneSequence, Map<String, String> parameters) {
+                return new Response("application/json", toJson(toneSequence).getBytes(UTF_8));
+            }
+        });
+        server.createContext("/encode", new Endpoint() {
+            @Override Response handle(ToneSequence toneSequence, Map<String, String> parameters) {
+                return new Response("text/plain; charset=utf-8",
+                    (encoder.encode(toneSequence) + "\n").getBytes(UTF_8));
+            }
+        });
+        server.createContext("/render", new Endpoint() {
+            @Override Response handle(ToneSequence toneSequence, Map<String, String> parameters) {
+                return new Response("audio/wav", render(toneSequence, parameters));
+            }
+        });
+    }
+
+    /** Starts listening */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops listening, and waits up to the given time for requests in progress to complete. The executor is not
+     * shut down.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    /** Returns the address the server listens on, including the chosen port */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /** Returns the cache of rendered samples, for its statistics */
+    public RenderCache renderCache() {
+        return renderCache;
+    }
+
+    /** Returns the number of requests received */
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    /** Returns the number of requests that failed with a status other than 200 */
+    public long errorCount() {
+        return errorCount.get();
+    }
+
+    /** Returns the number of requests whose tune was found in the parse cache */
+    public long parseCacheHitCount() {
+        return parseCacheHitCount.get();
+    }
+
+    /**
+     * Parses the given body, using the cache if possible.
+     */
+    private ToneSequence parse(String body)
+        throws ParseException
+    {
+        synchronized (parseCache) {
+            ToneSequence toneSequence = parseCache.get(body);
+            if (toneSequence != null) {
+                parseCacheHitCount.incrementAndGet();
+                return toneSequence;
+            }
+        }
+        ToneSequence toneSequence = parser.parse(body);
+        long bytes = entryBytes(body, toneSequence);
+        if (bytes > maxParseCacheBytes) {
+            return toneSequence;
+        }
+        synchronized (parseCache) {
+            ToneSequence previous = parseCache.put(body, toneSequence);
+            if (previous != null) {
+                parseCacheBytes -= entryBytes(body, previous);
+            }
+            parseCacheBytes += bytes;
+            Iterator<Map.Entry<String, ToneSequence>> eldest = parseCache.entrySet().iterator();
+            while (parseCacheBytes > maxParseCacheBytes) {
+                Map.Entry<String, ToneSequence> entry = eldest.next();
+                parseCacheBytes -= entryBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+        return toneSequence;
+    }
+
+    /**
+     * Returns the estimated heap use of a parse cache entry, in bytes.
+     */
+    private static long entryBytes(String body, ToneSequence toneSequence) {
+        return PARSE_CACHE_ENTRY_BYTES + 2L * body.length() +
+            (long) PARSE_CACHE_TONE_BYTES * toneSequence.toneList.size();
+    }
+
+    private byte[] render(ToneSequence toneSequence, Map<String, String> parameters) {
+        int sampleRate = ToneRenderer.DEFAULT_SAMPLE_RATE;
+        if (parameters.containsKey("sampleRate")) {
+            sampleRate = Integer.parseInt(parameters.get("sampleRate"));
+            if (sampleRate < MIN_SAMPLE_RATE || sampleRate > MAX_SAMPLE_RATE) {
+                throw new IllegalArgumentException("sampleRate must be between " + MIN_SAMPLE_RATE + "-" +
+                    MAX_SAMPLE_RATE + ", inclusive.");
+            }
+        }
+        Waveform waveform = Waveform.SINE;
+        if (parameters.containsKey("waveform")) {
+            waveform = Waveform.valueOf(parameters.get("waveform").toUpperCase(Locale.ROOT));
+        }
+        ShortBuffer samples = renderCache.get(new ToneRenderer(sampleRate, waveform), toneSequence);
+        int dataLength = 2 * samples.remaining();
+        byte[] wav = new byte[44 + dataLength];
+        putAscii(wav, 0, "RIFF");
+        putInt(wav, 4, 36 + dataLength);
+        putAscii(wav, 8, "WAVEfmt ");
+        putInt(wav, 16, 16);
+        // PCM, mono
+        putInt(wav, 20, 1 | (1 << 16));
+        putInt(wav, 24, sampleRate);
+        putInt(wav, 28, 2 * sampleRate);
+        // Block align 2, 16 bits per sample
+        putInt(wav, 32, 2 | (16 << 16));
+        putAscii(wav, 36, "data");
+        putInt(wav, 40, dataLength);
+        for (int i = 44; samples.hasRemaining(); i += 2) {
+            short sample = samples.get();
+            wav[i] = (byte) sample;
+            wav[i + 1] = (byte) (sample >> 8);
+        }
+        return wav;
+    }
+
+    private static void putAscii(byte[] out, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out[offset + i] = (byte) text.charAt(i);
+        }
+    }
+
+    private static void putInt(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >> 8);
+        out[offset + 2] = (byte) (value >> 16);
+        out[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Returns the given tune as a JSON object.
+     */
+    static String toJson(ToneSequence toneSequence) {
+        StringBuilder builder = new StringBuilder(64 + 40 * toneSequence.toneList.size());
+        builder.append("{\"name\":");
+        appendJsonString(builder, toneSequence.name);
+        builder.append(",\"defaultOctave\":").append(toneSequence.defaultOctave);
+        builder.append(",\"defaultDuration\":\"").append(toneSequence.defaultDuration).append('"');
+        builder.append(",\"beatsPerMinute\":").append(toneSequence.beatsPerMinute);
+        builder.append(",\"tones\":[");
+        boolean first = true;
+        for (Tone tone : toneSequence.toneList) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append("{\"note\":");
+            if (tone.isRest()) {
+                builder.append("null");
+            } else {
+                builder.append('"').append(tone.note).append('"');
+            }
+            builder.append(",\"duration\":\"").append(tone.duration).append("\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static void appendJsonString(StringBuilder builder, String text) {
+        builder.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    private static Map<String, String> parseQuery(String query)
+        throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                    URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * A body and its content type.
+     */
+    private static class Response
+    {
+        final String contentType;
+
+        final byte[] body;
+
+        Response(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Reads, parses and transposes the tune of a request, and sends the response or an error.
+     */
+    private abstract class Endpoint
+        implements HttpHandler
+    {
+        abstract Response handle(ToneSequence toneSequence, Map<String, String> parameters);
+
+        @Override public void handle(HttpExchange exchange)
+            throws IOException
+        {
+            requestCount.incrementAndGet();
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    sendError(exchange, 405, "Only POST is supported.");
+                    return;
+                }
+                String body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    sendError(exchange, 413, "Request body exceeds " + limits.maxInputLength + " bytes.");
+                    return;
+                }
+                Response response;
+                try {
+                    Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+                    ToneSequence toneSequence = parse(body.trim());
+                    if (parameters.containsKey("transpose")) {
+                        toneSequence = toneSequence.transpose(Integer.parseInt(parameters.get("transpose")));
+                    }
+                    response = handle(toneSequence, parameters);
+                } catch (ParseException e) {
+                    sendError(exchange, 400, e.getMessage());
+                    return;
+                } catch (IllegalArgumentException e) {
+                    // Also thrown for invalid numbers and waveform names
+                    sendError(exchange, 400, e.getMessage());
+                    return;
+                } catch (RuntimeException e) {
+                    sendError(exchange, 500, "Internal error.");
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", response.contentType);
+                exchange.sendResponseHeaders(200, response.body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response.body);
+                out.close();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Reads the request body, or returns null if it is longer than the input limit.
+         */
+        private String readBody(InputStream in)
+            throws IOException
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                if (out.size() > limits.maxInputLength) {
+                    return null;
+                }
+            }
+            return new String(out.toByteArray(), UTF_8);
+        }
+
+        private void sendError(HttpExchange exchange, int status, String message)
+            throws IOException
+        {
+            errorCount.incrementAndGet();
+            byte[] body = (message + "\n").getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl.server;
+
+import com.octagonsoftware.rtttl.RTTTLParser;
+import com.octagonsoftware.rtttl.RenderCache;
+import com.octagonsoftware.rtttl.ToneRenderer;
+import com.octagonsoftware.rtttl.ToneSequence;
+import com.octagonsoftware.rtttl.Waveform;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for RTTTLServer
+ */
+public class RTTTLServerTest
+{
+    private static final String TUNE = "Test:d=4,o=5,b=120:c,8e,p,2g.6";
+
+    private ExecutorService executor;
+
+    private RTTTLServer server;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        executor = Executors.newFixedThreadPool(4);
+        server = new RTTTLServer(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), executor);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testParse()
+        throws IOException
+    {
+        Reply reply = post("/parse", TUNE);
+        Assert.assertEquals(200, reply.status);
+        Assert.assertEquals("{\"name\":\"Test\",\"defaultOctave\":5,\"defaultDuration\":\"QUARTER\"," +
+            "\"beatsPerMinute\":120,\"tones\":[{\"note\":\"C5\",\"duration\":\"QUARTER\"}," +
+            "{\"note\":\"E5\",\"duration\":\"EIGHTH\"},{\"note\":null,\"duration\":\"QUARTER\"}," +
+            "{\"note\":\"G6\",\"duration\":\"DOTTED_HALF\"}]}", reply.text());
+    }
+
+    @Test
+    public void testEncode()
+        throws IOException
+    {
+        Reply reply = post("/encode?transpose=2", TUNE);
+        Assert.assertEquals(200, reply.status);
+        Assert.assertEquals("Test:o=5,b=120:d,8f#,p,2a.6\n", reply.text());
+    }
+
+    @Test
+    public void testRender()
+        throws Exception
+    {
+        Reply reply = post("/render?sampleRate=8000&waveform=square", TUNE);
+        Assert.assertEquals(200, reply.status);
+        ToneSequence toneSequence = new RTTTLParser().parse(TUNE);
+        long sampleCount = new ToneRenderer(8000, Waveform.SQUARE).sampleCount(toneSequence);
+        Assert.assertEquals(44 + 2 * sampleCount, reply.body.length);
+        Assert.assertEquals("RIFF", new String(reply.body, 0, 4, "US-ASCII"));
+        Assert.assertEquals("data", new String(reply.body, 36, 4, "US-ASCII"));
+        Assert.assertEquals(8000, (reply.body[24] & 0xff) | (reply.body[25] & 0xff) << 8);
+
+        // The same tune is served from the caches the second time
+        Assert.assertArrayEquals(reply.body, post("/render?sampleRate=8000&waveform=square", TUNE).body);
+        Assert.assertEquals(1, server.parseCacheHitCount());
+        Assert.assertEquals(1, server.renderCache().hitCount());
+    }
+
+    @Test
+    public void testParseCacheLimit()
+        throws IOException
+    {
+        // Room for one entry of this size, but not two
+        server.stop(0);
+        server = new RTTTLServer(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), executor,
+            RTTTLServer.DEFAULT_LIMITS, 400, new RenderCache(1 << 20, false));
+        server.start();
+        Assert.assertEquals(200, post("/encode", TUNE).status);
+        Assert.assertEquals(200, post("/encode", TUNE.replace('c', 'd')).status);
+        Assert.assertEquals(200, post("/encode", TUNE).status);
+        Assert.assertEquals(0, server.parseCacheHitCount());
+        Assert.assertEquals(200, post("/encode", TUNE).status);
+        Assert.assertEquals(1, server.parseCacheHitCount());
+    }
+
+    @Test
+    public void testErrors()
+        throws IOException
+    {
+        Assert.assertEquals(400, post("/parse", "Test:d=4,o=5,b=120:x").status);
+        Assert.assertEquals(400, post("/render?sampleRate=100", TUNE).status);
+        Assert.assertEquals(400, post("/render?waveform=noise", TUNE).status);
+        Assert.assertEquals(400, post("/encode?transpose=many", TUNE).status);
+        Assert.assertEquals(404, post("/play", TUNE).status);
+        StringBuilder big = new StringBuilder(TUNE);
+        while (big.length() <= RTTTLServer.DEFAULT_LIMITS.maxInputLength) {
+            big.append(",c");
+        }
+        Assert.assertEquals(413, post("/parse", big.toString()).status);
+
+        HttpURLConnection connection = (HttpURLConnection) url("/parse").openConnection();
+        Assert.assertEquals(405, connection.getResponseCode());
+        Assert.assertEquals("POST", connection.getHeaderField("Allow"));
+        connection.disconnect();
+        Assert.assertEquals(6, server.errorCount());
+    }
+
+    @Test
+    public void testLoadTest()
+        throws Exception
+    {
+        LoadTest.Result result = LoadTest.run(url("/parse"), TUNE.getBytes("UTF-8"), 2, 200);
+        Assert.assertTrue(result.latency.count() > 0);
+        Assert.assertEquals(0, result.failureCount);
+        Assert.assertTrue(result.latency.valueAtPercentile(99.0) >= result.latency.valueAtPercentile(50.0));
+        Assert.assertTrue(result.requestsPerSecond() > 0.0);
+        Assert.assertEquals(result.latency.count(), server.requestCount());
+    }
+
+    private URL url(String path)
+        throws IOException
+    {
+        return new URL("http", "127.0.0.1", server.address().getPort(), path);
+    }
+
+    private Reply post(String path, String body)
+        throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        int status = connection.getResponseCode();
+        InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            in.close();
+        }
+        return new Reply(status, bytes.toByteArray());
+    }
+
+    private static class Reply
+    {
+        final int status;
+
+        final byte[] body;
+
+        Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        String text()
+            throws IOException
+        {
+            return new String(body, "UTF-8");
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs parsing, encoding and rendering on a bounded pool of threads, so that callers need not block on them.
+ * <p>
+ * Each method returns a {@link Future} at once, and optionally calls a {@link Callback} when the work completes.
+ * The callback runs on the worker thread, except for work cancelled before it completes, whose callback runs on the
+ * thread that cancelled it, or that called {@link #shutdown()}. An exception thrown by a callback is counted by
+ * {@link #callbackFailureCount()} and otherwise ignored, so it cannot reach the caller of {@code cancel} or stop a
+ * worker. When every worker is busy and the queue is full, work is rejected immediately with a
+ * {@link RejectedExecutionException} rather than left to wait. Work submitted after {@link #shutdown()} is rejected
+ * the same way, but is not counted by {@link #rejectedCount()}. Cancelling a render with {@code cancel(true)} stops
+ * it at the next block of samples.
+ * <p>
+ * Instances are thread safe.
+ */
+public class AsyncRTTTLService
+{
+    /** Receives the outcome of asynchronous work */
+    public interface Callback<T>
+    {
+        /** Called with the result of successful work */
+        void onSuccess(T result);
+
+        /** Called with the exception that made the work fail, or a {@link CancellationException} if cancelled */
+        void onFailure(Throwable failure);
+    }
+
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    private final RTTTLParser parser;
+
+    private final RTTTLEncoder encoder = new RTTTLEncoder();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong callbackFailureCount = new AtomicLong();
+
+    /**
+     * Creates a service with its own pool of daemon threads and the default parser.
+     *
+     * @param threadCount The number of worker threads
+     * @param queueCapacity The number of tasks that may wait for a worker before new work is rejected
+     * @throws IllegalArgumentException If either argument is not greater than 0.
+     */
+    public AsyncRTTTLService(int threadCount, int queueCapacity) {
+        this(newExecutor(threadCount, queueCapacity), new RTTTLParser(), true);
+    }
+
+    /**
+     * Creates a service that runs work on the given executor. The executor decides how much work it accepts; it
+     * should reject work rather than queue it without limit.
+     *
+     * @param executor The executor to run work on, which is not shut down by {@link #shutdown()}
+     * @param parser The parser used by {@link #parse(String)}
+     */
+    public AsyncRTTTLService(ExecutorService executor, RTTTLParser parser) {
+        this(executor, parser, false);
+    }
+
+    private AsyncRTTTLService(ExecutorService executor, RTTTLParser parser, boolean ownsExecutor) {
+        this.executor = executor;
+        this.parser = parser;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Parses an RTTTL string asynchronously.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see RTTTLParser#parse(String)
+     */
+    public Future<ToneSequence> parse(String str) {
+        return parse(str, null);
+    }
+
+    /**
+     * Parses an RTTTL string asynchronously, then calls the callback, if any.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see RTTTLParser#parse(String)
+     */
+    public Future<ToneSequence> parse(final String str, Callback<? super ToneSequence> callback) {
+        return submit(new Callable<ToneSequence>() {
+            @Override public ToneSequence call()
+                throws ParseException
+            {
+                return parser.parse(str);
+            }
+        }, callback);
+    }
+
+    /**
+     * Encodes a tone sequence asynchronously.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see RTTTLEncoder#encode(ToneSequence)
+     */
+    public Future<String> encode(ToneSequence toneSequence) {
+        return encode(toneSequence, null);
+    }
+
+    /**
+     * Encodes a tone sequence asynchronously, then calls the callback, if any.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see RTTTLEncoder#encode(ToneSequence)
+     */
+    public Future<String> encode(final ToneSequence toneSequence, Callback<? super String> callback) {
+        return submit(new Callable<String>() {
+            @Override public String call() {
+                return encoder.encode(toneSequence);
+            }
+        }, callback);
+    }
+
+    /**
+     * Renders a tone sequence asynchronously.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see ToneRenderer#render(ToneSequence)
+     */
+    public Future<short[]> render(ToneRenderer renderer, ToneSequence toneSequence) {
+        return render(renderer, toneSequence, null);
+    }
+
+    /**
+     * Renders a tone sequence asynchronously, then calls the callback, if any. Cancelling the render with
+     * {@code cancel(true)} stops it at the next block of samples.
+     *
+     * @throws RejectedExecutionException If the service is at capacity or shut down.
+     * @see ToneRenderer#render(ToneSequence)
+     */
+    public Future<short[]> render(final ToneRenderer renderer, final ToneSequence toneSequence,
+        Callback<? super short[]> callback)
+    {
+        return submit(new Callable<short[]>() {
+            @Override public short[] call() {
+                ToneStream stream = renderer.open(toneSequence);
+                if (stream.length() > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Tone sequence is too long to render into an array.");
+                }
+                short[] result = new short[(int) stream.length()];
+                int offset = 0;
+                try {
+                    while (offset < result.length) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new CancellationException("Render cancelled.");
+                        }
+                        offset += stream.read(result, offset,
+                            Math.min(ToneRenderer.BLOCK_SIZE, result.length - offset));
+                    }
+                } finally {
+                    // Records a cancelled render as one partial render
+                    stream.close();
+                }
+                return result;
+            }
+        }, callback);
+    }
+
+    /** Returns the number of requests rejected because the service was at capacity */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** Returns the number of callbacks that threw an exception */
+    public long callbackFailureCount() {
+        return callbackFailureCount.get();
+    }
+
+    /**
+     * Stops accepting work and cancels any work not yet complete, if the service owns its executor. Work that was
+     * still queued completes as cancelled, and its callback runs on this thread.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            for (Runnable queued : executor.shutdownNow()) {
+                if (queued instanceof Future) {
+                    ((Future<?>) queued).cancel(false);
+                }
+            }
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> callable, Callback<? super T> callback) {
+        Task<T> task = new Task<T>(callable, callback);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (!executor.isShutdown()) {
+                rejectedCount.incrementAndGet();
+            }
+            throw e;
+        }
+        return task;
+    }
+
+    private static ExecutorService newExecutor(int threadCount, int queueCapacity) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be > 0.");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be > 0.");
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rtttl-async-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * A unit of work that reports its outcome to a callback.
+     */
+    private class Task<T>
+        extends FutureTask<T>
+    {
+        private final Callback<? super T> callback;
+
+        Task(Callable<T> callable, Callback<? super T> callback) {
+            super(callable);
+            this.callback = callback;
+        }
+
+        @Override protected void done() {
+            if (callback == null) {
+                return;
+            }
+            T result;
+            try {
+                result = get();
+            } catch (CancellationException e) {
+                notifyFailure(e);
+                return;
+            } catch (ExecutionException e) {
+                notifyFailure(e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                // Cannot happen, since the task is done
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                callback.onSuccess(result);
+            } catch (RuntimeException e) {
+                callbackFailureCount.incrementAndGet();
+            }
+        }
+
+        private void notifyFailure(Throwable failure) {
+            try {
+                callback.onFailure(failure);
+            } catch (RuntimeException e) {
+                callbackFailureCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Encodes many tone sequences as RTTTL Strings on several threads, writing them in order to a single channel, one
+ * per line in UTF-8.
+ * <p>
+ * Sequences are encoded in chunks. The calling thread reads the source and writes finished chunks in input order,
+ * while worker threads encode the chunks after them. At most a fixed number of chunks are in flight, so a slow
+ * channel blocks encoding rather than letting memory grow. Chunks and their character and byte buffers are reused, so
+ * encoding allocates little once the first chunks have been filled.
+ * <p>
+ * Settings must be changed before calling {@link #encode(Iterator, WritableByteChannel)}. Instances may be reused,
+ * but not concurrently.
+ */
+public class BulkEncoder
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RTTTLEncoder encoder;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private int chunkSize = 256;
+
+    private int maxChunksInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+    /** Creates a bulk encoder using a default {@link RTTTLEncoder}. */
+    public BulkEncoder() {
+        this(new RTTTLEncoder());
+    }
+
+    /**
+     * Creates a bulk encoder.
+     *
+     * @param encoder The encoder used by every worker thread
+     */
+    public BulkEncoder(RTTTLEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /** Sets the number of worker threads. The default is one per available processor. */
+    public void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be > 0.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /** Sets the number of sequences encoded and written at a time. The default is 256. */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0.");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the maximum number of chunks being encoded or waiting to be written. The default is twice the number of
+     * available processors.
+     */
+    public void setMaxChunksInFlight(int maxChunksInFlight) {
+        if (maxChunksInFlight <= 0) {
+            throw new IllegalArgumentException("maxChunksInFlight must be > 0.");
+        }
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    /**
+     * Encodes every sequence from the source and writes each one, followed by a newline, to the channel. The source
+     * is only read from the calling thread, and the channel is only written from it.
+     *
+     * @param source The sequences to encode
+     * @param out The channel to write to. It is not closed.
+     * @return The number of sequences written
+     * @throws IOException If writing to the channel failed.
+     * @throws InterruptedException If the calling thread is interrupted.
+     * @throws ExecutionException If a sequence could not be encoded. Chunks before it have been written.
+     */
+    public long encode(Iterator<ToneSequence> source, WritableByteChannel out)
+        throws IOException, InterruptedException, ExecutionException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+        ArrayDeque<Chunk> free = new ArrayDeque<Chunk>();
+        long count = 0;
+        try {
+            while (source.hasNext()) {
+                if (pending.size() >= maxChunksInFlight) {
+                    count += write(pending.poll(), out, free);
+                }
+                Chunk chunk = free.isEmpty() ? new Chunk() : free.poll();
+                while (chunk.sequences.size() < chunkSize && source.hasNext()) {
+                    chunk.sequences.add(source.next());
+                }
+                pending.add(executor.submit(chunk));
+            }
+            while (!pending.isEmpty()) {
+                count += write(pending.poll(), out, free);
+            }
+            return count;
+        } finally {
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a chunk to be encoded, writes it, and returns it to the free list.
+     *
+     * @return The number of sequences written
+     */
+    private static int write(Future<Chunk> future, WritableByteChannel out, ArrayDeque<Chunk> free)
+        throws IOException, InterruptedException, ExecutionException
+    {
+        Chunk chunk = future.get();
+        while (chunk.bytes.hasRemaining()) {
+            out.write(chunk.bytes);
+        }
+        int count = chunk.sequences.size();
+        chunk.sequences.clear();
+        free.add(chunk);
+        return count;
+    }
+
+    /**
+     * A chunk of sequences, and the buffers they are encoded into.
+     */
+    private class Chunk
+        implements Callable<Chunk>
+    {
+        final List<ToneSequence> sequences = new ArrayList<ToneSequence>(chunkSize);
+
+        final StringBuilder text = new StringBuilder();
+
+        final CharsetEncoder charsetEncoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        char[] chars = new char[0];
+
+        ByteBuffer bytes = ByteBuffer.allocate(0);
+
+        @Override public Chunk call() {
+            text.setLength(0);
+            for (ToneSequence toneSequence : sequences) {
+                encoder.encode(toneSequence, text);
+                text.append('\n');
+            }
+            int length = text.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, 2 * chars.length)];
+                bytes = ByteBuffer.allocate((int) Math.ceil(chars.length * charsetEncoder.maxBytesPerChar()));
+            }
+            // An array backed buffer lets the charset encoder take its fast path
+            text.getChars(0, length, chars, 0);
+            bytes.clear();
+            charsetEncoder.reset();
+            charsetEncoder.encode(CharBuffer.wrap(chars, 0, length), bytes, true);
+            charsetEncoder.flush(bytes);
+            bytes.flip();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable tone sequence stored as a grammar, so that repeated phrases are stored once.
+ * <p>
+ * The tones are compressed with Re-Pair: the most frequent pair of adjacent symbols is repeatedly replaced with a
+ * new rule until no pair occurs twice. Each distinct tone is stored once, each rule is a pair of symbols, and the
+ * sequence itself is the short list of symbols left over. Compression takes time quadratic in the number of tones
+ * in the worst case, which is fine for ringtone length sequences.
+ * <p>
+ * Tones are read back by iteration, in amortised constant time per tone, or by index, in time proportional to the
+ * depth of the grammar. {@link #toToneSequence()} returns a {@link ToneSequence} backed by this grammar, which can be
+ * passed directly to {@link ToneRenderer} or {@link RTTTLEncoder}.
+ */
+public class CompressedToneSequence
+    implements Iterable<Tone>
+{
+    /** The name of the ring tone */
+    public final String name;
+
+    /** The default octave */
+    public final int defaultOctave;
+
+    /** The default duration */
+    public final Duration defaultDuration;
+
+    /** The quarter note beats per minute */
+    public final int beatsPerMinute;
+
+    /** Distinct tones; symbols below its length are tones */
+    private final Tone[] tones;
+
+    /** Symbols of rule r, which is symbol tones.length + r */
+    private final int[] left;
+
+    private final int[] right;
+
+    /** Number of tones each rule expands to */
+    private final int[] ruleLengths;
+
+    /** Top level symbols */
+    private final int[] sequence;
+
+    /** Index of the first tone of each top level symbol, plus the total number of tones */
+    private final int[] sequenceStarts;
+
+    /** Greatest number of rules nested in a top level symbol, plus one */
+    private final int depth;
+
+    /**
+     * Compresses the given sequence.
+     *
+     * @param toneSequence The sequence to compress
+     */
+    public CompressedToneSequence(ToneSequence toneSequence) {
+        this.name = toneSequence.name;
+        this.defaultOctave = toneSequence.defaultOctave;
+        this.defaultDuration = toneSequence.defaultDuration;
+        this.beatsPerMinute = toneSequence.beatsPerMinute;
+
+        // Map each distinct tone to a terminal symbol
+        Map<Tone, Integer> symbols = new HashMap<Tone, Integer>();
+        List<Tone> distinct = new ArrayList<Tone>();
+        int[] seq = new int[toneSequence.toneList.size()];
+        int n = 0;
+        for (Tone tone : toneSequence.toneList) {
+            Integer symbol = symbols.get(tone);
+            if (symbol == null) {
+                symbol = distinct.size();
+                symbols.put(tone, symbol);
+                distinct.add(tone);
+            }
+            seq[n++] = symbol;
+        }
+        this.tones = distinct.toArray(new Tone[distinct.size()]);
+
+        int[] ruleLeft = new int[16];
+        int[] ruleRight = new int[16];
+        int rules = 0;
+        while (true) {
+            long pair = mostFrequentPair(seq, n);
+            if (pair == -1) {
+                break;
+            }
+            int a = (int) (pair >>> 32);
+            int b = (int) pair;
+            if (rules == ruleLeft.length) {
+                ruleLeft = Arrays.copyOf(ruleLeft, rules * 2);
+                ruleRight = Arrays.copyOf(ruleRight, rules * 2);
+            }
+            ruleLeft[rules] = a;
+            ruleRight[rules] = b;
+            int symbol = tones.length + rules;
+            rules++;
+
+            // Replace non-overlapping occurrences, left to right
+            int j = 0;
+            for (int i = 0; i < n; ) {
+                if (i + 1 < n && seq[i] == a && seq[i + 1] == b) {
+                    seq[j++] = symbol;
+                    i += 2;
+                } else {
+                    seq[j++] = seq[i++];
+                }
+            }
+            n = j;
+        }
+        this.left = Arrays.copyOf(ruleLeft, rules);
+        this.right = Arrays.copyOf(ruleRight, rules);
+        this.sequence = Arrays.copyOf(seq, n);
+
+        // Rules only refer to earlier rules, so lengths and depths can be computed in order
+        this.ruleLengths = new int[rules];
+        int[] ruleDepths = new int[rules];
+        for (int r = 0; r < rules; r++) {
+            ruleLengths[r] = length(left[r]) + length(right[r]);
+            ruleDepths[r] = 1 + Math.max(depth(left[r], ruleDepths), depth(right[r], ruleDepths));
+        }
+        this.sequenceStarts = new int[n + 1];
+        int maxDepth = 0;
+        for (int i = 0; i < n; i++) {
+            sequenceStarts[i + 1] = sequenceStarts[i] + length(sequence[i]);
+            maxDepth = Math.max(maxDepth, depth(sequence[i], ruleDepths));
+        }
+        this.depth = maxDepth + 1;
+    }
+
+    /** Returns the number of tones */
+    public int size() {
+        return sequenceStarts[sequence.length];
+    }
+
+    /**
+     * Returns the tone at the given index.
+     *
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public Tone get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds.");
+        }
+        int position = Arrays.binarySearch(sequenceStarts, index);
+        if (position < 0) {
+            position = -position - 2;
+        }
+        int symbol = sequence[position];
+        int offset = index - sequenceStarts[position];
+        while (symbol >= tones.length) {
+            int rule = symbol - tones.length;
+            int leftLength = length(left[rule]);
+            if (offset < leftLength) {
+                symbol = left[rule];
+            } else {
+                symbol = right[rule];
+                offset -= leftLength;
+            }
+        }
+        return tones[symbol];
+    }
+
+    /** Returns an iterator over the tones, in order */
+    @Override public Iterator<Tone> iterator() {
+        return new ToneIterator();
+    }
+
+    /** Returns the number of rules in the grammar */
+    public int ruleCount() {
+        return left.length;
+    }
+
+    /** Returns the number of distinct tones */
+    public int distinctToneCount() {
+        return tones.length;
+    }
+
+    /**
+     * Returns the number of symbols stored: two per rule plus the top level symbols. This is a measure of the
+     * compressed size, to compare with the number of tones.
+     */
+    public int symbolCount() {
+        return 2 * left.length + sequence.length;
+    }
+
+    /** Returns an unmodifiable list view of the tones, backed by the grammar */
+    public List<Tone> toneList() {
+        return new AbstractList<Tone>() {
+            @Override public Tone get(int index) {
+                return CompressedToneSequence.this.get(index);
+            }
+
+            @Override public int size() {
+                return CompressedToneSequence.this.size();
+            }
+
+            @Override public Iterator<Tone> iterator() {
+                return new ToneIterator();
+            }
+        };
+    }
+
+    /** Returns a tone sequence whose tone list is backed by this grammar */
+    public ToneSequence toToneSequence() {
+        return new ToneSequence(name, toneList(), defaultOctave, defaultDuration, beatsPerMinute);
+    }
+
+    private int length(int symbol) {
+        return symbol < tones.length ? 1 : ruleLengths[symbol - tones.length];
+    }
+
+    private int depth(int symbol, int[] ruleDepths) {
+        return symbol < tones.length ? 0 : ruleDepths[symbol - tones.length];
+    }
+
+    /**
+     * Returns the most frequent pair of adjacent symbols, packed into a long with the first symbol in the high
+     * bits, or -1 if no pair occurs twice. Overlapping occurrences of a pair of equal symbols are counted once.
+     */
+    private static long mostFrequentPair(int[] seq, int n) {
+        // Count and start of the last counted occurrence of each pair
+        Map<Long, int[]> counts = new HashMap<Long, int[]>();
+        long best = -1;
+        int bestCount = 1;
+        for (int i = 0; i + 1 < n; i++) {
+            long pair = ((long) seq[i] << 32) | (seq[i + 1] & 0xFFFFFFFFL);
+            int[] count = counts.get(pair);
+            if (count == null) {
+                counts.put(pair, new int[] {1, i});
+            } else if (i > count[1] + 1) {
+                count[0]++;
+                count[1] = i;
+                if (count[0] > bestCount) {
+                    best = pair;
+                    bestCount = count[0];
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Iterates over the tones by walking the grammar with an explicit stack.
+     */
+    private class ToneIterator
+        implements Iterator<Tone>
+    {
+        private final int[] stack = new int[depth];
+
+        private int stackSize;
+
+        /** Next top level symbol to push */
+        private int position;
+
+        @Override public boolean hasNext() {
+            return stackSize > 0 || position < sequence.length;
+        }
+
+        @Override public Tone next() {
+            if (stackSize == 0) {
+                if (position == sequence.length) {
+                    throw new NoSuchElementException();
+                }
+                stack[stackSize++] = sequence[position++];
+            }
+            int symbol = stack[--stackSize];
+            while (symbol >= tones.length) {
+                int rule = symbol - tones.length;
+                stack[stackSize++] = right[rule];
+                symbol = left[rule];
+            }
+            return tones[symbol];
+        }
+
+        @Override public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
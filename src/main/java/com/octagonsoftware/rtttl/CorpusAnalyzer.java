@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes {@link CorpusStatistics} over many tone sequences in parallel.
+ * <p>
+ * Each worker accumulates its share of the sequences into its own statistics, and the results are merged once the
+ * workers finish, so no state is shared between threads while analyzing.
+ */
+public class CorpusAnalyzer
+{
+    /** Number of sequences handed to a worker at a time when analyzing an iterator */
+    static final int BATCH_SIZE = 4096;
+
+    /** Number of worker threads */
+    public final int threadCount;
+
+    /**
+     * Creates an analyzer using one thread per available processor.
+     */
+    public CorpusAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param threadCount The number of worker threads. Must be greater than 0.
+     * @throws IllegalArgumentException If threadCount is invalid.
+     */
+    public CorpusAnalyzer(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be > 0.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Analyzes the given sequences, splitting them evenly between the worker threads.
+     *
+     * @param sequences The sequences to analyze
+     * @return The statistics for all sequences
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the workers.
+     */
+    public CorpusStatistics analyze(final List<ToneSequence> sequences)
+        throws InterruptedException
+    {
+        if (threadCount == 1 || sequences.size() < 2) {
+            CorpusStatistics result = new CorpusStatistics();
+            for (ToneSequence sequence : sequences) {
+                result.add(sequence);
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<CorpusStatistics>> futures = new ArrayList<Future<CorpusStatistics>>(threadCount);
+            int size = sequences.size();
+            for (int i = 0; i < threadCount; i++) {
+                final int from = (int) ((long) size * i / threadCount);
+                final int to = (int) ((long) size * (i + 1) / threadCount);
+                futures.add(executor.submit(new Callable<CorpusStatistics>() {
+                    @Override public CorpusStatistics call() {
+                        CorpusStatistics statistics = new CorpusStatistics();
+                        for (int j = from; j < to; j++) {
+                            statistics.add(sequences.get(j));
+                        }
+                        return statistics;
+                    }
+                }));
+            }
+            CorpusStatistics result = new CorpusStatistics();
+            for (Future<CorpusStatistics> future : futures) {
+                result.merge(get(future));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Analyzes the sequences returned by the given iterator, such as sequences parsed lazily from a file.
+     * <p>
+     * Sequences are read on the calling thread and handed to the workers in batches. At most two batches per
+     * worker are held in memory at once, so the sequences do not all need to fit in memory.
+     *
+     * @param sequences The sequences to analyze
+     * @return The statistics for all sequences
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the workers.
+     */
+    public CorpusStatistics analyze(Iterator<ToneSequence> sequences)
+        throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            CorpusStatistics result = new CorpusStatistics();
+            LinkedList<Future<CorpusStatistics>> pending = new LinkedList<Future<CorpusStatistics>>();
+            while (sequences.hasNext()) {
+                final List<ToneSequence> batch = new ArrayList<ToneSequence>(BATCH_SIZE);
+                while (batch.size() < BATCH_SIZE && sequences.hasNext()) {
+                    batch.add(sequences.next());
+                }
+                if (pending.size() >= 2 * threadCount) {
+                    result.merge(get(pending.removeFirst()));
+                }
+                pending.add(executor.submit(new Callable<CorpusStatistics>() {
+                    @Override public CorpusStatistics call() {
+                        CorpusStatistics statistics = new CorpusStatistics();
+                        for (ToneSequence sequence : batch) {
+                            statistics.add(sequence);
+                        }
+                        return statistics;
+                    }
+                }));
+            }
+            for (Future<CorpusStatistics> future : pending) {
+                result.merge(get(future));
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the result of a worker, rethrowing any exception it threw.
+     */
+    private static CorpusStatistics get(Future<CorpusStatistics> future)
+        throws InterruptedException
+    {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
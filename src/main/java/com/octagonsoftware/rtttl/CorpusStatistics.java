@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.List;
+
+/**
+ * Statistics over a collection of tone sequences: note, duration, key and tempo histograms, pitch range and length.
+ * <p>
+ * All counts are kept in primitive arrays. Statistics are built by {@link CorpusAnalyzer}, which accumulates
+ * separate instances on each thread and merges them at the end.
+ */
+public class CorpusStatistics
+{
+    /** Number of keys tracked by the key histogram: 12 major keys followed by 12 minor keys */
+    public static final int KEY_COUNT = 24;
+
+    /** Tempos at or above this value are counted in a single histogram bucket */
+    public static final int MAX_BEATS_PER_MINUTE_BUCKET = 1000;
+
+    private static final String[] PITCH_CLASS_NAMES = {
+        "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"
+    };
+
+    /** Krumhansl-Kessler probe tone profile for major keys, starting at the tonic */
+    private static final double[] MAJOR_PROFILE = {
+        6.35, 2.23, 3.48, 2.33, 4.38, 4.09, 2.52, 5.19, 2.39, 3.66, 2.29, 2.88
+    };
+
+    /** Krumhansl-Kessler probe tone profile for minor keys, starting at the tonic */
+    private static final double[] MINOR_PROFILE = {
+        6.33, 2.68, 3.52, 5.38, 2.60, 3.53, 2.54, 4.75, 3.98, 2.69, 3.34, 3.17
+    };
+
+    private long sequenceCount;
+
+    private long toneCount;
+
+    private long restCount;
+
+    private long totalUnits;
+
+    private double totalSeconds;
+
+    private int minSemitone = Integer.MAX_VALUE;
+
+    private int maxSemitone = Integer.MIN_VALUE;
+
+    private long totalRange;
+
+    private long sequencesWithNotes;
+
+    private final long[] noteCounts = new long[Note.MAX_SEMITONE + 1];
+
+    private final long[] durationCounts = new long[Duration.values().length];
+
+    private final long[] pitchClassUnits = new long[12];
+
+    private final long[] keyCounts = new long[KEY_COUNT];
+
+    private final long[] beatsPerMinuteCounts = new long[MAX_BEATS_PER_MINUTE_BUCKET + 1];
+
+    /** Scratch space for the pitch classes of a single sequence */
+    private final long[] sequencePitchClassUnits = new long[12];
+
+    CorpusStatistics() {
+    }
+
+    /**
+     * Adds a single tone sequence to these statistics.
+     */
+    void add(ToneSequence toneSequence) {
+        long[] sequencePitchClasses = sequencePitchClassUnits;
+        for (int i = 0; i < sequencePitchClasses.length; i++) {
+            sequencePitchClasses[i] = 0;
+        }
+        int sequenceMin = Integer.MAX_VALUE;
+        int sequenceMax = Integer.MIN_VALUE;
+        long units = 0;
+
+        List<Tone> toneList = toneSequence.toneList;
+        for (int i = 0; i < toneList.size(); i++) {
+            Tone tone = toneList.get(i);
+            int toneUnits = ToneRenderer.durationUnits(tone.duration);
+            units += toneUnits;
+            durationCounts[tone.duration.ordinal()]++;
+            if (tone.isRest()) {
+                restCount++;
+            } else {
+                int semitone = tone.note.semitone;
+                noteCounts[semitone]++;
+                sequencePitchClasses[semitone % 12] += toneUnits;
+                if (semitone < sequenceMin) {
+                    sequenceMin = semitone;
+                }
+                if (semitone > sequenceMax) {
+                    sequenceMax = semitone;
+                }
+            }
+        }
+
+        sequenceCount++;
+        toneCount += toneList.size();
+        totalUnits += units;
+        totalSeconds += (double) units * 60 / (ToneRenderer.UNITS_PER_QUARTER_NOTE * toneSequence.beatsPerMinute);
+        beatsPerMinuteCounts[Math.min(toneSequence.beatsPerMinute, MAX_BEATS_PER_MINUTE_BUCKET)]++;
+
+        if (sequenceMin <= sequenceMax) {
+            sequencesWithNotes++;
+            totalRange += sequenceMax - sequenceMin;
+            minSemitone = Math.min(minSemitone, sequenceMin);
+            maxSemitone = Math.max(maxSemitone, sequenceMax);
+            for (int i = 0; i < 12; i++) {
+                pitchClassUnits[i] += sequencePitchClasses[i];
+            }
+            keyCounts[estimateKey(sequencePitchClasses)]++;
+        }
+    }
+
+    /**
+     * Adds the given statistics to these statistics.
+     */
+    void merge(CorpusStatistics other) {
+        sequenceCount += other.sequenceCount;
+        toneCount += other.toneCount;
+        restCount += other.restCount;
+        totalUnits += other.totalUnits;
+        totalSeconds += other.totalSeconds;
+        minSemitone = Math.min(minSemitone, other.minSemitone);
+        maxSemitone = Math.max(maxSemitone, other.maxSemitone);
+        totalRange += other.totalRange;
+        sequencesWithNotes += other.sequencesWithNotes;
+        addAll(noteCounts, other.noteCounts);
+        addAll(durationCounts, other.durationCounts);
+        addAll(pitchClassUnits, other.pitchClassUnits);
+        addAll(keyCounts, other.keyCounts);
+        addAll(beatsPerMinuteCounts, other.beatsPerMinuteCounts);
+    }
+
+    /** Returns the number of sequences analyzed */
+    public long sequenceCount() {
+        return sequenceCount;
+    }
+
+    /** Returns the number of tones analyzed, including rests */
+    public long toneCount() {
+        return toneCount;
+    }
+
+    /** Returns the number of rests analyzed */
+    public long restCount() {
+        return restCount;
+    }
+
+    /** Returns the number of times the given note was played */
+    public long noteCount(Note note) {
+        return noteCounts[note.semitone];
+    }
+
+    /** Returns the number of tones, including rests, with the given duration */
+    public long durationCount(Duration duration) {
+        return durationCounts[duration.ordinal()];
+    }
+
+    /** Returns the number of sequences with the given tempo; tempos above the last bucket are counted in it */
+    public long beatsPerMinuteCount(int beatsPerMinute) {
+        return beatsPerMinuteCounts[Math.min(beatsPerMinute, MAX_BEATS_PER_MINUTE_BUCKET)];
+    }
+
+    /** Returns the number of sequences estimated to be in the given key, as returned by {@link #estimateKey} */
+    public long keyCount(int key) {
+        return keyCounts[key];
+    }
+
+    /** Returns the lowest note played, or null if no notes were played */
+    public Note minNote() {
+        return sequencesWithNotes == 0 ? null : Note.findNoteFromSemitone(minSemitone);
+    }
+
+    /** Returns the highest note played, or null if no notes were played */
+    public Note maxNote() {
+        return sequencesWithNotes == 0 ? null : Note.findNoteFromSemitone(maxSemitone);
+    }
+
+    /** Returns the average range of a sequence, in semitones, over sequences with at least one note */
+    public double averageRange() {
+        return sequencesWithNotes == 0 ? 0.0 : (double) totalRange / sequencesWithNotes;
+    }
+
+    /** Returns the average length of a sequence, in quarter note beats */
+    public double averageQuarterNoteBeats() {
+        return sequenceCount == 0 ? 0.0 : (double) totalUnits / ToneRenderer.UNITS_PER_QUARTER_NOTE / sequenceCount;
+    }
+
+    /** Returns the average length of a sequence, in seconds */
+    public double averageSeconds() {
+        return sequenceCount == 0 ? 0.0 : totalSeconds / sequenceCount;
+    }
+
+    /**
+     * Returns the fraction of all note time spent on each pitch class, starting with C.
+     */
+    public double[] pitchClassProfile() {
+        double[] result = new double[12];
+        long total = 0;
+        for (long units : pitchClassUnits) {
+            total += units;
+        }
+        for (int i = 0; i < 12 && total > 0; i++) {
+            result[i] = (double) pitchClassUnits[i] / total;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the whole corpus, estimated from its pitch class profile.
+     *
+     * @see #estimateKey(long[])
+     */
+    public int corpusKey() {
+        return estimateKey(pitchClassUnits);
+    }
+
+    /**
+     * Estimates the key from the time spent on each pitch class, using the Krumhansl-Schmuckler algorithm.
+     *
+     * @param pitchClassWeights The weight of each pitch class, starting with C
+     * @return The tonic pitch class (0 for C) for major keys, or the tonic pitch class plus 12 for minor keys
+     */
+    public static int estimateKey(long[] pitchClassWeights) {
+        int bestKey = 0;
+        double bestCorrelation = Double.NEGATIVE_INFINITY;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            double[] profile = key < 12 ? MAJOR_PROFILE : MINOR_PROFILE;
+            double correlation = correlation(pitchClassWeights, profile, key % 12);
+            if (correlation > bestCorrelation) {
+                bestCorrelation = correlation;
+                bestKey = key;
+            }
+        }
+        return bestKey;
+    }
+
+    /**
+     * Returns the name of a key returned by {@link #estimateKey(long[])}, such as "C major" or "F# minor".
+     */
+    public static String keyName(int key) {
+        return PITCH_CLASS_NAMES[key % 12] + (key < 12 ? " major" : " minor");
+    }
+
+    /**
+     * Pearson correlation between the weights and the profile rotated to start at the given tonic.
+     */
+    private static double correlation(long[] weights, double[] profile, int tonic) {
+        double meanWeight = 0.0;
+        double meanProfile = 0.0;
+        for (int i = 0; i < 12; i++) {
+            meanWeight += weights[i];
+            meanProfile += profile[i];
+        }
+        meanWeight /= 12;
+        meanProfile /= 12;
+
+        double covariance = 0.0;
+        double weightVariance = 0.0;
+        double profileVariance = 0.0;
+        for (int i = 0; i < 12; i++) {
+            double w = weights[i] - meanWeight;
+            double p = profile[(i - tonic + 12) % 12] - meanProfile;
+            covariance += w * p;
+            weightVariance += w * w;
+            profileVariance += p * p;
+        }
+        if (weightVariance == 0.0) {
+            return 0.0;
+        }
+        return covariance / Math.sqrt(weightVariance * profileVariance);
+    }
+
+    private static void addAll(long[] to, long[] from) {
+        for (int i = 0; i < to.length; i++) {
+            to[i] += from[i];
+        }
+    }
+}
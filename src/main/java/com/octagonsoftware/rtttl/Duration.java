@@ -81,6 +81,39 @@ public enum Duration
         return this.dotted;
     }
 
+    /**
+     * Returns this duration without the dot, or this duration if it is not dotted. RTTTL default durations cannot be
+     * dotted.
+     */
+    public Duration asUndotted() {
+        if (this.dotted != null) {
+            return this;
+        }
+        for (Duration duration : values()) {
+            if (duration.dotted == this) {
+                return duration;
+            }
+        }
+        throw new IllegalStateException("No undotted duration for " + this);
+    }
+
+    /**
+     * Returns the duration closest to the given number of quarter note beats. Lengths beyond the range of durations
+     * return the shortest or longest duration.
+     */
+    public static Duration findClosestDuration(float quarterNoteBeats) {
+        Duration result = DOTTED_WHOLE;
+        float bestError = Float.MAX_VALUE;
+        for (Duration duration : values()) {
+            float error = Math.abs(duration.quarterNoteBeats - quarterNoteBeats);
+            if (error < bestError) {
+                result = duration;
+                bestError = error;
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns the number of seconds this duration represents given beats per minute
      */
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * ITU-T G.711 companding laws, used to compress 16-bit PCM samples to 8 bits for telephony.
+ * <p>
+ * Encoding uses precomputed tables indexed by the significant bits of the sample, so compressing a sample costs a
+ * shift and an array lookup.
+ */
+public enum G711Law
+{
+    /** The law used in North America and Japan */
+    MU_LAW(2) {
+        @Override byte compute(int sample) {
+            // 14-bit two's complement input
+            int mask;
+            if (sample < 0) {
+                sample = -sample;
+                mask = 0x7F;
+            } else {
+                mask = 0xFF;
+            }
+            if (sample > MU_LAW_CLIP) {
+                sample = MU_LAW_CLIP;
+            }
+            sample += MU_LAW_BIAS >> 2;
+            int segment = segment(sample, 0x3F);
+            if (segment >= 8) {
+                return (byte) (0x7F ^ mask);
+            }
+            return (byte) (((segment << 4) | ((sample >> (segment + 1)) & 0x0F)) ^ mask);
+        }
+
+        @Override public short decode(byte value) {
+            int u = ~value & 0xFF;
+            int t = ((u & 0x0F) << 3) + MU_LAW_BIAS;
+            t <<= (u & 0x70) >> 4;
+            return (short) ((u & 0x80) != 0 ? MU_LAW_BIAS - t : t - MU_LAW_BIAS);
+        }
+    },
+
+    /** The law used in Europe and most of the rest of the world */
+    A_LAW(3) {
+        @Override byte compute(int sample) {
+            // 13-bit two's complement input
+            int mask;
+            if (sample >= 0) {
+                mask = 0xD5;
+            } else {
+                mask = 0x55;
+                sample = -sample - 1;
+            }
+            int segment = segment(sample, 0x1F);
+            if (segment >= 8) {
+                return (byte) (0x7F ^ mask);
+            }
+            int value = segment << 4;
+            if (segment < 2) {
+                value |= (sample >> 1) & 0x0F;
+            } else {
+                value |= (sample >> segment) & 0x0F;
+            }
+            return (byte) (value ^ mask);
+        }
+
+        @Override public short decode(byte value) {
+            int a = (value & 0xFF) ^ 0x55;
+            int t = (a & 0x0F) << 4;
+            int segment = (a & 0x70) >> 4;
+            switch (segment) {
+                case 0:
+                    t += 8;
+                    break;
+                case 1:
+                    t += 0x108;
+                    break;
+                default:
+                    t += 0x108;
+                    t <<= segment - 1;
+            }
+            return (short) ((a & 0x80) != 0 ? t : -t);
+        }
+    };
+
+    private static final int MU_LAW_BIAS = 0x84;
+
+    private static final int MU_LAW_CLIP = 8159;
+
+    /** Number of low-order bits of a 16-bit sample ignored by this law */
+    private final int shift;
+
+    /** Encoded value for every possible sample, indexed by the significant bits of the sample */
+    private final byte[] table;
+
+    G711Law(int shift) {
+        this.shift = shift;
+        this.table = new byte[1 << (16 - shift)];
+    }
+
+    static {
+        for (G711Law law : values()) {
+            int half = law.table.length / 2;
+            for (int i = 0; i < law.table.length; i++) {
+                law.table[i] = law.compute(i - half);
+            }
+        }
+    }
+
+    /**
+     * Compresses a signed 16-bit sample.
+     */
+    public byte encode(short sample) {
+        return table[(sample >> shift) + (table.length >> 1)];
+    }
+
+    /**
+     * Compresses count samples from the given array into the given byte array.
+     */
+    public void encode(short[] samples, int offset, byte[] out, int outOffset, int count) {
+        byte[] table = this.table;
+        int half = table.length >> 1;
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = table[(samples[offset + i] >> shift) + half];
+        }
+    }
+
+    /**
+     * Expands an encoded value back to a signed 16-bit sample.
+     */
+    public abstract short decode(byte value);
+
+    /**
+     * Computes the encoded value for a sample that has already been shifted to the resolution of this law.
+     */
+    abstract byte compute(int sample);
+
+    /**
+     * Returns the segment of the given magnitude, where segment 0 ends at firstSegmentEnd and each following
+     * segment is twice as long, or 8 if the magnitude is beyond the last segment.
+     */
+    private static int segment(int magnitude, int firstSegmentEnd) {
+        int end = firstSegmentEnd;
+        for (int segment = 0; segment < 8; segment++) {
+            if (magnitude <= end) {
+                return segment;
+            }
+            end = (end << 1) | 1;
+        }
+        return 8;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Streams a {@link ToneSequence} as 8 kHz G.711 frames, such as for telephony hold music.
+ * <p>
+ * Tones are rendered directly at 8 kHz and compressed frame by frame, so each stream holds only one frame of
+ * samples no matter how long the tune is. Only band-limited waveforms should be used at this sample rate; the
+ * default is a sine wave.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class G711Stream
+{
+    /** Sample rate of G.711 audio, in hz */
+    public static final int SAMPLE_RATE = 8000;
+
+    /** Frame length used if not specified, in milliseconds */
+    public static final int DEFAULT_FRAME_MILLIS = 20;
+
+    /** Companding law */
+    public final G711Law law;
+
+    /** Number of samples, and therefore bytes, in each frame */
+    public final int frameSize;
+
+    private final ToneStream stream;
+
+    private final short[] samples;
+
+    /**
+     * Creates a stream of {@link #DEFAULT_FRAME_MILLIS} ms sine wave frames.
+     *
+     * @param toneSequence The sequence to stream
+     * @param law The companding law
+     */
+    public G711Stream(ToneSequence toneSequence, G711Law law) {
+        this(toneSequence, law, DEFAULT_FRAME_MILLIS, Waveform.SINE);
+    }
+
+    /**
+     * Creates a stream.
+     *
+     * @param toneSequence The sequence to stream
+     * @param law The companding law
+     * @param frameMillis The length of each frame, in milliseconds. Must be greater than 0.
+     * @param waveform The oscillator waveform. Should be {@link Waveform#SINE} or one of the band-limited waveforms.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public G711Stream(ToneSequence toneSequence, G711Law law, int frameMillis, Waveform waveform) {
+        if (law == null) {
+            throw new IllegalArgumentException("law cannot be null.");
+        }
+        if (frameMillis <= 0) {
+            throw new IllegalArgumentException("frameMillis must be > 0.");
+        }
+        this.law = law;
+        this.frameSize = SAMPLE_RATE * frameMillis / 1000;
+        this.stream = new ToneRenderer(SAMPLE_RATE, waveform).open(toneSequence);
+        this.samples = new short[frameSize];
+    }
+
+    /** Returns the number of frames in the tune, including a final partial frame */
+    public long frameCount() {
+        return (stream.length() + frameSize - 1) / frameSize;
+    }
+
+    /**
+     * Encodes the next frame into the given array. A final partial frame is padded with silence.
+     *
+     * @param frame The array to encode into. Must hold at least {@link #frameSize} bytes.
+     * @return true if a frame was encoded, false if the end of the tune has been reached.
+     */
+    public boolean nextFrame(byte[] frame) {
+        int count = stream.read(samples, 0, frameSize);
+        if (count == -1) {
+            return false;
+        }
+        for (int i = count; i < frameSize; i++) {
+            samples[i] = 0;
+        }
+        law.encode(samples, 0, frame, 0, frameSize);
+        return true;
+    }
+
+    /**
+     * Ends the stream. Only needed if it is abandoned before the end of the tune, so the render is still recorded in
+     * the installed {@link RTTTLMetrics}.
+     */
+    public void close() {
+        stream.close();
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+import java.util.AbstractList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An RTTTL string parsed for live editing, created by {@link RTTTLParser#parseIncremental(String)}.
+ * <p>
+ * Along with the parsed {@link ToneSequence}, a parse remembers the text of each tone command and the default
+ * octave, default duration and tempo after it. {@link #edit(int, int, String)} re-scans only the tone commands an
+ * edit touches. If the edit changes an inline control pair, the following commands are re-evaluated only until the
+ * defaults match the previous parse again; the rest of the tones are reused. Edits to the name or control section,
+ * or edits adding or removing a ':', parse the whole string again.
+ * <p>
+ * The commands are kept in a persistent balanced tree that also holds their totals, so an edit costs time
+ * logarithmic in the number of commands plus the size of the edit. The edited parse shares the untouched part of the
+ * tree with this one, its tone list is a view of the tree, and its text is only built when first asked for.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public class IncrementalParse
+{
+    /** The result of parsing {@link #text()}, identical to that of {@link RTTTLParser#parse(String)} */
+    public final ToneSequence toneSequence;
+
+    private final RTTTLParser parser;
+
+    /** The name and control section, up to and including the ':' before the tone section */
+    private final String header;
+
+    /** Defaults set by the control section */
+    private final int initialOctave;
+
+    private final Duration initialDuration;
+
+    private final int initialBeatsPerMinute;
+
+    /** The tone commands, or null if the string cannot be edited incrementally */
+    private final Node commands;
+
+    /** The RTTTL string, or null until first built */
+    private volatile String text;
+
+    private IncrementalParse(String text, ToneSequence toneSequence, RTTTLParser parser, String header,
+        RTTTLParser.ParseContext initialState, Node commands)
+    {
+        this.text = text;
+        this.toneSequence = toneSequence;
+        this.parser = parser;
+        this.header = header;
+        this.initialOctave = initialState.defaultOctave;
+        this.initialDuration = initialState.defaultDuration;
+        this.initialBeatsPerMinute = initialState.beatsPerMinute;
+        this.commands = commands;
+    }
+
+    /**
+     * Parses the whole of the given string.
+     */
+    static IncrementalParse parse(RTTTLParser parser, String text)
+        throws ParseException
+    {
+        ToneSequence parsed = parser.parse(text);
+
+        int nameEnd = text.indexOf(':');
+        int toneSectionStart = text.indexOf(':', nameEnd + 1) + 1;
+        String header = text.substring(0, toneSectionStart);
+        RTTTLParser.ParseContext context = new RTTTLParser.ParseContext();
+        parser.parseControlSection(context, text.substring(nameEnd + 1, toneSectionStart - 1).replace(" ", ""));
+        if (text.indexOf(':', toneSectionStart) != -1) {
+            // Trailing ':'s are allowed, but leave the tone section nowhere to be edited in place
+            return new IncrementalParse(text, parsed, parser, header, context, null);
+        }
+
+        // Scan again to record the commands, keeping their tones so that edits can reuse them
+        Node commands = scan(parser, copyState(context), text.substring(toneSectionStart), null);
+        ToneSequence toneSequence = new ToneSequence(parsed.name, new ToneList(commands), parsed.defaultOctave,
+            parsed.defaultDuration, parsed.beatsPerMinute);
+        return new IncrementalParse(text, toneSequence, parser, header, context, commands);
+    }
+
+    /**
+     * Returns the RTTTL string. The string of an edited parse is built on the first call.
+     */
+    public String text() {
+        String result = text;
+        if (result == null) {
+            StringBuilder builder = new StringBuilder(length() + 1);
+            builder.append(header);
+            appendCommands(commands, builder);
+            builder.setLength(builder.length() - 1);
+            result = builder.toString();
+            text = result;
+        }
+        return result;
+    }
+
+    /** Returns the length of the RTTTL string */
+    public int length() {
+        String result = text;
+        return result != null ? result.length() : header.length() + commands.chars - 1;
+    }
+
+    /**
+     * Applies an edit to the string and parses the result.
+     *
+     * @param offset The offset in {@link #text()} of the edit
+     * @param removedLength The number of characters removed at the offset
+     * @param insertedText The text inserted at the offset
+     * @return The parse of the edited string
+     * @throws ParseException If the edited string is invalid.
+     * @throws ParseLimitExceededException If the edited string exceeds the limits of the parser. If the edited
+     *         string is both invalid and over a limit, either exception may be thrown.
+     * @throws IllegalArgumentException If the edit is outside the string.
+     */
+    public IncrementalParse edit(int offset, int removedLength, String insertedText)
+        throws ParseException
+    {
+        int length = length();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new IllegalArgumentException("Edit of " + removedLength + " characters at " + offset +
+                " is outside the string.");
+        }
+        if (insertedText == null) {
+            throw new IllegalArgumentException("insertedText cannot be null.");
+        }
+        // An editable tone section holds no ':', so only the inserted text can add one
+        if (commands == null || offset < header.length() || insertedText.indexOf(':') != -1) {
+            String oldText = text();
+            return parse(parser, oldText.substring(0, offset) + insertedText +
+                oldText.substring(offset + removedLength));
+        }
+
+        // Split off the commands touched by the edit, where a command includes the ',' after it
+        int position = offset - header.length();
+        int first = indexAt(commands, position);
+        int last = indexAt(commands, position + removedLength);
+        Node[] parts = new Node[2];
+        split(commands, first, parts);
+        Node before = parts[0];
+        split(parts[1], last - first + 1, parts);
+        Node touched = parts[0];
+        Node after = parts[1];
+
+        // Re-scan the touched commands
+        StringBuilder region = new StringBuilder();
+        appendCommands(touched, region);
+        region.setLength(region.length() - 1);
+        int regionOffset = position - chars(before);
+        region.replace(regionOffset, regionOffset + removedLength, insertedText);
+        RTTTLParser.ParseContext state = new RTTTLParser.ParseContext();
+        setState(state, before == null ? null : last(before));
+        Node result = scan(parser, state, region.toString(), before);
+
+        // Re-evaluate following commands until the defaults match those of the previous parse
+        Node previous = last(touched);
+        while (after != null && !previous.hasState(state)) {
+            split(after, 1, parts);
+            previous = parts[0];
+            after = parts[1];
+            result = merge(result, process(parser, state, previous.command.text));
+        }
+        result = merge(result, after);
+
+        checkEmptyCommands(result);
+        parser.checkTotals(length + insertedText.length() - removedLength, result.toneCount,
+            result.controlPairCount);
+        Command end = last(result).command;
+        parser.checkDurationLimit(result.units, end.beatsPerMinute);
+        ToneSequence newSequence = new ToneSequence(toneSequence.name, new ToneList(result), end.octave,
+            end.duration, end.beatsPerMinute);
+        return new IncrementalParse(null, newSequence, parser, header, initialState(), result);
+    }
+
+    /**
+     * Sets the defaults of the given context to those after the given command, or to those of the control section
+     * if the command is null.
+     */
+    private void setState(RTTTLParser.ParseContext context, Node node) {
+        if (node == null) {
+            context.defaultOctave = initialOctave;
+            context.defaultDuration = initialDuration;
+            context.beatsPerMinute = initialBeatsPerMinute;
+        } else {
+            context.defaultOctave = node.command.octave;
+            context.defaultDuration = node.command.duration;
+            context.beatsPerMinute = node.command.beatsPerMinute;
+        }
+    }
+
+    private RTTTLParser.ParseContext initialState() {
+        RTTTLParser.ParseContext context = new RTTTLParser.ParseContext();
+        setState(context, null);
+        return context;
+    }
+
+    private static RTTTLParser.ParseContext copyState(RTTTLParser.ParseContext context) {
+        RTTTLParser.ParseContext copy = new RTTTLParser.ParseContext();
+        copy.defaultOctave = context.defaultOctave;
+        copy.defaultDuration = context.defaultDuration;
+        copy.beatsPerMinute = context.beatsPerMinute;
+        return copy;
+    }
+
+    /**
+     * Throws the parser's exception for an empty command unless all empty commands are trailing separators.
+     */
+    private void checkEmptyCommands(Node root)
+        throws ParseException
+    {
+        if (root.emptyCount != root.trailingEmptyCount || (root.count == 1 && root.emptyCount == 1)) {
+            parser.processToneCommand(new RTTTLParser.ParseContext(), "");
+        }
+    }
+
+    /**
+     * Processes the comma separated tone commands of the given text, appending them to the given tree.
+     */
+    private static Node scan(RTTTLParser parser, RTTTLParser.ParseContext state, String text, Node tree)
+        throws ParseException
+    {
+        int start = 0;
+        while (true) {
+            int separator = text.indexOf(',', start);
+            int end = separator == -1 ? text.length() : separator;
+            tree = merge(tree, process(parser, state, text.substring(start, end)));
+            if (separator == -1) {
+                return tree;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Processes a single tone command, returning it as a tree of one node.
+     */
+    private static Node process(RTTTLParser parser, RTTTLParser.ParseContext state, String text)
+        throws ParseException
+    {
+        String command = text.replace(" ", "");
+        Tone tone = null;
+        boolean empty = command.length() == 0;
+        // An empty command is only allowed at the end of the tone section, which is checked once the section is
+        // complete
+        if (!empty) {
+            int size = state.toneList.size();
+            parser.processToneCommand(state, command);
+            tone = state.toneList.size() > size ? state.toneList.get(size) : null;
+        }
+        return new Node(new Command(text, tone, empty, state), null, null, nextPriority());
+    }
+
+    /** Appends the text of each command in the tree to the builder, followed by a ',' */
+    private static void appendCommands(Node node, StringBuilder builder) {
+        if (node != null) {
+            appendCommands(node.left, builder);
+            builder.append(node.command.text).append(',');
+            appendCommands(node.right, builder);
+        }
+    }
+
+    /** Returns the index of the command containing the given offset in the tone section */
+    private static int indexAt(Node node, int position) {
+        int index = 0;
+        while (true) {
+            int leftChars = chars(node.left);
+            if (position < leftChars) {
+                node = node.left;
+                continue;
+            }
+            position -= leftChars;
+            index += count(node.left);
+            int commandChars = node.command.text.length() + 1;
+            if (position < commandChars || node.right == null) {
+                return index;
+            }
+            position -= commandChars;
+            index++;
+            node = node.right;
+        }
+    }
+
+    /** Returns the last command of a non-empty tree */
+    private static Node last(Node node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Splits a tree into its first count commands, in parts[0], and the rest, in parts[1]. The tree is unchanged.
+     */
+    private static void split(Node node, int count, Node[] parts) {
+        if (node == null) {
+            parts[0] = null;
+            parts[1] = null;
+        } else if (count <= count(node.left)) {
+            split(node.left, count, parts);
+            parts[1] = new Node(node.command, parts[1], node.right, node.priority);
+        } else {
+            split(node.right, count - count(node.left) - 1, parts);
+            parts[0] = new Node(node.command, node.left, parts[0], node.priority);
+        }
+    }
+
+    /**
+     * Returns a tree of the commands of the first tree followed by those of the second. Neither tree is changed.
+     */
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            return new Node(first.command, first.left, merge(first.right, second), first.priority);
+        }
+        return new Node(second.command, merge(first, second.left), second.right, second.priority);
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private static int chars(Node node) {
+        return node == null ? 0 : node.chars;
+    }
+
+    private static int toneCount(Node node) {
+        return node == null ? 0 : node.toneCount;
+    }
+
+    private static long units(Node node) {
+        return node == null ? 0 : node.units;
+    }
+
+    private static final AtomicLong PRIORITY_SEED = new AtomicLong();
+
+    /** Returns a well mixed pseudo-random priority, from the SplitMix64 sequence */
+    private static int nextPriority() {
+        long z = PRIORITY_SEED.addAndGet(0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+
+    /**
+     * A tone command and the defaults after it.
+     */
+    private static class Command
+    {
+        /** The text of the command, including any spaces */
+        final String text;
+
+        /** The tone, or null for control pairs and empty commands */
+        final Tone tone;
+
+        final boolean empty;
+
+        final int octave;
+
+        final Duration duration;
+
+        final int beatsPerMinute;
+
+        /** Length of the tone in units, or 0 */
+        final int units;
+
+        Command(String text, Tone tone, boolean empty, RTTTLParser.ParseContext state) {
+            this.text = text;
+            this.tone = tone;
+            this.empty = empty;
+            this.octave = state.defaultOctave;
+            this.duration = state.defaultDuration;
+            this.beatsPerMinute = state.beatsPerMinute;
+            this.units = tone == null ? 0 : ToneRenderer.durationUnits(tone.duration);
+        }
+    }
+
+    /**
+     * A node of a treap of commands, ordered by position and heap ordered by priority, with the totals of its
+     * subtree.
+     */
+    private static class Node
+    {
+        final Command command;
+
+        final Node left;
+
+        final Node right;
+
+        final int priority;
+
+        /** Number of commands */
+        final int count;
+
+        /** Number of characters, counting a ',' after each command */
+        final int chars;
+
+        final int toneCount;
+
+        final int controlPairCount;
+
+        final int emptyCount;
+
+        /** Number of empty commands at the end */
+        final int trailingEmptyCount;
+
+        /** Total length of the tones, in units */
+        final long units;
+
+        Node(Command command, Node left, Node right, int priority) {
+            this.command = command;
+            this.left = left;
+            this.right = right;
+            this.priority = priority;
+            count = count(left) + 1 + count(right);
+            chars = chars(left) + command.text.length() + 1 + chars(right);
+            toneCount = toneCount(left) + (command.tone != null ? 1 : 0) + toneCount(right);
+            int controlPairs = command.tone == null && !command.empty ? 1 : 0;
+            controlPairCount = (left == null ? 0 : left.controlPairCount) + controlPairs +
+                (right == null ? 0 : right.controlPairCount);
+            emptyCount = (left == null ? 0 : left.emptyCount) + (command.empty ? 1 : 0) +
+                (right == null ? 0 : right.emptyCount);
+            if (right != null && right.emptyCount != right.count) {
+                trailingEmptyCount = right.trailingEmptyCount;
+            } else if (!command.empty) {
+                trailingEmptyCount = count(right);
+            } else {
+                trailingEmptyCount = count(right) + 1 + (left == null ? 0 : left.trailingEmptyCount);
+            }
+            units = units(left) + command.units + units(right);
+        }
+
+        /** Returns true if the defaults after this command match those of the given context */
+        boolean hasState(RTTTLParser.ParseContext state) {
+            return command.octave == state.defaultOctave && command.duration == state.defaultDuration &&
+                command.beatsPerMinute == state.beatsPerMinute;
+        }
+    }
+
+    /**
+     * Unmodifiable view of the tones of a tree of commands.
+     */
+    private static class ToneList extends AbstractList<Tone>
+    {
+        private final Node root;
+
+        ToneList(Node root) {
+            this.root = root;
+        }
+
+        @Override public Tone get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of range for " + size() + " tones.");
+            }
+            Node node = root;
+            while (true) {
+                int leftTones = toneCount(node.left);
+                if (index < leftTones) {
+                    node = node.left;
+                    continue;
+                }
+                index -= leftTones;
+                if (node.command.tone != null) {
+                    if (index == 0) {
+                        return node.command.tone;
+                    }
+                    index--;
+                }
+                node = node.right;
+            }
+        }
+
+        @Override public int size() {
+            return toneCount(root);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded pipeline that ingests RTTTL strings: read, parse, validate, dedupe and store.
+ * <p>
+ * Stages are connected by bounded queues of batches. A stage that falls behind fills its input queue, which blocks
+ * the stages before it, so memory use stays flat no matter how fast the source is. Each stage runs on its own
+ * configurable number of threads, and records throughput and queue depth metrics that may be read while the
+ * pipeline runs.
+ * <p>
+ * Reading runs on a single thread, since the source iterator need not be thread safe. Deduplication keeps every
+ * distinct {@link ToneSequence} seen, so its memory grows with the number of distinct sequences.
+ * <p>
+ * A pipeline runs once. Settings must be changed before calling {@link #run()}.
+ */
+public class IngestPipeline
+{
+    /** A stage of the pipeline */
+    public enum Stage
+    {
+        READ, PARSE, VALIDATE, DEDUPE, STORE
+    }
+
+    /** Decides which parsed sequences are accepted */
+    public interface Validator
+    {
+        /** Returns true if the sequence should be stored */
+        boolean isValid(ToneSequence toneSequence);
+    }
+
+    /** Stores accepted sequences */
+    public interface Sink
+    {
+        /**
+         * Stores a batch of sequences. May be called concurrently from several threads if the store stage has more
+         * than one thread.
+         *
+         * @throws Exception If storing failed, which stops the pipeline.
+         */
+        void store(List<ToneSequence> batch)
+            throws Exception;
+    }
+
+    /** Validator that accepts every sequence */
+    public static final Validator ACCEPT_ALL = new Validator() {
+        @Override public boolean isValid(ToneSequence toneSequence) {
+            return true;
+        }
+    };
+
+    /** Marks the end of the records in a queue */
+    private static final List<Object> END = Collections.unmodifiableList(new ArrayList<Object>());
+
+    private final Iterator<String> source;
+
+    private final Validator validator;
+
+    private final Sink sink;
+
+    private RTTTLParser parser = new RTTTLParser();
+
+    private int batchSize = 256;
+
+    private int queueCapacity = 16;
+
+    private final int[] threadCounts = new int[Stage.values().length];
+
+    private final AtomicLong[] recordsIn = newCounters();
+
+    private final AtomicLong[] recordsOut = newCounters();
+
+    private final AtomicLong[] busyNanos = newCounters();
+
+    /** Input queue of each stage, or null for the read stage */
+    private final List<BlockingQueue<List<Object>>> queues = new ArrayList<BlockingQueue<List<Object>>>();
+
+    private final AtomicLong parseFailureCount = new AtomicLong();
+
+    private final AtomicLong invalidCount = new AtomicLong();
+
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    private final Set<ToneSequence> seen =
+        Collections.newSetFromMap(new ConcurrentHashMap<ToneSequence, Boolean>());
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    private volatile Throwable failure;
+
+    /** Set once the pipeline has been told to stop, before its threads are interrupted */
+    private volatile boolean stopped;
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param source The RTTTL strings to ingest
+     * @param validator Decides which parsed sequences are stored
+     * @param sink Stores the accepted sequences
+     */
+    public IngestPipeline(Iterator<String> source, Validator validator, Sink sink) {
+        this.source = source;
+        this.validator = validator;
+        this.sink = sink;
+        threadCounts[Stage.READ.ordinal()] = 1;
+        threadCounts[Stage.PARSE.ordinal()] = Runtime.getRuntime().availableProcessors();
+        threadCounts[Stage.VALIDATE.ordinal()] = 1;
+        threadCounts[Stage.DEDUPE.ordinal()] = 1;
+        threadCounts[Stage.STORE.ordinal()] = 1;
+    }
+
+    /** Sets the parser used by the parse stage, such as one with {@link ParseLimits}. */
+    public void setParser(RTTTLParser parser) {
+        this.parser = parser;
+    }
+
+    /** Sets the number of records passed between stages at a time. The default is 256. */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /** Sets the number of batches each queue between stages can hold. The default is 16. */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be > 0.");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the number of threads running the given stage. The read stage always has one thread. By default, the
+     * parse stage has one thread per available processor and the other stages have one thread.
+     */
+    public void setThreadCount(Stage stage, int threadCount) {
+        if (threadCount <= 0 || (stage == Stage.READ && threadCount != 1)) {
+            throw new IllegalArgumentException("Invalid thread count " + threadCount + " for stage " + stage + ".");
+        }
+        threadCounts[stage.ordinal()] = threadCount;
+    }
+
+    /**
+     * Runs the pipeline until every record has been stored.
+     *
+     * @throws InterruptedException If the calling thread is interrupted, which stops the pipeline.
+     * @throws ExecutionException If a stage failed, which stops the pipeline.
+     * @throws IllegalStateException If the pipeline has already been run.
+     */
+    public void run()
+        throws InterruptedException, ExecutionException
+    {
+        if (startNanos != 0) {
+            throw new IllegalStateException("Pipeline has already been run.");
+        }
+        startNanos = System.nanoTime();
+
+        Stage[] stages = Stage.values();
+        queues.add(null);
+        for (int i = 1; i < stages.length; i++) {
+            queues.add(new ArrayBlockingQueue<List<Object>>(queueCapacity));
+        }
+        for (final Stage stage : stages) {
+            final AtomicInteger running = new AtomicInteger(threadCounts[stage.ordinal()]);
+            for (int i = 0; i < threadCounts[stage.ordinal()]; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override public void run() {
+                        runStage(stage, running);
+                    }
+                }, "ingest-" + stage.name().toLowerCase() + "-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        } finally {
+            endNanos = System.nanoTime();
+        }
+        if (failure != null) {
+            throw new ExecutionException("Ingest pipeline failed.", failure);
+        }
+    }
+
+    /** Returns the number of records taken in by the given stage */
+    public long recordsIn(Stage stage) {
+        return recordsIn[stage.ordinal()].get();
+    }
+
+    /** Returns the number of records passed on by the given stage */
+    public long recordsOut(Stage stage) {
+        return recordsOut[stage.ordinal()].get();
+    }
+
+    /** Returns the total time the threads of the given stage spent working, in nanoseconds */
+    public long busyNanos(Stage stage) {
+        return busyNanos[stage.ordinal()].get();
+    }
+
+    /** Returns the number of batches waiting in front of the given stage */
+    public int queueDepth(Stage stage) {
+        BlockingQueue<List<Object>> queue = stage.ordinal() < queues.size() ? queues.get(stage.ordinal()) : null;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /** Returns the number of records taken in by the given stage per second since the pipeline started */
+    public double throughput(Stage stage) {
+        if (startNanos == 0) {
+            return 0.0;
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return recordsIn(stage) * 1.0E9 / Math.max(1, end - startNanos);
+    }
+
+    /** Returns the number of strings that could not be parsed */
+    public long parseFailureCount() {
+        return parseFailureCount.get();
+    }
+
+    /** Returns the number of sequences rejected by the validator */
+    public long invalidCount() {
+        return invalidCount.get();
+    }
+
+    /** Returns the number of sequences dropped as duplicates */
+    public long duplicateCount() {
+        return duplicateCount.get();
+    }
+
+    private void runStage(Stage stage, AtomicInteger running) {
+        int index = stage.ordinal();
+        BlockingQueue<List<Object>> out = index + 1 < queues.size() ? queues.get(index + 1) : null;
+        try {
+            if (stage == Stage.READ) {
+                read(out);
+            } else {
+                BlockingQueue<List<Object>> in = queues.get(index);
+                while (true) {
+                    List<Object> batch = in.take();
+                    if (batch == END) {
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    List<Object> result = process(stage, batch);
+                    busyNanos[index].addAndGet(System.nanoTime() - start);
+                    recordsIn[index].addAndGet(batch.size());
+                    recordsOut[index].addAndGet(result.size());
+                    if (out != null && !result.isEmpty()) {
+                        out.put(result);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped because another stage failed
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            if (running.decrementAndGet() == 0 && out != null) {
+                endStage(out, threadCounts[index + 1]);
+            }
+        }
+    }
+
+    /**
+     * Tells every thread of the next stage that there are no more records. Gives up if the pipeline stops, since the
+     * next stage may then have ended and never drain its queue.
+     */
+    private void endStage(BlockingQueue<List<Object>> out, int threadCount) {
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                do {
+                    if (stopped || failure != null) {
+                        return;
+                    }
+                } while (!out.offer(END, 100, TimeUnit.MILLISECONDS));
+            }
+        } catch (InterruptedException e) {
+            // Stopped because another stage failed
+        }
+    }
+
+    private void read(BlockingQueue<List<Object>> out)
+        throws InterruptedException
+    {
+        int index = Stage.READ.ordinal();
+        while (true) {
+            long start = System.nanoTime();
+            List<Object> batch = new ArrayList<Object>(batchSize);
+            while (batch.size() < batchSize && source.hasNext()) {
+                batch.add(source.next());
+            }
+            busyNanos[index].addAndGet(System.nanoTime() - start);
+            if (batch.isEmpty()) {
+                return;
+            }
+            recordsIn[index].addAndGet(batch.size());
+            recordsOut[index].addAndGet(batch.size());
+            out.put(batch);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> process(Stage stage, List<Object> batch)
+        throws Exception
+    {
+        List<Object> result = new ArrayList<Object>(batch.size());
+        switch (stage) {
+            case PARSE:
+                for (Object record : batch) {
+                    try {
+                        result.add(parser.parse((String) record));
+                    } catch (ParseException e) {
+                        parseFailureCount.incrementAndGet();
+                    }
+                }
+                break;
+            case VALIDATE:
+                for (Object record : batch) {
+                    if (validator.isValid((ToneSequence) record)) {
+                        result.add(record);
+                    } else {
+                        invalidCount.incrementAndGet();
+                    }
+                }
+                break;
+            case DEDUPE:
+                for (Object record : batch) {
+                    if (seen.add((ToneSequence) record)) {
+                        result.add(record);
+                    } else {
+                        duplicateCount.incrementAndGet();
+                    }
+                }
+                break;
+            case STORE:
+                List<?> sequences = batch;
+                sink.store((List<ToneSequence>) sequences);
+                // Passed on to nothing, but counted as the records out of the stage
+                return batch;
+            default:
+                throw new IllegalStateException("Unexpected stage " + stage);
+        }
+        return result;
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+            stop();
+        }
+    }
+
+    private void stop() {
+        stopped = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private static AtomicLong[] newCounters() {
+        AtomicLong[] result = new AtomicLong[Stage.values().length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new AtomicLong();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Immutable result of a {@link MelodySimilarityIndex} search.
+ */
+public class MelodyMatch {
+    /** Index of the matching sequence in the list the index was built from */
+    public final int index;
+
+    /** The matching sequence */
+    public final ToneSequence toneSequence;
+
+    /** Dynamic time warping distance from the query; 0 for an identical melody */
+    public final float distance;
+
+    /**
+     * Creates a new match.
+     */
+    public MelodyMatch(int index, ToneSequence toneSequence, float distance) {
+        this.index = index;
+        this.toneSequence = toneSequence;
+        this.distance = distance;
+    }
+
+    @Override public String toString() {
+        return "MelodyMatch{" +
+            "index=" + index +
+            ", name='" + toneSequence.name + '\'' +
+            ", distance=" + distance +
+            '}';
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the melodies most similar to a query, tolerating differences in key, tempo and small differences in pitch.
+ * <p>
+ * Each melody is reduced to a pitch contour: its notes are resampled to a fixed number of points evenly spaced in
+ * time, and the mean pitch is subtracted. Rests are ignored. Contours are compared using dynamic time warping (DTW)
+ * constrained to a Sakoe-Chiba band, so local changes in tempo cost little.
+ * <p>
+ * Searches avoid most DTW computations with a cascade of cheap lower bounds (LB_Kim, then LB_Keogh in both
+ * directions) and abandon a DTW computation as soon as it cannot beat the current k-th best match. Contours are
+ * stored in a single primitive array. Instances are immutable and may be searched from several threads.
+ */
+public class MelodySimilarityIndex
+{
+    /** Number of points in a contour if not specified */
+    public static final int DEFAULT_SERIES_LENGTH = 32;
+
+    /** Number of points in each contour */
+    public final int seriesLength;
+
+    /** Half width of the Sakoe-Chiba band, in points */
+    public final int window;
+
+    private final List<ToneSequence> sequences;
+
+    /** Contours of all sequences, one after another */
+    private final float[] series;
+
+    private static final Comparator<MelodyMatch> WORST_FIRST = new Comparator<MelodyMatch>() {
+        @Override public int compare(MelodyMatch a, MelodyMatch b) {
+            int result = Float.compare(b.distance, a.distance);
+            return result != 0 ? result : b.index - a.index;
+        }
+    };
+
+    /**
+     * Creates an index using contours of {@link #DEFAULT_SERIES_LENGTH} points and a band of a tenth of that.
+     *
+     * @param sequences The sequences to index
+     */
+    public MelodySimilarityIndex(List<ToneSequence> sequences) {
+        this(sequences, DEFAULT_SERIES_LENGTH, DEFAULT_SERIES_LENGTH / 10);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param sequences The sequences to index
+     * @param seriesLength The number of points in each contour. Must be at least 2.
+     * @param window The half width of the Sakoe-Chiba band, in points. Must be at least 0.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public MelodySimilarityIndex(List<ToneSequence> sequences, int seriesLength, int window) {
+        if (seriesLength < 2) {
+            throw new IllegalArgumentException("seriesLength must be >= 2.");
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("window must be >= 0.");
+        }
+        this.seriesLength = seriesLength;
+        this.window = window;
+        this.sequences = new ArrayList<ToneSequence>(sequences);
+        this.series = new float[sequences.size() * seriesLength];
+        for (int i = 0; i < this.sequences.size(); i++) {
+            toSeries(this.sequences.get(i), series, i * seriesLength, seriesLength);
+        }
+    }
+
+    /** Returns the number of indexed sequences */
+    public int size() {
+        return sequences.size();
+    }
+
+    /**
+     * Returns the k sequences most similar to the query, searching on the calling thread.
+     *
+     * @param query The melody to search for
+     * @param k The maximum number of matches to return
+     * @return The matches, most similar first
+     */
+    public List<MelodyMatch> search(ToneSequence query, int k) {
+        Search search = new Search(query, k);
+        return merge(Collections.singletonList(search.scan(0, sequences.size())), k);
+    }
+
+    /**
+     * Returns the k sequences most similar to the query, splitting the search into several parts run on the
+     * given executor. The parts share the best distance found so far, so pruning improves as any part finds good
+     * matches.
+     *
+     * @param query The melody to search for
+     * @param k The maximum number of matches to return
+     * @param executor The executor that runs the parts of the search
+     * @param parallelism The number of parts to split the search into
+     * @return The matches, most similar first
+     * @throws IllegalArgumentException If parallelism is not positive.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the search.
+     */
+    public List<MelodyMatch> search(ToneSequence query, int k, ExecutorService executor, int parallelism)
+        throws InterruptedException
+    {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be > 0.");
+        }
+        final Search search = new Search(query, k);
+        int size = sequences.size();
+        List<Future<List<MelodyMatch>>> futures = new ArrayList<Future<List<MelodyMatch>>>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            final int from = (int) ((long) size * i / parallelism);
+            final int to = (int) ((long) size * (i + 1) / parallelism);
+            futures.add(executor.submit(new Callable<List<MelodyMatch>>() {
+                @Override public List<MelodyMatch> call() {
+                    return search.scan(from, to);
+                }
+            }));
+        }
+        List<List<MelodyMatch>> parts = new ArrayList<List<MelodyMatch>>(parallelism);
+        try {
+            for (Future<List<MelodyMatch>> future : futures) {
+                parts.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<List<MelodyMatch>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return merge(parts, k);
+    }
+
+    /**
+     * State of a single query, shared by all parts of the search.
+     */
+    private class Search
+    {
+        final int k;
+
+        final float[] query = new float[seriesLength];
+
+        final float[] upper = new float[seriesLength];
+
+        final float[] lower = new float[seriesLength];
+
+        /** Smallest k-th best distance found by any part, as float bits */
+        final AtomicInteger threshold = new AtomicInteger(Float.floatToIntBits(Float.POSITIVE_INFINITY));
+
+        Search(ToneSequence queryToneSequence, int k) {
+            this.k = k;
+            toSeries(queryToneSequence, query, 0, seriesLength);
+            envelope(query, 0, upper, lower);
+        }
+
+        List<MelodyMatch> scan(int from, int to) {
+            if (k <= 0) {
+                return new ArrayList<MelodyMatch>();
+            }
+            PriorityQueue<MelodyMatch> best = new PriorityQueue<MelodyMatch>(k, WORST_FIRST);
+            float[] candidateUpper = new float[seriesLength];
+            float[] candidateLower = new float[seriesLength];
+            float[] row = new float[seriesLength];
+            float[] previousRow = new float[seriesLength];
+            for (int i = from; i < to; i++) {
+                float bound = Float.intBitsToFloat(threshold.get());
+                if (best.size() == k) {
+                    bound = Math.min(bound, best.peek().distance);
+                }
+                int offset = i * seriesLength;
+                if (lbKim(offset) >= bound) {
+                    continue;
+                }
+                if (lbKeogh(upper, lower, 0, series, offset, bound) >= bound) {
+                    continue;
+                }
+                envelope(series, offset, candidateUpper, candidateLower);
+                if (lbKeogh(candidateUpper, candidateLower, 0, query, 0, bound) >= bound) {
+                    continue;
+                }
+                float distance = dtw(query, series, offset, bound, row, previousRow);
+                if (distance < bound) {
+                    if (best.size() == k) {
+                        best.poll();
+                    }
+                    best.add(new MelodyMatch(i, sequences.get(i), distance));
+                    if (best.size() == k) {
+                        lowerThreshold(best.peek().distance);
+                    }
+                }
+            }
+            return new ArrayList<MelodyMatch>(best);
+        }
+
+        private void lowerThreshold(float distance) {
+            int bits = Float.floatToIntBits(distance);
+            int current;
+            // Non-negative floats order the same way as their bits
+            while (bits < (current = threshold.get())) {
+                if (threshold.compareAndSet(current, bits)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * LB_Kim lower bound, using the first and last points, which every warping path must match.
+         */
+        private float lbKim(int offset) {
+            float first = query[0] - series[offset];
+            float last = query[seriesLength - 1] - series[offset + seriesLength - 1];
+            return first * first + last * last;
+        }
+    }
+
+    /**
+     * Computes the upper and lower envelope of a contour over the Sakoe-Chiba band.
+     */
+    private void envelope(float[] values, int offset, float[] upper, float[] lower) {
+        for (int i = 0; i < seriesLength; i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(seriesLength - 1, i + window);
+            float max = Float.NEGATIVE_INFINITY;
+            float min = Float.POSITIVE_INFINITY;
+            for (int j = from; j <= to; j++) {
+                float value = values[offset + j];
+                max = Math.max(max, value);
+                min = Math.min(min, value);
+            }
+            upper[i] = max;
+            lower[i] = min;
+        }
+    }
+
+    /**
+     * LB_Keogh lower bound of the DTW distance between the contour whose envelope is given and another contour.
+     * Stops as soon as the bound reaches the given limit.
+     */
+    private float lbKeogh(float[] upper, float[] lower, int envelopeOffset, float[] values, int offset,
+        float limit)
+    {
+        float sum = 0.0f;
+        for (int i = 0; i < seriesLength && sum < limit; i++) {
+            float value = values[offset + i];
+            float d;
+            if (value > upper[envelopeOffset + i]) {
+                d = value - upper[envelopeOffset + i];
+            } else if (value < lower[envelopeOffset + i]) {
+                d = value - lower[envelopeOffset + i];
+            } else {
+                continue;
+            }
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * DTW distance between the query and a candidate contour, as the sum of squared differences along the best
+     * warping path within the band. Returns infinity as soon as every partial path exceeds the limit.
+     */
+    float dtw(float[] query, float[] values, int offset, float limit, float[] row, float[] previousRow) {
+        float infinity = Float.POSITIVE_INFINITY;
+        for (int j = 0; j < seriesLength; j++) {
+            previousRow[j] = infinity;
+        }
+        for (int i = 0; i < seriesLength; i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(seriesLength - 1, i + window);
+            for (int j = 0; j < seriesLength; j++) {
+                row[j] = infinity;
+            }
+            float rowMin = infinity;
+            for (int j = from; j <= to; j++) {
+                float d = query[i] - values[offset + j];
+                float cost;
+                if (i == 0 && j == 0) {
+                    cost = 0.0f;
+                } else {
+                    cost = previousRow[j];
+                    if (j > 0) {
+                        cost = Math.min(cost, Math.min(row[j - 1], previousRow[j - 1]));
+                    }
+                }
+                row[j] = cost + d * d;
+                rowMin = Math.min(rowMin, row[j]);
+            }
+            if (rowMin >= limit) {
+                return infinity;
+            }
+            float[] swap = previousRow;
+            previousRow = row;
+            row = swap;
+        }
+        return previousRow[seriesLength - 1];
+    }
+
+    /**
+     * Computes the contour of a tone sequence: its pitch sampled at length points evenly spaced over the time the
+     * notes are played, minus the mean pitch. A sequence without notes has a flat contour.
+     */
+    static void toSeries(ToneSequence toneSequence, float[] out, int offset, int length) {
+        List<Tone> toneList = toneSequence.toneList;
+        long totalUnits = 0;
+        for (int i = 0; i < toneList.size(); i++) {
+            Tone tone = toneList.get(i);
+            if (!tone.isRest()) {
+                totalUnits += ToneRenderer.durationUnits(tone.duration);
+            }
+        }
+        if (totalUnits == 0) {
+            for (int j = 0; j < length; j++) {
+                out[offset + j] = 0.0f;
+            }
+            return;
+        }
+
+        // Walk the notes, sampling in the middle of each of the length equal slices of time
+        int toneIndex = -1;
+        long noteEnd = 0;
+        int semitone = 0;
+        float sum = 0.0f;
+        for (int j = 0; j < length; j++) {
+            double time = (j + 0.5) * totalUnits / length;
+            while (time >= noteEnd) {
+                Tone tone = toneList.get(++toneIndex);
+                if (!tone.isRest()) {
+                    noteEnd += ToneRenderer.durationUnits(tone.duration);
+                    semitone = tone.note.semitone;
+                }
+            }
+            out[offset + j] = semitone;
+            sum += semitone;
+        }
+        float mean = sum / length;
+        for (int j = 0; j < length; j++) {
+            out[offset + j] -= mean;
+        }
+    }
+
+    private static List<MelodyMatch> merge(List<List<MelodyMatch>> parts, int k) {
+        List<MelodyMatch> result = new ArrayList<MelodyMatch>();
+        for (List<MelodyMatch> part : parts) {
+            result.addAll(part);
+        }
+        Collections.sort(result, Collections.reverseOrder(WORST_FIRST));
+        return result.size() > k ? new ArrayList<MelodyMatch>(result.subList(0, Math.max(0, k))) : result;
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads Standard MIDI Files as tone sequences.
+ * <p>
+ * The file is decoded as it is read; only the start, end and key of each selected note are kept. A single melodic
+ * line is then chosen by keeping the highest note at each point in time, and its notes and gaps are quantised to
+ * the nearest {@link Duration}s at the resolution of the file. The default octave and duration of the result are
+ * the most common octave and duration of its tones.
+ * <p>
+ * Format 0 and 1 files with a ticks per quarter note division are supported. The tempo of the result is the first
+ * tempo in the file, or 120 beats per minute if there is none. The name is the first track name in the file, without
+ * any ':' characters.
+ * <p>
+ * Instances are immutable and thread safe.
+ *
+ * @see MidiWriter
+ */
+public class MidiReader
+{
+    /** Selects notes on every channel but the General MIDI percussion channel */
+    public static final int ANY_CHANNEL = -1;
+
+    /** General MIDI percussion channel, which has no melody */
+    private static final int PERCUSSION_CHANNEL = 9;
+
+    private static final int DEFAULT_TEMPO = 500000;
+
+    private static final Charset NAME_CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int HEADER_CHUNK = 0x4D546864;
+
+    private static final int TRACK_CHUNK = 0x4D54726B;
+
+    /** Most notes a file may have, so that a note index fits in the low bits of a sort key */
+    private static final int MAX_NOTES = 1 << 20;
+
+    /** Latest tick a note may start at, so that a start fits in the high bits of a sort key */
+    private static final long MAX_TICK = (1L << 36) - 1;
+
+    private static final int UNITS_PER_THIRTY_SECOND_NOTE = ToneRenderer.durationUnits(Duration.THIRTY_SECOND);
+
+    /** The channel whose notes are read, or {@link #ANY_CHANNEL} */
+    public final int channel;
+
+    /**
+     * Creates a reader that selects notes on any channel but percussion.
+     */
+    public MidiReader() {
+        this(ANY_CHANNEL);
+    }
+
+    /**
+     * Creates a reader that selects notes on the given channel.
+     *
+     * @param channel The channel from 0 to 15, or {@link #ANY_CHANNEL}
+     * @throws IllegalArgumentException If the channel is invalid.
+     */
+    public MidiReader(int channel) {
+        if (channel < ANY_CHANNEL || channel > 15) {
+            throw new IllegalArgumentException("channel must be between 0-15, inclusive, or ANY_CHANNEL.");
+        }
+        this.channel = channel;
+    }
+
+    /**
+     * Reads a Standard MIDI File from the given stream. The stream is not closed.
+     *
+     * @param in The stream to read
+     * @return The melody of the file
+     * @throws IOException If reading from the stream failed.
+     * @throws ParseException If the file is not a valid Standard MIDI File. The error offset is the offset of the
+     *         invalid data in the file.
+     */
+    public ToneSequence read(InputStream in)
+        throws IOException, ParseException
+    {
+        Input input = new Input(in);
+        NoteList notes = new NoteList();
+
+        if (input.readInt() != HEADER_CHUNK) {
+            throw new ParseException("Not a Standard MIDI File", 0);
+        }
+        long headerLength = input.readInt() & 0xFFFFFFFFL;
+        if (headerLength < 6) {
+            throw new ParseException("Header chunk is too short", (int) input.position);
+        }
+        int format = input.readShort();
+        int trackCount = input.readShort();
+        int division = input.readShort();
+        input.skip(headerLength - 6);
+        if (format > 1) {
+            throw new ParseException("Unsupported MIDI file format " + format, 8);
+        }
+        if ((division & 0x8000) != 0 || division == 0) {
+            throw new ParseException("Only ticks per quarter note divisions are supported", 12);
+        }
+
+        for (int track = 0; track < trackCount; ) {
+            int type = input.readInt();
+            long length = input.readInt() & 0xFFFFFFFFL;
+            if (type == TRACK_CHUNK) {
+                readTrack(input, input.position + length, notes);
+                track++;
+            } else {
+                input.skip(length);
+            }
+        }
+
+        int beatsPerMinute = Math.max(1, Math.round(60000000.0f / (notes.tempo > 0 ? notes.tempo : DEFAULT_TEMPO)));
+        String name = notes.name == null ? "" : notes.name.replace(":", "");
+        return quantise(name, notes.highestLine(), division, beatsPerMinute);
+    }
+
+    /**
+     * Reads the events of a track chunk that ends at the given offset, adding the selected notes to the list.
+     */
+    private void readTrack(Input input, long end, NoteList notes)
+        throws IOException, ParseException
+    {
+        // Start tick of each sounding note, by channel and key, or -1
+        long[] starts = new long[16 * 128];
+        Arrays.fill(starts, -1);
+        long tick = 0;
+        int status = 0;
+        while (input.position < end) {
+            tick += input.readVarInt();
+            if (tick > MAX_TICK) {
+                throw new ParseException("Track is too long", (int) input.position);
+            }
+            int b = input.read();
+            if (b >= 0x80) {
+                status = b;
+                if (status < 0xF0) {
+                    b = input.read();
+                }
+            } else if (status == 0 || status >= 0xF0) {
+                throw new ParseException("Data byte without running status", (int) input.position - 1);
+            }
+
+            if (status == 0xFF) {
+                int type = input.read();
+                long length = input.readVarInt();
+                if (type == 0x51 && length == 3 && notes.tempo == 0) {
+                    notes.tempo = (input.read() << 16) | (input.read() << 8) | input.read();
+                } else if (type == 0x03 && notes.name == null && length <= 0xFF) {
+                    byte[] bytes = new byte[(int) length];
+                    for (int i = 0; i < bytes.length; i++) {
+                        bytes[i] = (byte) input.read();
+                    }
+                    notes.name = new String(bytes, NAME_CHARSET);
+                } else if (type == 0x2F) {
+                    input.skip(length);
+                    break;
+                } else {
+                    input.skip(length);
+                }
+                status = 0;
+            } else if (status == 0xF0 || status == 0xF7) {
+                input.skip(input.readVarInt());
+                status = 0;
+            } else if (status >= 0xF0) {
+                throw new ParseException("Unexpected status byte " + status, (int) input.position - 1);
+            } else {
+                int command = status & 0xF0;
+                int eventChannel = status & 0x0F;
+                if (command == 0xC0 || command == 0xD0) {
+                    continue;
+                }
+                int data2 = input.read();
+                if (command != 0x80 && command != 0x90) {
+                    continue;
+                }
+                if (channel == ANY_CHANNEL ? eventChannel == PERCUSSION_CHANNEL : eventChannel != channel) {
+                    continue;
+                }
+                int index = eventChannel * 128 + (b & 0x7F);
+                if (starts[index] >= 0) {
+                    // Note off, or a note on that retriggers a sounding note
+                    notes.add(starts[index], tick, b & 0x7F);
+                    starts[index] = -1;
+                }
+                if (command == 0x90 && data2 > 0) {
+                    if (notes.size + 16 * 128 >= MAX_NOTES) {
+                        throw new ParseException("File has too many notes", (int) input.position);
+                    }
+                    starts[index] = tick;
+                }
+            }
+        }
+        if (input.position > end) {
+            throw new ParseException("Event extends past the end of the track", (int) end);
+        }
+        input.skip(end - input.position);
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] >= 0) {
+                notes.add(starts[i], tick, i & 0x7F);
+            }
+        }
+    }
+
+    /**
+     * Converts a monophonic line of notes, sorted by start, to a tone sequence.
+     */
+    private static ToneSequence quantise(String name, NoteList line, int ticksPerQuarterNote, int beatsPerMinute) {
+        List<Tone> toneList = new ArrayList<Tone>();
+
+        // Position of the end of the last tone, in units
+        long position = 0;
+        for (int i = 0; i < line.size; i++) {
+            long start = toUnits(line.starts[i], ticksPerQuarterNote);
+            long end = toUnits(line.ends[i], ticksPerQuarterNote);
+            if (start > position) {
+                position = addRests(toneList, start - position, position);
+            }
+            if (end - position < UNITS_PER_THIRTY_SECOND_NOTE / 2) {
+                // Too short to keep after quantising
+                continue;
+            }
+            Duration duration = Duration.findClosestDuration(
+                (float) (end - position) / ToneRenderer.UNITS_PER_QUARTER_NOTE);
+            Note note = Note.findNoteFromSemitone(toNoteRange(line.keys[i]));
+            toneList.add(new Tone(note, duration));
+            position += ToneRenderer.durationUnits(duration);
+        }
+        return ToneSequence.withCommonDefaults(name, toneList, beatsPerMinute);
+    }
+
+    /**
+     * Adds rests filling the given gap, longest first, and returns the new position. A remainder shorter than half
+     * a thirty-second note is dropped.
+     */
+    private static long addRests(List<Tone> toneList, long gap, long position) {
+        while (gap >= UNITS_PER_THIRTY_SECOND_NOTE / 2) {
+            Duration rest = Duration.THIRTY_SECOND;
+            for (Duration duration : Duration.values()) {
+                if (ToneRenderer.durationUnits(duration) <= gap) {
+                    rest = duration;
+                    break;
+                }
+            }
+            toneList.add(new Tone(null, rest));
+            int units = ToneRenderer.durationUnits(rest);
+            gap -= units;
+            position += units;
+        }
+        return position;
+    }
+
+    private static long toUnits(long ticks, int ticksPerQuarterNote) {
+        return (ticks * ToneRenderer.UNITS_PER_QUARTER_NOTE + ticksPerQuarterNote / 2) / ticksPerQuarterNote;
+    }
+
+    /**
+     * Moves a MIDI key by octaves into the range of {@link Note}.
+     */
+    private static int toNoteRange(int key) {
+        while (key < Note.MIN_SEMITONE) {
+            key += 12;
+        }
+        while (key > Note.MAX_SEMITONE) {
+            key -= 12;
+        }
+        return key;
+    }
+
+    /**
+     * Growable list of notes, stored as parallel arrays, plus the tempo and name found while reading.
+     */
+    private static class NoteList
+    {
+        long[] starts = new long[64];
+
+        long[] ends = new long[64];
+
+        int[] keys = new int[64];
+
+        int size;
+
+        /** First tempo in the file, in microseconds per quarter note, or 0 */
+        int tempo;
+
+        /** First track name in the file, or null */
+        String name;
+
+        void add(long start, long end, int key) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            keys[size] = key;
+            size++;
+        }
+
+        /**
+         * Returns the line made of the highest note sounding at each point in time. A note is dropped if it starts
+         * while a higher or equal note is sounding, and a note is cut short when a higher note starts.
+         */
+        NoteList highestLine() {
+            // Sort by start, then by key from highest to lowest
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (starts[i] << 7 | (127 - keys[i])) << 20 | i;
+            }
+            Arrays.sort(order);
+
+            NoteList result = new NoteList();
+            for (long entry : order) {
+                int i = (int) (entry & 0xFFFFF);
+                int last = result.size - 1;
+                if (last >= 0 && starts[i] < result.ends[last]) {
+                    if (keys[i] <= result.keys[last]) {
+                        continue;
+                    }
+                    result.ends[last] = starts[i];
+                }
+                result.add(starts[i], ends[i], keys[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Buffered big-endian input of MIDI primitives that tracks its offset in the file.
+     */
+    private static class Input
+    {
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int index;
+
+        private int limit;
+
+        /** Offset in the file of the next byte */
+        long position;
+
+        Input(InputStream in) {
+            this.in = in;
+        }
+
+        int read()
+            throws IOException
+        {
+            if (index == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                index = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("Unexpected end of MIDI file at offset " + position);
+                }
+            }
+            position++;
+            return buffer[index++] & 0xFF;
+        }
+
+        int readShort()
+            throws IOException
+        {
+            return (read() << 8) | read();
+        }
+
+        int readInt()
+            throws IOException
+        {
+            return (read() << 24) | (read() << 16) | (read() << 8) | read();
+        }
+
+        /** Reads a variable-length quantity of at most 4 bytes */
+        long readVarInt()
+            throws IOException, ParseException
+        {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = read();
+                value = (value << 7) | (b & 0x7F);
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new ParseException("Variable-length quantity is too long", (int) position - 1);
+        }
+
+        void skip(long count)
+            throws IOException
+        {
+            long buffered = Math.min(count, limit - index);
+            index += buffered;
+            position += buffered;
+            count -= buffered;
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped > 0) {
+                    count -= skipped;
+                    position += skipped;
+                } else {
+                    // Either the end of the stream, which read reports, or a stream that cannot skip
+                    read();
+                    count--;
+                }
+            }
+        }
+    }
+}
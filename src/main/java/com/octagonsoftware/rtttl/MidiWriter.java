@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Writes tone sequences as format 0 Standard MIDI Files.
+ * <p>
+ * Notes map directly to MIDI note numbers through {@link Note#semitone}, durations to ticks through
+ * {@link Duration#quarterNoteBeats} and the tempo to a set tempo meta event. The file is written in a single pass
+ * through a small buffer: the track length is computed up front, so nothing is held in memory but the buffer.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public class MidiWriter
+{
+    /** Ticks per quarter note used if not specified */
+    public static final int DEFAULT_TICKS_PER_QUARTER_NOTE = 480;
+
+    /** Note on velocity used if not specified */
+    public static final int DEFAULT_VELOCITY = 100;
+
+    private static final Charset NAME_CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int NOTE_OFF = 0x80;
+
+    private static final int NOTE_ON = 0x90;
+
+    private static final int META = 0xFF;
+
+    private static final int META_TRACK_NAME = 0x03;
+
+    private static final int META_SET_TEMPO = 0x51;
+
+    private static final int META_END_OF_TRACK = 0x2F;
+
+    /** Largest tempo a set tempo event can hold, in microseconds per quarter note */
+    private static final int MAX_TEMPO = 0xFFFFFF;
+
+    /** Largest delta time a variable-length quantity can hold, in ticks */
+    private static final long MAX_DELTA = 0x0FFFFFFF;
+
+    /** Resolution of the file, in ticks per quarter note */
+    public final int ticksPerQuarterNote;
+
+    /** MIDI channel of the notes, from 0 to 15 */
+    public final int channel;
+
+    /** Note on velocity, from 1 to 127 */
+    public final int velocity;
+
+    /**
+     * Creates a writer with {@link #DEFAULT_TICKS_PER_QUARTER_NOTE} ticks per quarter note, writing to channel 0
+     * with {@link #DEFAULT_VELOCITY}.
+     */
+    public MidiWriter() {
+        this(DEFAULT_TICKS_PER_QUARTER_NOTE, 0, DEFAULT_VELOCITY);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param ticksPerQuarterNote The resolution of the file. Must be a positive multiple of 32 below 32768, so that
+     *        every duration is a whole number of ticks.
+     * @param channel The MIDI channel of the notes, from 0 to 15
+     * @param velocity The note on velocity, from 1 to 127
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public MidiWriter(int ticksPerQuarterNote, int channel, int velocity) {
+        if (ticksPerQuarterNote <= 0 || ticksPerQuarterNote > 0x7FFF ||
+            ticksPerQuarterNote % ToneRenderer.UNITS_PER_QUARTER_NOTE != 0)
+        {
+            throw new IllegalArgumentException("ticksPerQuarterNote must be a positive multiple of " +
+                ToneRenderer.UNITS_PER_QUARTER_NOTE + " below 32768.");
+        }
+        if (channel < 0 || channel > 15) {
+            throw new IllegalArgumentException("channel must be between 0-15, inclusive.");
+        }
+        if (velocity < 1 || velocity > 127) {
+            throw new IllegalArgumentException("velocity must be between 1-127, inclusive.");
+        }
+        this.ticksPerQuarterNote = ticksPerQuarterNote;
+        this.channel = channel;
+        this.velocity = velocity;
+    }
+
+    /**
+     * Writes the given sequence to the given stream. The stream is not closed.
+     *
+     * @throws IOException If writing to the stream failed.
+     * @throws IllegalArgumentException If the tempo of the sequence is below 4 beats per minute, or a note or run of
+     *         rests is longer than 2<sup>28</sup> - 1 ticks, which MIDI cannot represent.
+     */
+    public void write(ToneSequence toneSequence, final OutputStream out)
+        throws IOException
+    {
+        write(toneSequence, new Output() {
+            @Override void flush(byte[] buffer, int length)
+                throws IOException
+            {
+                out.write(buffer, 0, length);
+            }
+        });
+    }
+
+    /**
+     * Writes the given sequence to the given channel. The channel is not closed.
+     *
+     * @throws IOException If writing to the channel failed.
+     * @throws IllegalArgumentException If the tempo of the sequence is below 4 beats per minute, or a note or run of
+     *         rests is longer than 2<sup>28</sup> - 1 ticks, which MIDI cannot represent.
+     */
+    public void write(ToneSequence toneSequence, final WritableByteChannel channel)
+        throws IOException
+    {
+        write(toneSequence, new Output() {
+            private ByteBuffer wrapped;
+
+            @Override void flush(byte[] buffer, int length)
+                throws IOException
+            {
+                if (wrapped == null) {
+                    wrapped = ByteBuffer.wrap(buffer);
+                }
+                wrapped.clear().limit(length);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the given sequence as a Standard MIDI File.
+     *
+     * @throws IllegalArgumentException If the tempo of the sequence is below 4 beats per minute, or a note or run of
+     *         rests is longer than 2<sup>28</sup> - 1 ticks, which MIDI cannot represent.
+     */
+    public byte[] toByteArray(ToneSequence toneSequence) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(toneSequence, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void write(ToneSequence toneSequence, Output out)
+        throws IOException
+    {
+        long tempo = 60000000L / toneSequence.beatsPerMinute;
+        if (tempo > MAX_TEMPO) {
+            throw new IllegalArgumentException("Tempo of " + toneSequence.beatsPerMinute +
+                " beats per minute is too slow for MIDI.");
+        }
+        byte[] name = toneSequence.name.getBytes(NAME_CHARSET);
+
+        // Header chunk
+        out.writeAscii("MThd");
+        out.writeInt(6);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(ticksPerQuarterNote);
+
+        // Track chunk
+        out.writeAscii("MTrk");
+        out.writeInt(trackLength(toneSequence.toneList, name.length));
+        if (name.length > 0) {
+            out.writeVarInt(0);
+            out.write(META);
+            out.write(META_TRACK_NAME);
+            out.writeVarInt(name.length);
+            for (byte b : name) {
+                out.write(b);
+            }
+        }
+        out.writeVarInt(0);
+        out.write(META);
+        out.write(META_SET_TEMPO);
+        out.write(3);
+        out.write((int) (tempo >> 16));
+        out.write((int) (tempo >> 8));
+        out.write((int) tempo);
+
+        long delta = 0;
+        for (Tone tone : toneSequence.toneList) {
+            long ticks = ticks(tone.duration);
+            if (tone.isRest()) {
+                delta += ticks;
+            } else {
+                out.writeVarInt(delta);
+                out.write(NOTE_ON | channel);
+                out.write(tone.note.semitone);
+                out.write(velocity);
+                out.writeVarInt(ticks);
+                out.write(NOTE_OFF | channel);
+                out.write(tone.note.semitone);
+                out.write(0);
+                delta = 0;
+            }
+        }
+        out.writeVarInt(delta);
+        out.write(META);
+        out.write(META_END_OF_TRACK);
+        out.write(0);
+        out.flush();
+    }
+
+    /**
+     * Returns the number of bytes in the track chunk, not counting its header.
+     */
+    private int trackLength(List<Tone> toneList, int nameLength) {
+        long length = 0;
+        if (nameLength > 0) {
+            length += 1 + 2 + varIntLength(nameLength) + nameLength;
+        }
+        length += 1 + 3 + 3;
+        long delta = 0;
+        for (Tone tone : toneList) {
+            long ticks = ticks(tone.duration);
+            if (tone.isRest()) {
+                delta += ticks;
+            } else {
+                checkDelta(delta);
+                checkDelta(ticks);
+                length += varIntLength(delta) + 3 + varIntLength(ticks) + 3;
+                delta = 0;
+            }
+        }
+        checkDelta(delta);
+        length += varIntLength(delta) + 3;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tone sequence is too long to write as MIDI.");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Fails if the given delta time does not fit in the four bytes a variable-length quantity may use.
+     */
+    private static void checkDelta(long ticks) {
+        if (ticks > MAX_DELTA) {
+            throw new IllegalArgumentException("Delta time of " + ticks + " ticks is too long for MIDI.");
+        }
+    }
+
+    private long ticks(Duration duration) {
+        long ticksPerUnit = ticksPerQuarterNote / ToneRenderer.UNITS_PER_QUARTER_NOTE;
+        return ToneRenderer.durationUnits(duration) * ticksPerUnit;
+    }
+
+    /**
+     * Returns the number of bytes of a MIDI variable-length quantity.
+     */
+    static int varIntLength(long value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Buffered big-endian output of MIDI primitives.
+     */
+    private abstract static class Output
+    {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int position;
+
+        /** Writes length bytes of the buffer to the destination */
+        abstract void flush(byte[] buffer, int length)
+            throws IOException;
+
+        void write(int b)
+            throws IOException
+        {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        void writeShort(int value)
+            throws IOException
+        {
+            write(value >> 8);
+            write(value);
+        }
+
+        void writeInt(int value)
+            throws IOException
+        {
+            write(value >> 24);
+            write(value >> 16);
+            write(value >> 8);
+            write(value);
+        }
+
+        void writeAscii(String str)
+            throws IOException
+        {
+            for (int i = 0; i < str.length(); i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        /** Writes a variable-length quantity: 7 bits per byte, most significant first, high bit set on all but last */
+        void writeVarInt(long value)
+            throws IOException
+        {
+            for (int shift = 7 * (varIntLength(value) - 1); shift > 0; shift -= 7) {
+                write((int) ((value >>> shift) & 0x7F) | 0x80);
+            }
+            write((int) (value & 0x7F));
+        }
+
+        void flush()
+            throws IOException
+        {
+            if (position > 0) {
+                flush(buffer, position);
+                position = 0;
+            }
+        }
+    }
+}
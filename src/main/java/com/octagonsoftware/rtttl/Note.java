@@ -175,7 +175,7 @@ public enum Note {
     /** The MIDI semitone of this note, where semitone = 69 + 12 * log2(freq / 440) */
     public final int semitone;
 
-    /** The frequency of this note, in hz */
+    /** The frequency of this note, in hz, in the standard tuning. See {@link TuningTable} for other tunings. */
     public final float hz;
 
     /** True if this note is sharp, else false */
@@ -226,6 +226,15 @@ public enum Note {
         return semitoneToNote[semitone];
     }
 
+    /**
+     * Returns the closest note for the given frequency in the given tuning.
+     *
+     * @see TuningTable#findClosestNote(float)
+     */
+    public static Note findClosestNote(float hz, TuningTable tuning) {
+        return tuning.findClosestNote(hz);
+    }
+
     /** Returns the MIDI semitone, given a frequency */
     public static float semitoneFromHz(float hz) {
         return (float) (69 + 12 * (Math.log(hz / 440) / Math.log(2)));
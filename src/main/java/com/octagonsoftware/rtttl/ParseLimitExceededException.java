@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+
+/**
+ * Thrown by {@link RTTTLParser} when an RTTTL string exceeds one of the configured {@link ParseLimits}.
+ */
+public class ParseLimitExceededException extends ParseException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final ParseLimits.Limit limit;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param limit The limit that was exceeded
+     * @param message The detail message
+     * @param errorOffset The position where the error was found
+     */
+    public ParseLimitExceededException(ParseLimits.Limit limit, String message, int errorOffset) {
+        super(message, errorOffset);
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the limit that was exceeded.
+     */
+    public ParseLimits.Limit getLimit() {
+        return limit;
+    }
+}
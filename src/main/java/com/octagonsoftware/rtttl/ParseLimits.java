@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Immutable limits on the size and complexity of RTTTL strings accepted by {@link RTTTLParser}, to bound the CPU
+ * time and memory spent on hostile input.
+ * <p>
+ * Limits are checked while the string is scanned, so parsing stops as soon as one is exceeded.
+ *
+ * @see ParseLimitExceededException
+ */
+public class ParseLimits
+{
+    /** A limit that can be exceeded */
+    public enum Limit
+    {
+        /** Length of the whole RTTTL string, in characters */
+        INPUT_LENGTH,
+        /** Number of tones (notes and rests) */
+        TONE_COUNT,
+        /** Length of the name, in characters */
+        NAME_LENGTH,
+        /** Number of control pairs in the tone section */
+        CONTROL_PAIRS,
+        /** Total duration of the tune, in seconds */
+        DURATION
+    }
+
+    /** No limits at all */
+    public static final ParseLimits UNLIMITED =
+        new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Float.POSITIVE_INFINITY);
+
+    /** Maximum length of the whole RTTTL string, in characters */
+    public final int maxInputLength;
+
+    /** Maximum number of tones (notes and rests) */
+    public final int maxToneCount;
+
+    /** Maximum length of the name, in characters */
+    public final int maxNameLength;
+
+    /** Maximum number of control pairs in the tone section */
+    public final int maxControlPairs;
+
+    /** Maximum total duration of the tune at its final tempo, in seconds */
+    public final float maxDurationSeconds;
+
+    /**
+     * Creates a new set of limits.
+     *
+     * @param maxInputLength The maximum length of the whole RTTTL string, in characters
+     * @param maxToneCount The maximum number of tones (notes and rests)
+     * @param maxNameLength The maximum length of the name, in characters
+     * @param maxControlPairs The maximum number of control pairs in the tone section
+     * @param maxDurationSeconds The maximum total duration of the tune, in seconds
+     * @throws IllegalArgumentException If any limit is negative.
+     */
+    public ParseLimits(int maxInputLength, int maxToneCount, int maxNameLength, int maxControlPairs,
+        float maxDurationSeconds)
+    {
+        if (maxInputLength < 0 || maxToneCount < 0 || maxNameLength < 0 || maxControlPairs < 0 ||
+            !(maxDurationSeconds >= 0.0f))
+        {
+            throw new IllegalArgumentException("Limits must be >= 0.");
+        }
+        this.maxInputLength = maxInputLength;
+        this.maxToneCount = maxToneCount;
+        this.maxNameLength = maxNameLength;
+        this.maxControlPairs = maxControlPairs;
+        this.maxDurationSeconds = maxDurationSeconds;
+    }
+
+    @Override public String toString() {
+        return "ParseLimits{" +
+            "maxInputLength=" + maxInputLength +
+            ", maxToneCount=" + maxToneCount +
+            ", maxNameLength=" + maxNameLength +
+            ", maxControlPairs=" + maxControlPairs +
+            ", maxDurationSeconds=" + maxDurationSeconds +
+            '}';
+    }
+}
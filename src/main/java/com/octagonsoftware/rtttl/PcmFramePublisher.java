@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a rendered {@link ToneSequence} as fixed-size frames of PCM samples, rendering each frame only when a
+ * subscriber has requested it.
+ * <p>
+ * The contract follows that of {@code java.util.concurrent.Flow} and Reactive Streams: a subscriber receives
+ * {@link Subscriber#onSubscribe(Subscription)}, then no more frames than it has requested, then at most one of
+ * {@link Subscriber#onComplete()} or {@link Subscriber#onError(Throwable)}. Every subscriber receives the whole
+ * tune from the start. The final frame is padded with silence.
+ * <p>
+ * Each subscription holds only a {@link ToneStream}, so idle subscriptions cost little memory and no thread.
+ * Frames are rendered and delivered on the given executor, no more than one task per subscription at a time, and
+ * a task yields its thread after a few frames so that one fast subscriber cannot starve the others. Cancelling a
+ * subscription releases its stream at once if no frame is being rendered, or otherwise as soon as that frame is
+ * done.
+ * <p>
+ * Instances are thread safe.
+ */
+public class PcmFramePublisher
+{
+    /** Receives frames from a publisher */
+    public interface Subscriber
+    {
+        /** Called once, before any other method, with the subscription used to request frames */
+        void onSubscribe(Subscription subscription);
+
+        /** Called with each frame requested. The array belongs to the subscriber. */
+        void onNext(short[] frame);
+
+        /** Called if rendering fails or the subscription is misused. No further methods are called. */
+        void onError(Throwable failure);
+
+        /** Called after the last frame. No further methods are called. */
+        void onComplete();
+    }
+
+    /** Links one subscriber to a publisher */
+    public interface Subscription
+    {
+        /**
+         * Requests up to n more frames. Requests accumulate; {@link Long#MAX_VALUE} requests every frame.
+         *
+         * @param n The number of frames. If not greater than 0, the subscriber is sent an
+         * {@link IllegalArgumentException} through {@link Subscriber#onError(Throwable)}.
+         */
+        void request(long n);
+
+        /** Stops the delivery of frames, which may not take effect until a frame already being sent is done */
+        void cancel();
+    }
+
+    /** Number of frames sent by one task before it yields its thread */
+    static final int FRAMES_PER_TASK = 16;
+
+    private final ToneRenderer renderer;
+
+    private final ToneSequence toneSequence;
+
+    private final int frameSize;
+
+    private final Executor executor;
+
+    /**
+     * Creates a publisher.
+     *
+     * @param renderer The renderer used to produce samples
+     * @param toneSequence The sequence to publish
+     * @param frameSize The number of samples in each frame. Must be greater than 0.
+     * @param executor The executor that renders and delivers frames
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public PcmFramePublisher(ToneRenderer renderer, ToneSequence toneSequence, int frameSize, Executor executor) {
+        if (frameSize <= 0) {
+            throw new IllegalArgumentException("frameSize must be > 0.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        this.renderer = renderer;
+        this.toneSequence = toneSequence;
+        this.frameSize = frameSize;
+        this.executor = executor;
+    }
+
+    /** Returns the number of frames in the tune, including a final partial frame */
+    public long frameCount() {
+        return (renderer.sampleCount(toneSequence) + frameSize - 1) / frameSize;
+    }
+
+    /**
+     * Adds a subscriber, calling its {@link Subscriber#onSubscribe(Subscription)} method on the calling thread.
+     * No frames are rendered until the subscriber requests them.
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber cannot be null.");
+        }
+        subscriber.onSubscribe(new FrameSubscription(subscriber));
+    }
+
+    /**
+     * Renders and delivers frames for one subscriber. A count of pending signals ensures that only one task runs
+     * at a time; the task keeps going until it has seen every signal.
+     */
+    private class FrameSubscription
+        implements Subscription, Runnable
+    {
+        private final Subscriber subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        private volatile Throwable error;
+
+        /** The stream, created by the first task and only used by tasks */
+        private ToneStream stream;
+
+        /** Set once onComplete or onError has been called */
+        private boolean terminated;
+
+        FrameSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("n must be > 0.");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            signal();
+        }
+
+        @Override public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // No task is running, so the subscriber can be told here
+                releaseStream();
+                if (!cancelled && !terminated) {
+                    terminated = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override public void run() {
+            int missed = 1;
+            int sent = 0;
+            while (true) {
+                if (cancelled || terminated) {
+                    releaseStream();
+                    return;
+                }
+                Throwable failure = error;
+                if (failure != null) {
+                    fail(failure);
+                    return;
+                }
+                try {
+                    if (stream == null) {
+                        stream = renderer.open(toneSequence);
+                    }
+                    while (demand.get() > 0 && stream.remaining() > 0 && !cancelled) {
+                        if (sent == FRAMES_PER_TASK) {
+                            // Leave the signal count as is, so that no other task starts
+                            schedule();
+                            return;
+                        }
+                        short[] frame = new short[frameSize];
+                        stream.read(frame, 0, frameSize);
+                        if (demand.get() != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        sent++;
+                        subscriber.onNext(frame);
+                    }
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                if (stream.remaining() == 0 && !cancelled) {
+                    releaseStream();
+                    terminated = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = pendingSignals.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Closes the stream, so a render abandoned early is still recorded in the metrics.
+         */
+        private void releaseStream() {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+
+        private void fail(Throwable failure) {
+            releaseStream();
+            terminated = true;
+            cancelled = true;
+            subscriber.onError(failure);
+        }
+    }
+}
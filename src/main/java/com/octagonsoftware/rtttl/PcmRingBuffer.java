@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of 16-bit PCM samples for one producer thread and one consumer thread.
+ * <p>
+ * Each side owns one index and only reads the other side's index when its cached copy says the buffer is full or
+ * empty, so in the steady state a transfer costs an array copy and one ordered write. Neither side ever blocks:
+ * {@link #write(short[], int, int)} and {@link #read(short[], int, int)} transfer as much as they can and return.
+ * <p>
+ * Only one thread may write and only one thread may read at a time.
+ */
+public class PcmRingBuffer
+{
+    private final short[] buffer;
+
+    private final int mask;
+
+    /** Total samples read, written only by the consumer */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Total samples written, written only by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The producer's last view of head */
+    private long cachedHead;
+
+    /** The consumer's last view of tail */
+    private long cachedTail;
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity The number of samples the buffer holds, which is rounded up to a power of two
+     * @throws IllegalArgumentException If capacity is not greater than 0 or is too large.
+     */
+    public PcmRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be > 0 and <= 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new short[size];
+        this.mask = size - 1;
+    }
+
+    /** Returns the number of samples the buffer holds */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /** Returns the number of samples waiting to be read. May be called from any thread. */
+    public int size() {
+        // Head first: the tail only moves forward, so reading it second cannot make the size negative
+        long h = head.get();
+        return (int) Math.min(tail.get() - h, buffer.length);
+    }
+
+    /**
+     * Writes up to count samples. Must only be called by the producer thread.
+     *
+     * @return The number of samples written, which is less than count if the buffer filled up.
+     */
+    public int write(short[] samples, int offset, int count) {
+        long t = tail.get();
+        long free = buffer.length - (t - cachedHead);
+        if (free < count) {
+            cachedHead = head.get();
+            free = buffer.length - (t - cachedHead);
+        }
+        int n = (int) Math.min(count, free);
+        int index = (int) t & mask;
+        int first = Math.min(n, buffer.length - index);
+        System.arraycopy(samples, offset, buffer, index, first);
+        System.arraycopy(samples, offset + first, buffer, 0, n - first);
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    /**
+     * Reads up to count samples. Must only be called by the consumer thread.
+     *
+     * @return The number of samples read, which is less than count if the buffer ran empty.
+     */
+    public int read(short[] out, int offset, int count) {
+        long h = head.get();
+        long available = cachedTail - h;
+        if (available < count) {
+            cachedTail = tail.get();
+            available = cachedTail - h;
+        }
+        int n = (int) Math.min(count, available);
+        int index = (int) h & mask;
+        int first = Math.min(n, buffer.length - index);
+        System.arraycopy(buffer, index, out, offset, first);
+        System.arraycopy(buffer, 0, out, offset + first, n - first);
+        head.lazySet(h + n);
+        return n;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a playlist of RTTTL strings back to back without gaps from parsing or rendering.
+ * <p>
+ * A producer thread parses and renders the upcoming tunes ahead of time into a {@link PcmRingBuffer}, which the
+ * output thread drains with {@link #read(short[], int, int)}. Reading never blocks: if the buffer runs empty, the
+ * output is padded with silence and an underrun is counted. Tunes can be separated by a gap of silence or blended
+ * with a linear crossfade. Strings that fail to parse are skipped and counted. Any other exception from the playlist
+ * or the renderer stops the producer, and is rethrown by {@link #read(short[], int, int)} after the samples rendered
+ * before it.
+ * <p>
+ * Settings must be changed before calling {@link #start()}.
+ */
+public class PlaylistPlayer
+{
+    /** Samples rendered at a time by the producer */
+    private static final int BLOCK_SIZE = 1024;
+
+    /** How long the producer waits for space in the buffer before trying again */
+    private static final long PARK_NANOS = 1000000;
+
+    private final ToneRenderer renderer;
+
+    private final Iterator<String> playlist;
+
+    private final PcmRingBuffer buffer;
+
+    private RTTTLParser parser = new RTTTLParser();
+
+    private int gapSamples;
+
+    private int crossfadeSamples;
+
+    private Thread producer;
+
+    private volatile boolean stopped;
+
+    private volatile boolean finished;
+
+    /** Thrown by the playlist or renderer on the producer thread, and rethrown to the consumer */
+    private volatile RuntimeException failure;
+
+    private final AtomicLong tuneCount = new AtomicLong();
+
+    private final AtomicLong parseFailureCount = new AtomicLong();
+
+    /** Touched only by the consumer, but read from any thread */
+    private volatile long underrunCount;
+
+    private volatile long underrunSamples;
+
+    /**
+     * Creates a player.
+     *
+     * @param renderer The renderer of the tunes
+     * @param playlist The RTTTL strings to play, which are read on the producer thread
+     * @param bufferSamples The number of samples rendered ahead, rounded up to a power of two
+     */
+    public PlaylistPlayer(ToneRenderer renderer, Iterator<String> playlist, int bufferSamples) {
+        this.renderer = renderer;
+        this.playlist = playlist;
+        this.buffer = new PcmRingBuffer(bufferSamples);
+    }
+
+    /** Sets the parser of the playlist entries, such as one with {@link ParseLimits}. */
+    public void setParser(RTTTLParser parser) {
+        this.parser = parser;
+    }
+
+    /** Sets a gap of silence between tunes, and turns off crossfading. The default is no gap. */
+    public void setGapMillis(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis must be >= 0.");
+        }
+        this.gapSamples = toSamples(millis);
+        this.crossfadeSamples = 0;
+    }
+
+    /**
+     * Sets the length of the crossfade between tunes, and turns off the gap. A crossfade is never longer than half
+     * of either tune. The default is no crossfade.
+     */
+    public void setCrossfadeMillis(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis must be >= 0.");
+        }
+        this.crossfadeSamples = toSamples(millis);
+        this.gapSamples = 0;
+    }
+
+    /**
+     * Starts rendering ahead on a producer thread.
+     *
+     * @throws IllegalStateException If the player has already been started.
+     */
+    public synchronized void start() {
+        if (producer != null) {
+            throw new IllegalStateException("Player has already been started.");
+        }
+        producer = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    produce();
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    finished = true;
+                }
+            }
+        }, "playlist-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Stops the producer thread and waits for it to exit.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void stop()
+        throws InterruptedException
+    {
+        stopped = true;
+        Thread thread;
+        synchronized (this) {
+            thread = producer;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    /**
+     * Reads the next samples of the playlist. Must only be called by one thread at a time. If fewer than count
+     * samples are ready before the end of the playlist, the rest of the range is filled with silence and an
+     * underrun is counted.
+     *
+     * @return The number of samples of the playlist read, before any padding, or -1 at the end of the playlist.
+     * @throws IllegalStateException If the playlist or the renderer threw an exception on the producer thread, once
+     *     the samples rendered before it have been read.
+     */
+    public int read(short[] out, int offset, int count) {
+        boolean done = finished;
+        int n = buffer.read(out, offset, count);
+        if (n < count) {
+            if (done && n == 0) {
+                RuntimeException e = failure;
+                if (e != null) {
+                    throw new IllegalStateException("Playlist producer failed.", e);
+                }
+                return -1;
+            }
+            for (int i = offset + n; i < offset + count; i++) {
+                out[i] = 0;
+            }
+            if (!done) {
+                underrunCount++;
+                underrunSamples += count - n;
+            }
+        }
+        return n;
+    }
+
+    /** Returns the number of reads that ran out of rendered samples before the end of the playlist */
+    public long underrunCount() {
+        return underrunCount;
+    }
+
+    /** Returns the number of samples of silence inserted by underruns */
+    public long underrunSamples() {
+        return underrunSamples;
+    }
+
+    /** Returns the number of samples rendered ahead and waiting to be read */
+    public int fillLevel() {
+        return buffer.size();
+    }
+
+    /** Returns the number of samples that can be rendered ahead */
+    public int bufferCapacity() {
+        return buffer.capacity();
+    }
+
+    /** Returns the number of tunes rendered so far */
+    public long tuneCount() {
+        return tuneCount.get();
+    }
+
+    /** Returns the number of playlist entries skipped because they failed to parse */
+    public long parseFailureCount() {
+        return parseFailureCount.get();
+    }
+
+    private int toSamples(int millis) {
+        return (int) ((long) renderer.sampleRate * millis / 1000);
+    }
+
+    private void produce() {
+        short[] block = new short[BLOCK_SIZE];
+        short[] tail = new short[crossfadeSamples];
+        short[] nextTail = new short[crossfadeSamples];
+        int tailLength = 0;
+        boolean first = true;
+        while (!stopped && playlist.hasNext()) {
+            ToneStream stream;
+            try {
+                stream = renderer.open(parser.parse(playlist.next()));
+            } catch (ParseException e) {
+                parseFailureCount.incrementAndGet();
+                continue;
+            } catch (IllegalArgumentException e) {
+                parseFailureCount.incrementAndGet();
+                continue;
+            }
+            if (!first) {
+                writeSilence(block, gapSamples);
+            }
+            first = false;
+
+            // The end of the previous tune overlaps the start of this one, and the end of this one the next. The
+            // part of the previous tune too long to overlap this one is played as is.
+            long length = stream.length();
+            int overlapIn = (int) Math.min(tailLength, length / 2);
+            int overlapOut = (int) Math.min(crossfadeSamples, length / 2);
+            long fadeOutStart = length - overlapOut;
+            writeFully(tail, 0, tailLength - overlapIn);
+            int tailStart = tailLength - overlapIn;
+
+            long position = 0;
+            int count;
+            while (!stopped && (count = stream.read(block, 0, block.length)) != -1) {
+                int keep = count;
+                for (int i = 0; i < count; i++, position++) {
+                    float value = block[i];
+                    if (position < overlapIn) {
+                        float fade = (position + 0.5f) / overlapIn;
+                        value = tail[tailStart + (int) position] * (1.0f - fade) + value * fade;
+                    }
+                    if (position >= fadeOutStart) {
+                        // Held back until the next tune, if any, is mixed in
+                        if (keep == count) {
+                            keep = i;
+                        }
+                        nextTail[(int) (position - fadeOutStart)] = clip(value);
+                    } else {
+                        block[i] = clip(value);
+                    }
+                }
+                writeFully(block, 0, keep);
+            }
+            stream.close();
+            short[] swap = tail;
+            tail = nextTail;
+            nextTail = swap;
+            tailLength = overlapOut;
+            tuneCount.incrementAndGet();
+        }
+        writeFully(tail, 0, tailLength);
+    }
+
+    private void writeSilence(short[] block, int count) {
+        Arrays.fill(block, (short) 0);
+        while (count > 0 && !stopped) {
+            int n = Math.min(count, block.length);
+            writeFully(block, 0, n);
+            count -= n;
+        }
+    }
+
+    /**
+     * Writes all of the given samples, waiting for space as needed, unless the player is stopped.
+     */
+    private void writeFully(short[] samples, int offset, int count) {
+        while (count > 0 && !stopped) {
+            int n = buffer.write(samples, offset, count);
+            offset += n;
+            count -= n;
+            if (count > 0) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    private static short clip(float value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(value);
+    }
+}
@@ -45,12 +45,45 @@ public class RTTTLEncoder
         throws IllegalStateException
     {
         StringBuilder result = new StringBuilder();
+        encode(toneSequence, result);
+        return result.toString();
+    }
+
+    /**
+     * Encodes the provided tone sequence as an RTTTL String, appending it to the given builder. A builder reused
+     * across calls avoids allocating a String for each sequence.
+     *
+     * @param toneSequence The sequence to encode
+     * @param result The builder to append to
+     * @throws IllegalStateException If the tone sequence contains a duration that does not match a valid beat duration.
+     *     Part of the sequence may already have been appended.
+     */
+    public void encode(ToneSequence toneSequence, StringBuilder result)
+        throws IllegalStateException
+    {
+        RTTTLMetrics metrics = RTTTLMetrics.installed;
+        if (metrics == null) {
+            encodeSequence(result, toneSequence);
+            return;
+        }
+        long start = System.nanoTime();
+        int startLength = result.length();
+        try {
+            encodeSequence(result, toneSequence);
+            metrics.recordSuccess(RTTTLMetrics.Operation.ENCODE, start, toneSequence.toneList.size(),
+                result.length() - startLength);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(RTTTLMetrics.Operation.ENCODE, start, e);
+            throw e;
+        }
+    }
+
+    private void encodeSequence(StringBuilder result, ToneSequence toneSequence) {
         encodeName(result, toneSequence);
         result.append(':');
         encodeControlSection(result, toneSequence);
         result.append(':');
         encodeToneList(result, toneSequence);
-        return result.toString();
     }
 
     private void encodeName(StringBuilder result, ToneSequence toneSequence) {
@@ -112,7 +145,11 @@ public class RTTTLEncoder
             if (tone.isRest()) {
                 result.append('p');
             } else {
-                result.append(tone.note.note.toLowerCase());
+                // Appended a character at a time, to avoid allocating a lower case copy
+                String note = tone.note.note;
+                for (int j = 0; j < note.length(); j++) {
+                    result.append(Character.toLowerCase(note.charAt(j)));
+                }
             }
 
             // Dotted
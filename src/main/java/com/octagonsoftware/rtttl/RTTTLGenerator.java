@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates reproducible, random RTTTL strings for load and benchmark testing.
+ * <p>
+ * The shape of the generated strings (length, name length, octave spread, inline control pairs, dotted notes,
+ * rests and whitespace) is configurable, and a configurable fraction of the strings is made invalid with a single,
+ * randomly chosen defect that {@link RTTTLParser} rejects. The same seed and settings always produce the same
+ * strings.
+ * <p>
+ * Instances are not thread safe; use one generator per thread, each with its own seed.
+ */
+public class RTTTLGenerator
+{
+    private static final char[] NAME_CHARS =
+        "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ".toCharArray();
+
+    private static final String[] NOTE_NAMES = {"c", "c#", "d", "d#", "e", "f", "f#", "g", "g#", "a", "a#", "b"};
+
+    private static final int[] DURATIONS = {1, 2, 4, 8, 16, 32};
+
+    /** Kinds of defect injected into invalid strings */
+    private static final int DEFECT_MISSING_COLON = 0;
+    private static final int DEFECT_BAD_DURATION = 1;
+    private static final int DEFECT_UNKNOWN_CONTROL_NAME = 2;
+    private static final int DEFECT_BAD_NOTE = 3;
+    private static final int DEFECT_BAD_CONTROL_VALUE = 4;
+    private static final int DEFECT_COUNT = 5;
+
+    private final Random random;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    private int minTones = 8;
+    private int maxTones = 64;
+    private int minNameLength = 1;
+    private int maxNameLength = 10;
+    private int minOctave = 4;
+    private int maxOctave = 7;
+    private double controlPairProbability = 0.0;
+    private double dottedProbability = 0.1;
+    private double restProbability = 0.1;
+    private double explicitDurationProbability = 0.5;
+    private double explicitOctaveProbability = 0.3;
+    private double whitespaceProbability = 0.0;
+    private double invalidProbability = 0.0;
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed The seed of the random number generator
+     */
+    public RTTTLGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets the range of the number of tones in each string, inclusive. Lengths are uniformly distributed.
+     * The defaults are 8 and 64.
+     */
+    public void setToneCount(int min, int max) {
+        checkRange(min, max, 1, Integer.MAX_VALUE, "tone count");
+        this.minTones = min;
+        this.maxTones = max;
+    }
+
+    /**
+     * Sets the range of the length of the name, inclusive. The defaults are 1 and 10.
+     */
+    public void setNameLength(int min, int max) {
+        checkRange(min, max, 0, Integer.MAX_VALUE, "name length");
+        this.minNameLength = min;
+        this.maxNameLength = max;
+    }
+
+    /**
+     * Sets the range of octaves used for notes and the default octave, inclusive. The defaults are 4 and 7.
+     */
+    public void setOctaveRange(int min, int max) {
+        checkRange(min, max, 0, 8, "octave");
+        this.minOctave = min;
+        this.maxOctave = max;
+    }
+
+    /** Sets the probability that an inline control pair precedes each tone. The default is 0. */
+    public void setControlPairProbability(double probability) {
+        this.controlPairProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a tone is dotted. The default is 0.1. */
+    public void setDottedProbability(double probability) {
+        this.dottedProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a tone is a rest. The default is 0.1. */
+    public void setRestProbability(double probability) {
+        this.restProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a tone specifies its duration instead of using the default. The default is 0.5. */
+    public void setExplicitDurationProbability(double probability) {
+        this.explicitDurationProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a note specifies its octave instead of using the default. The default is 0.3. */
+    public void setExplicitOctaveProbability(double probability) {
+        this.explicitOctaveProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a space is added after each separator. The default is 0. */
+    public void setWhitespaceProbability(double probability) {
+        this.whitespaceProbability = checkProbability(probability);
+    }
+
+    /** Sets the probability that a string is made invalid. The default is 0. */
+    public void setInvalidProbability(double probability) {
+        this.invalidProbability = checkProbability(probability);
+    }
+
+    /**
+     * Returns the next string.
+     */
+    public String next() {
+        buffer.setLength(0);
+        generate(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the next string to the given builder.
+     *
+     * @return true if the string is valid, false if a defect was injected.
+     */
+    public boolean generate(StringBuilder out) {
+        boolean valid = random.nextDouble() >= invalidProbability;
+        int defect = valid ? -1 : random.nextInt(DEFECT_COUNT);
+        int toneCount = minTones + random.nextInt(maxTones - minTones + 1);
+        int defectIndex = random.nextInt(toneCount);
+
+        // Name
+        int nameLength = minNameLength + random.nextInt(maxNameLength - minNameLength + 1);
+        for (int i = 0; i < nameLength; i++) {
+            out.append(NAME_CHARS[random.nextInt(NAME_CHARS.length)]);
+        }
+        out.append(':');
+
+        // Control section
+        out.append(RTTTLParser.CONTROL_NAME_DEFAULT_DURATION).append('=')
+            .append(DURATIONS[random.nextInt(DURATIONS.length)]);
+        appendSeparator(out);
+        out.append(RTTTLParser.CONTROL_NAME_DEFAULT_OCTAVE).append('=').append(randomOctave());
+        appendSeparator(out);
+        out.append(RTTTLParser.CONTROL_NAME_BEATS_PER_MINUTE).append('=').append(25 + random.nextInt(876));
+        if (defect != DEFECT_MISSING_COLON) {
+            out.append(':');
+        }
+
+        // Tone commands
+        for (int i = 0; i < toneCount; i++) {
+            if (i > 0) {
+                appendSeparator(out);
+            }
+            boolean injectDefect = i == defectIndex;
+            if (injectDefect && defect == DEFECT_UNKNOWN_CONTROL_NAME) {
+                out.append("x=1,");
+            } else if (injectDefect && defect == DEFECT_BAD_CONTROL_VALUE) {
+                out.append(RTTTLParser.CONTROL_NAME_DEFAULT_OCTAVE).append("=z,");
+            } else if (random.nextDouble() < controlPairProbability) {
+                appendControlPair(out);
+                appendSeparator(out);
+            }
+            appendTone(out, injectDefect ? defect : -1);
+        }
+        return valid;
+    }
+
+    /**
+     * Writes count strings to the given writer, one per line.
+     */
+    public void write(Writer out, long count)
+        throws IOException
+    {
+        for (long i = 0; i < count; i++) {
+            buffer.setLength(0);
+            generate(buffer);
+            buffer.append('\n');
+            out.append(buffer);
+        }
+    }
+
+    private void appendTone(StringBuilder out, int defect) {
+        if (defect == DEFECT_BAD_DURATION) {
+            out.append(random.nextBoolean() ? 3 : 64);
+        } else if (random.nextDouble() < explicitDurationProbability) {
+            out.append(DURATIONS[random.nextInt(DURATIONS.length)]);
+        }
+
+        boolean rest = random.nextDouble() < restProbability;
+        if (defect == DEFECT_BAD_NOTE) {
+            out.append('h');
+        } else if (rest) {
+            out.append('p');
+        } else {
+            out.append(NOTE_NAMES[random.nextInt(NOTE_NAMES.length)]);
+        }
+
+        if (random.nextDouble() < dottedProbability) {
+            out.append('.');
+        }
+        if (!rest && random.nextDouble() < explicitOctaveProbability) {
+            out.append(randomOctave());
+        }
+    }
+
+    private void appendControlPair(StringBuilder out) {
+        switch (random.nextInt(3)) {
+            case 0:
+                out.append(RTTTLParser.CONTROL_NAME_DEFAULT_DURATION).append('=')
+                    .append(DURATIONS[random.nextInt(DURATIONS.length)]);
+                break;
+            case 1:
+                out.append(RTTTLParser.CONTROL_NAME_DEFAULT_OCTAVE).append('=').append(randomOctave());
+                break;
+            default:
+                out.append(RTTTLParser.CONTROL_NAME_BEATS_PER_MINUTE).append('=').append(25 + random.nextInt(876));
+        }
+    }
+
+    private void appendSeparator(StringBuilder out) {
+        out.append(',');
+        if (whitespaceProbability > 0.0 && random.nextDouble() < whitespaceProbability) {
+            out.append(' ');
+        }
+    }
+
+    private int randomOctave() {
+        return minOctave + random.nextInt(maxOctave - minOctave + 1);
+    }
+
+    private static void checkRange(int min, int max, int lowest, int highest, String what) {
+        if (min < lowest || max > highest || min > max) {
+            throw new IllegalArgumentException("Invalid " + what + " range " + min + "-" + max + ".");
+        }
+    }
+
+    private static double checkProbability(double probability) {
+        if (!(probability >= 0.0 && probability <= 1.0)) {
+            throw new IllegalArgumentException("Probability must be between 0-1, inclusive.");
+        }
+        return probability;
+    }
+}
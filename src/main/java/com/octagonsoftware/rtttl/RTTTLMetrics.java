@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Optional instrumentation for parsing, encoding and rendering.
+ * <p>
+ * When an instance is installed with {@link #install(RTTTLMetrics)}, {@link RTTTLParser#parse(String)},
+ * {@link RTTTLEncoder#encode(ToneSequence)}, {@link ToneRenderer} and {@link ToneStream} record the latency of each
+ * call, the tones and bytes processed, and failures by kind. A {@link ToneStream} records once per stream rather than
+ * once per read. When no instance is installed, which is the default, each call costs one volatile read.
+ * <p>
+ * Recording never allocates. Instances are thread safe.
+ */
+public class RTTTLMetrics
+{
+    /** An instrumented operation */
+    public enum Operation
+    {
+        PARSE, ENCODE, RENDER
+    }
+
+    /** The kind of a failed operation */
+    public enum FailureKind
+    {
+        /** Malformed RTTTL, a {@link ParseException} */
+        SYNTAX,
+
+        /** Input over the parser limits, a {@link ParseLimitExceededException} */
+        LIMIT_EXCEEDED,
+
+        /** An {@link IllegalArgumentException}, such as an out of range control value */
+        INVALID_ARGUMENT,
+
+        /** An {@link IllegalStateException}, such as an unencodable duration */
+        INVALID_STATE,
+
+        /** Any other exception */
+        OTHER
+    }
+
+    private static final int OPERATION_COUNT = Operation.values().length;
+
+    private static final int FAILURE_KIND_COUNT = FailureKind.values().length;
+
+    /** The installed instance, or null if metrics are disabled */
+    static volatile RTTTLMetrics installed;
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[OPERATION_COUNT];
+
+    private final AtomicLongArray callCounts = new AtomicLongArray(OPERATION_COUNT);
+
+    private final AtomicLongArray toneCounts = new AtomicLongArray(OPERATION_COUNT);
+
+    private final AtomicLongArray byteCounts = new AtomicLongArray(OPERATION_COUNT);
+
+    private final AtomicLongArray failureCounts = new AtomicLongArray(OPERATION_COUNT * FAILURE_KIND_COUNT);
+
+    /** Creates an instance with nothing recorded */
+    public RTTTLMetrics() {
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Installs the given instance, replacing any previously installed instance.
+     *
+     * @param metrics The instance to record into, or null to disable metrics.
+     */
+    public static void install(RTTTLMetrics metrics) {
+        installed = metrics;
+    }
+
+    /** Returns the installed instance, or null if metrics are disabled */
+    public static RTTTLMetrics installed() {
+        return installed;
+    }
+
+    /** Returns the latency histogram of the given operation, in nanoseconds */
+    public LatencyHistogram latency(Operation operation) {
+        return latency[operation.ordinal()];
+    }
+
+    /** Returns the number of calls to the given operation, including failed calls */
+    public long callCount(Operation operation) {
+        return callCounts.get(operation.ordinal());
+    }
+
+    /** Returns the number of tones parsed, encoded or rendered */
+    public long toneCount(Operation operation) {
+        return toneCounts.get(operation.ordinal());
+    }
+
+    /**
+     * Returns the number of bytes processed: characters parsed, characters encoded or bytes of 16-bit PCM rendered.
+     */
+    public long byteCount(Operation operation) {
+        return byteCounts.get(operation.ordinal());
+    }
+
+    /** Returns the number of calls to the given operation that failed with the given kind of exception */
+    public long failureCount(Operation operation, FailureKind kind) {
+        return failureCounts.get(operation.ordinal() * FAILURE_KIND_COUNT + kind.ordinal());
+    }
+
+    /**
+     * Records a successful call that started at the given {@link System#nanoTime()}.
+     */
+    void recordSuccess(Operation operation, long startNanos, int tones, long bytes) {
+        int index = operation.ordinal();
+        latency[index].record(System.nanoTime() - startNanos);
+        callCounts.incrementAndGet(index);
+        toneCounts.addAndGet(index, tones);
+        byteCounts.addAndGet(index, bytes);
+    }
+
+    /**
+     * Records a failed call that started at the given {@link System#nanoTime()}.
+     */
+    void recordFailure(Operation operation, long startNanos, Throwable failure) {
+        int index = operation.ordinal();
+        latency[index].record(System.nanoTime() - startNanos);
+        callCounts.incrementAndGet(index);
+        failureCounts.incrementAndGet(index * FAILURE_KIND_COUNT + kindOf(failure).ordinal());
+    }
+
+    /**
+     * Returns the kind of the given failure.
+     */
+    static FailureKind kindOf(Throwable failure) {
+        if (failure instanceof ParseLimitExceededException) {
+            return FailureKind.LIMIT_EXCEEDED;
+        } else if (failure instanceof ParseException) {
+            return FailureKind.SYNTAX;
+        } else if (failure instanceof IllegalArgumentException) {
+            return FailureKind.INVALID_ARGUMENT;
+        } else if (failure instanceof IllegalStateException) {
+            return FailureKind.INVALID_STATE;
+        }
+        return FailureKind.OTHER;
+    }
+}
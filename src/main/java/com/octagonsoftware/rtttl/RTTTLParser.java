@@ -44,6 +44,8 @@ import java.util.regex.Pattern;
  * <li>It allows octaves 0-8 instead of the original limit of 4-7.</li>
  * <li>The special duration '.' can appear anywhere in the note string.</li>
  * </ol>
+ * <p>
+ * Parsers may be created with {@link ParseLimits} to reject input that is too large or complex.
  *
  * @see <a href="http://www.panuworld.net/nuukiaworld/download/nokix/rtttl.htm">RTTTL Specification</a>
  */
@@ -67,33 +69,101 @@ public class RTTTLParser
 
     private static final Pattern PATTERN_NOTE = Pattern.compile("(\\d{1,2})?([pcdefgab]#?)(\\d)?");
 
+    /**
+     * Limits on the strings accepted by this parser
+     */
+    private final ParseLimits limits;
+
+    /**
+     * Creates a parser that accepts strings of any size.
+     */
+    public RTTTLParser() {
+        this(ParseLimits.UNLIMITED);
+    }
+
+    /**
+     * Creates a parser that rejects strings exceeding the given limits.
+     *
+     * @param limits The limits to enforce
+     * @throws IllegalArgumentException If limits is null.
+     */
+    public RTTTLParser(ParseLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("limits cannot be null.");
+        }
+        this.limits = limits;
+    }
 
     /**
      * Parses an RTTTL string and returns a {@link ToneSequence}.
      *
      * @param str The RTTTL string to parse
      * @return The {@link ToneSequence}
-     * @throws ParseException If the RTTTL string is invalid.
+     * @throws ParseException If the RTTTL string is invalid, including control values out of range.
+     * @throws ParseLimitExceededException If the RTTTL string exceeds the limits of this parser.
      */
     public ToneSequence parse(String str)
         throws ParseException
     {
+        RTTTLMetrics metrics = RTTTLMetrics.installed;
+        if (metrics == null) {
+            return parseString(str);
+        }
+        long start = System.nanoTime();
+        try {
+            ToneSequence result = parseString(str);
+            metrics.recordSuccess(RTTTLMetrics.Operation.PARSE, start, result.toneList.size(), str.length());
+            return result;
+        } catch (ParseException e) {
+            metrics.recordFailure(RTTTLMetrics.Operation.PARSE, start, e);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(RTTTLMetrics.Operation.PARSE, start, e);
+            throw e;
+        }
+    }
+
+    private ToneSequence parseString(String str)
+        throws ParseException
+    {
+        checkLimit(str.length() <= limits.maxInputLength, ParseLimits.Limit.INPUT_LENGTH,
+            "Input length exceeds limit of " + limits.maxInputLength);
+
         // RTTTLString := <name> ":" <control-section> ":" <tone-section>
         String[] parts = str.split(":");
         assertSyntax(parts.length == 3, "Expected 2 ':'s but got " + (parts.length - 1));
 
         ParseContext context = new ParseContext();
         String name = parts[0];
+        checkLimit(name.length() <= limits.maxNameLength, ParseLimits.Limit.NAME_LENGTH,
+            "Name length exceeds limit of " + limits.maxNameLength);
         parseControlSection(context, parts[1].replaceAll(" ", ""));
         parseToneSection(context, parts[2].replaceAll(" ", ""));
+        checkDurationLimit(context);
 
         return new ToneSequence(name, context.toneList, context.defaultOctave, context.defaultDuration, context.beatsPerMinute);
     }
 
+    /**
+     * Parses an RTTTL string for editing. The result can apply edits by re-scanning only the tone commands they
+     * touch.
+     *
+     * @param str The RTTTL string to parse
+     * @return The parse, whose {@link IncrementalParse#toneSequence} is identical to that of {@link #parse(String)}
+     * @throws ParseException If the RTTTL string is invalid.
+     * @throws ParseLimitExceededException If the RTTTL string exceeds the limits of this parser.
+     * @see IncrementalParse#edit(int, int, String)
+     */
+    public IncrementalParse parseIncremental(String str)
+        throws ParseException
+    {
+        return IncrementalParse.parse(this, str);
+    }
+
     /**
      * control-section := &lt;control-pair&gt; ["," &lt;control-section&gt;]
      */
-    private void parseControlSection(ParseContext context, String controlStr)
+    void parseControlSection(ParseContext context, String controlStr)
         throws ParseException
     {
         String[] controlPairStrs = controlStr.split(",");
@@ -130,12 +200,14 @@ public class RTTTLParser
 
         switch (controlName) {
             case CONTROL_NAME_DEFAULT_OCTAVE:
+                assertSyntax(value >= 0 && value <= 8, "Default octave must be between 0-8, inclusive: " + value);
                 context.defaultOctave = value;
                 break;
             case CONTROL_NAME_DEFAULT_DURATION:
                 context.defaultDuration = durationIntToDuration(value);
                 break;
             case CONTROL_NAME_BEATS_PER_MINUTE:
+                assertSyntax(value > 0, "Beats per minute must be > 0: " + value);
                 context.beatsPerMinute = value;
                 break;
             default:
@@ -149,20 +221,38 @@ public class RTTTLParser
     private void parseToneSection(ParseContext context, String toneSectionStr)
         throws ParseException
     {
-        String[] toneCommandStrs = toneSectionStr.split(",");
+        // Scan one command at a time, so limits are checked before the rest of the section is touched. Trailing
+        // separators are ignored.
+        int end = toneSectionStr.length();
+        while (end > 0 && toneSectionStr.charAt(end - 1) == ',') {
+            end--;
+        }
+        if (end == 0 && toneSectionStr.length() > 0) {
+            return;
+        }
 
-        for (String toneCommandStr : toneCommandStrs) {
-            processToneCommand(context, toneCommandStr);
+        int start = 0;
+        while (true) {
+            int separator = toneSectionStr.indexOf(',', start);
+            if (separator == -1 || separator >= end) {
+                processToneCommand(context, toneSectionStr.substring(start, end));
+                return;
+            }
+            processToneCommand(context, toneSectionStr.substring(start, separator));
+            start = separator + 1;
         }
     }
 
     /**
      * &lt;tone-command&gt; :=&lt;note&gt; | &lt;control-pair&gt;
      */
-    private void processToneCommand(ParseContext context, String toneCommandStr)
+    void processToneCommand(ParseContext context, String toneCommandStr)
         throws ParseException
     {
         if (toneCommandStr.contains("=")) {
+            context.controlPairCount++;
+            checkLimit(context.controlPairCount <= limits.maxControlPairs, ParseLimits.Limit.CONTROL_PAIRS,
+                "Number of control pairs in tone section exceeds limit of " + limits.maxControlPairs);
             processControlPair(context, toneCommandStr);
         } else {
             processNote(context, toneCommandStr);
@@ -241,7 +331,10 @@ public class RTTTLParser
 
         Tone tone = new Tone(note, duration);
 
+        checkLimit(context.toneList.size() < limits.maxToneCount, ParseLimits.Limit.TONE_COUNT,
+            "Number of tones exceeds limit of " + limits.maxToneCount);
         context.toneList.add(tone);
+        context.totalUnits += ToneRenderer.durationUnits(duration);
     }
 
     /**
@@ -255,15 +348,63 @@ public class RTTTLParser
         }
     }
 
+    /**
+     * If condition is false, throw a ParseLimitExceededException for the given limit, else pass through.
+     */
+    private void checkLimit(boolean condition, ParseLimits.Limit limit, String message)
+        throws ParseLimitExceededException
+    {
+        if (!condition) {
+            throw new ParseLimitExceededException(limit, message, 0);
+        }
+    }
+
+    /**
+     * Checks the duration of all of the tones, at the final tempo, against the duration limit. The tempo of the
+     * returned sequence applies to every tone, so the limit is only checked once the whole string is parsed.
+     */
+    private void checkDurationLimit(ParseContext context)
+        throws ParseLimitExceededException
+    {
+        checkDurationLimit(context.totalUnits, context.beatsPerMinute);
+    }
+
+    /**
+     * Checks the duration of the given number of units, at the given tempo, against the duration limit.
+     */
+    void checkDurationLimit(long totalUnits, int beatsPerMinute)
+        throws ParseLimitExceededException
+    {
+        double seconds = (double) totalUnits * 60 / ((double) ToneRenderer.UNITS_PER_QUARTER_NOTE * beatsPerMinute);
+        checkLimit(seconds <= limits.maxDurationSeconds, ParseLimits.Limit.DURATION,
+            "Duration exceeds limit of " + limits.maxDurationSeconds + " seconds");
+    }
+
+    /**
+     * Checks the totals of a whole RTTTL string against the input length, tone count and control pair limits.
+     */
+    void checkTotals(int inputLength, int toneCount, int controlPairCount)
+        throws ParseLimitExceededException
+    {
+        checkLimit(inputLength <= limits.maxInputLength, ParseLimits.Limit.INPUT_LENGTH,
+            "Input length exceeds limit of " + limits.maxInputLength);
+        checkLimit(toneCount <= limits.maxToneCount, ParseLimits.Limit.TONE_COUNT,
+            "Number of tones exceeds limit of " + limits.maxToneCount);
+        checkLimit(controlPairCount <= limits.maxControlPairs, ParseLimits.Limit.CONTROL_PAIRS,
+            "Number of control pairs in tone section exceeds limit of " + limits.maxControlPairs);
+    }
+
     /**
      * State for the RTTTL parser.
      */
-    private static class ParseContext
+    static class ParseContext
     {
         Duration defaultDuration = ToneSequence.DEFAULT_DURATION;
         int defaultOctave = ToneSequence.DEFAULT_OCTAVE;
         int beatsPerMinute = ToneSequence.DEFAULT_BEATS_PER_MINUTE;
         public List<Tone> toneList = new ArrayList<Tone>();
+        int controlPairCount;
+        long totalUnits;
     }
 
     /**
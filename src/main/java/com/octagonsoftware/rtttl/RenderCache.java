@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches rendered tone sequences, so that popular tunes are rendered only once.
+ * <p>
+ * Entries are keyed by the tones and tempo of the sequence and by the settings of the renderer; the name and
+ * defaults of the sequence do not affect the samples and are ignored. The total size of the cached samples is kept
+ * within a limit in bytes. When it is exceeded, entries are evicted in the order they were added, except that an
+ * entry read since it was last considered gets a second chance (the CLOCK algorithm). Hits therefore take no
+ * locks.
+ * <p>
+ * When several threads miss on the same key at once, one renders and the others wait for its result. Samples may
+ * be stored in direct buffers, outside the Java heap, so that large caches add nothing to garbage collection work.
+ * <p>
+ * Instances are thread safe.
+ */
+public class RenderCache
+{
+    /** Number of samples rendered at a time into a direct buffer */
+    private static final int CHUNK_SIZE = 16 * ToneRenderer.BLOCK_SIZE;
+
+    private final long maxBytes;
+
+    private final boolean offHeap;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    /** Resident entries in the order they were added or given a second chance, guarded by itself */
+    private final ArrayDeque<Entry> clock = new ArrayDeque<Entry>();
+
+    /** Total size of resident entries, guarded by clock */
+    private long residentBytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes The maximum total size of cached samples, in bytes. Must be greater than 0.
+     * @param offHeap true to store samples in direct buffers, false to store them in arrays on the heap
+     * @throws IllegalArgumentException If maxBytes is not greater than 0.
+     */
+    public RenderCache(long maxBytes, boolean offHeap) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be > 0.");
+        }
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Returns the samples of the given tone sequence, rendering them if they are not cached.
+     *
+     * @param renderer The renderer
+     * @param toneSequence The sequence to render
+     * @return A read-only buffer of the samples, positioned at the start of the tune. The buffer is not shared with
+     *         other callers, but its contents are.
+     * @throws IllegalArgumentException If the rendered tune would not fit in a buffer.
+     */
+    public ShortBuffer get(final ToneRenderer renderer, final ToneSequence toneSequence)
+        throws IllegalArgumentException
+    {
+        Key key = new Key(renderer, toneSequence.toneList, toneSequence.beatsPerMinute);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            // Copy the tones, since the caller may change its list later
+            Key ownKey = new Key(renderer, new ArrayList<Tone>(toneSequence.toneList), toneSequence.beatsPerMinute);
+            Entry created = new Entry(ownKey, new Callable<ShortBuffer>() {
+                @Override public ShortBuffer call() {
+                    return render(renderer, toneSequence);
+                }
+            });
+            entry = entries.putIfAbsent(ownKey, created);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                created.run();
+                admit(created);
+                entry = created;
+            } else {
+                hitCount.incrementAndGet();
+            }
+        } else {
+            hitCount.incrementAndGet();
+            entry.referenced = true;
+        }
+        return entry.samples().duplicate();
+    }
+
+    /** Returns the number of requests answered from the cache, including those that waited for another's render */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /** Returns the number of requests that rendered their tune */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /** Returns the number of entries evicted to stay within the size limit */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /** Returns the total size of the cached samples, in bytes */
+    public long residentBytes() {
+        synchronized (clock) {
+            return residentBytes;
+        }
+    }
+
+    /** Returns the number of cached tunes */
+    public int size() {
+        synchronized (clock) {
+            return clock.size();
+        }
+    }
+
+    /** Removes every cached entry. Renders in progress are still added when they complete. */
+    public void clear() {
+        synchronized (clock) {
+            for (Entry entry : clock) {
+                entries.remove(entry.key, entry);
+            }
+            clock.clear();
+            residentBytes = 0;
+        }
+    }
+
+    private ShortBuffer render(ToneRenderer renderer, ToneSequence toneSequence) {
+        if (!offHeap) {
+            return ShortBuffer.wrap(renderer.render(toneSequence)).asReadOnlyBuffer();
+        }
+        ToneStream stream = renderer.open(toneSequence);
+        if (stream.length() > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Tone sequence is too long to render into a buffer.");
+        }
+        ShortBuffer samples = ByteBuffer.allocateDirect(2 * (int) stream.length()).order(ByteOrder.nativeOrder())
+            .asShortBuffer();
+        short[] chunk = new short[(int) Math.min(CHUNK_SIZE, stream.length())];
+        int count;
+        while ((count = stream.read(chunk, 0, chunk.length)) > 0) {
+            samples.put(chunk, 0, count);
+        }
+        samples.flip();
+        return samples.asReadOnlyBuffer();
+    }
+
+    /**
+     * Makes a newly rendered entry resident, evicting others as needed. Entries that failed to render, including
+     * with an {@link Error}, or that are larger than the whole cache, are dropped once their waiters have their
+     * result.
+     */
+    private void admit(Entry entry) {
+        long bytes = entry.bytes();
+        if (bytes < 0 || bytes > maxBytes) {
+            entries.remove(entry.key, entry);
+            return;
+        }
+        List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (clock) {
+            clock.addLast(entry);
+            residentBytes += bytes;
+            while (residentBytes > maxBytes) {
+                Entry candidate = clock.removeFirst();
+                if (candidate.referenced) {
+                    candidate.referenced = false;
+                    clock.addLast(candidate);
+                } else {
+                    residentBytes -= candidate.bytes();
+                    evicted.add(candidate);
+                }
+            }
+        }
+        for (Entry candidate : evicted) {
+            entries.remove(candidate.key, candidate);
+        }
+        evictionCount.addAndGet(evicted.size());
+    }
+
+    /**
+     * Identifies the samples of a tune: the tones and tempo, and the renderer settings.
+     */
+    private static class Key
+    {
+        final ToneRenderer renderer;
+
+        final List<Tone> toneList;
+
+        final int beatsPerMinute;
+
+        final int hash;
+
+        Key(ToneRenderer renderer, List<Tone> toneList, int beatsPerMinute) {
+            this.renderer = renderer;
+            this.toneList = toneList;
+            this.beatsPerMinute = beatsPerMinute;
+            this.hash = 31 * (31 * renderer.hashCode() + beatsPerMinute) + toneList.hashCode();
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash && beatsPerMinute == that.beatsPerMinute && renderer.equals(that.renderer) &&
+                toneList.equals(that.toneList);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The samples of one tune, or the render that will produce them.
+     */
+    private static class Entry
+        extends FutureTask<ShortBuffer>
+    {
+        final Key key;
+
+        /** Set when the entry is read, and cleared when it is given a second chance */
+        volatile boolean referenced;
+
+        Entry(Key key, Callable<ShortBuffer> render) {
+            super(render);
+            this.key = key;
+        }
+
+        /**
+         * Waits for the render and returns the samples.
+         *
+         * @throws IllegalArgumentException If the render failed with that exception.
+         */
+        ShortBuffer samples() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /** Returns the size of the samples in bytes, or -1 if the render failed */
+        long bytes() {
+            try {
+                return 2L * samples().capacity();
+            } catch (RuntimeException e) {
+                return -1;
+            } catch (Error e) {
+                // Rethrown to the caller by samples(), once the entry is dropped
+                return -1;
+            }
+        }
+    }
+}
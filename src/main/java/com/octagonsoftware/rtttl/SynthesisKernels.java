@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Inner loops of synthesis: oscillator fill, envelope multiply and 16-bit conversion.
+ * <p>
+ * This class holds the scalar loops, which run on every JVM. On Java 21 and later the jar also holds a subclass that
+ * computes the same loops with the incubating Vector API ({@code jdk.incubator.vector}), in
+ * {@code META-INF/versions/21}. It is used by {@link #INSTANCE} when the JVM is run with
+ * {@code --add-modules jdk.incubator.vector}, unless the {@value #VECTOR_PROPERTY} system property is
+ * {@code false}. Both give identical output: only operations that are exact in every lane, such as float
+ * multiplication and int to float conversion, are vectorized.
+ * <p>
+ * Each method processes the elements from {@code from}, inclusive, to {@code to}, exclusive, so that a vectorized
+ * loop can leave the last few elements to these scalar loops.
+ * <p>
+ * Instances are stateless and may be shared between threads.
+ */
+class SynthesisKernels
+{
+    /** System property that disables the vectorized kernels when set to {@code false} */
+    static final String VECTOR_PROPERTY = "com.octagonsoftware.rtttl.vector";
+
+    /** Name of the vectorized subclass, present only in the Java 21 layer of the jar */
+    private static final String VECTOR_CLASS_NAME = "com.octagonsoftware.rtttl.VectorSynthesisKernels";
+
+    /** Scales a signed 32-bit phase to the range [-1, 1) */
+    static final float PHASE_TO_UNIT = 1.0f / 2147483648.0f;
+
+    /** The kernels used by renderers: vectorized if available, otherwise scalar */
+    static final SynthesisKernels INSTANCE = load();
+
+    /** Returns the vectorized kernels if they are available and enabled, otherwise the scalar kernels */
+    private static SynthesisKernels load() {
+        if ("false".equalsIgnoreCase(System.getProperty(VECTOR_PROPERTY))) {
+            return new SynthesisKernels();
+        }
+        try {
+            return (SynthesisKernels) Class.forName(VECTOR_CLASS_NAME).newInstance();
+        } catch (Exception e) {
+            // Not a Java 21 JVM, or not loaded from the multi-release jar
+            return new SynthesisKernels();
+        } catch (LinkageError e) {
+            // The jdk.incubator.vector module was not added to the JVM
+            return new SynthesisKernels();
+        }
+    }
+
+    /** Returns true if these kernels use the Vector API */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Fills the block with a square wave, 1 in the first half of each period and -1 in the second.
+     *
+     * @param phase The phase of the sample at {@code from}
+     * @param increment The phase increment per sample
+     */
+    void fillSquare(float[] block, int from, int to, int phase, int increment) {
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            block[i] = p >= 0 ? 1.0f : -1.0f;
+            p += increment;
+        }
+    }
+
+    /**
+     * Fills the block with a triangle wave, 1 at phase 0 and -1 at half a period.
+     *
+     * @param phase The phase of the sample at {@code from}
+     * @param increment The phase increment per sample
+     */
+    void fillTriangle(float[] block, int from, int to, int phase, int increment) {
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            block[i] = 1.0f - 2.0f * Math.abs(p * PHASE_TO_UNIT);
+            p += increment;
+        }
+    }
+
+    /**
+     * Fills the block with a sawtooth wave, rising from -1 at half a period to 1 just before the next.
+     *
+     * @param phase The phase of the sample at {@code from}
+     * @param increment The phase increment per sample
+     */
+    void fillSawtooth(float[] block, int from, int to, int phase, int increment) {
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            block[i] = p * PHASE_TO_UNIT;
+            p += increment;
+        }
+    }
+
+    /**
+     * Multiplies the block by the attack and release ramps of a tone.
+     *
+     * @param block The samples to scale
+     * @param count The number of samples in the block
+     * @param position The offset within the tone of the first sample in the block
+     * @param toneLength The length of the whole tone, in samples
+     * @param ramp The length of the attack and release ramps, in samples
+     */
+    final void applyEnvelope(float[] block, int count, long position, long toneLength, int ramp) {
+        if (ramp == 0 || (position >= ramp && position + count <= toneLength - ramp)) {
+            return;
+        }
+        applyRamps(block, 0, count, position, toneLength, ramp);
+    }
+
+    /**
+     * Multiplies part of the block by the attack and release ramps of a tone.
+     *
+     * @param position The offset within the tone of the sample at index 0 of the block
+     * @see #applyEnvelope(float[], int, long, long, int)
+     */
+    void applyRamps(float[] block, int from, int to, long position, long toneLength, int ramp) {
+        float scale = 1.0f / ramp;
+        for (int i = from; i < to; i++) {
+            long k = position + i;
+            float gain = Math.min(Math.min(k, toneLength - k) * scale, 1.0f);
+            block[i] *= gain;
+        }
+    }
+
+    /**
+     * Scales the block by the given gain and stores it as 16-bit samples. The gain must keep every sample within
+     * the range of a short.
+     *
+     * @param outOffset The index in {@code out} of the sample at {@code from}
+     */
+    void toPcm16(float[] block, int from, int to, float gain, short[] out, int outOffset) {
+        for (int i = from; i < to; i++) {
+            out[outOffset + i - from] = (short) (block[i] * gain);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Immutable hardware timer configuration that plays a single tone on a PWM buzzer.
+ * <p>
+ * The timer counts from 0 to {@link #top} at the clock frequency divided by the prescaler, so the output frequency is
+ * <code>clockHz / (prescaler * (top + 1))</code>. The output is high while the counter is below {@link #compare}.
+ *
+ * @see TimerTableGenerator
+ */
+public class TimerSetting {
+    /** Index of the prescaler in the list passed to the generator, or -1 if this is a rest */
+    public final int prescalerIndex;
+
+    /** Clock prescaler, or 0 if this is a rest */
+    public final int prescaler;
+
+    /** Value at which the timer wraps around to 0 */
+    public final int top;
+
+    /** Compare value, giving a 50% duty cycle */
+    public final int compare;
+
+    /** Frequency actually produced by this setting, in hz, or 0 if this is a rest */
+    public final float hz;
+
+    /** Difference between the produced frequency and the note frequency, in cents */
+    public final float errorCents;
+
+    /** How long the tone is played, in milliseconds */
+    public final int durationMillis;
+
+    /**
+     * Creates a new timer setting.
+     */
+    public TimerSetting(int prescalerIndex, int prescaler, int top, int compare, float hz, float errorCents,
+        int durationMillis)
+    {
+        this.prescalerIndex = prescalerIndex;
+        this.prescaler = prescaler;
+        this.top = top;
+        this.compare = compare;
+        this.hz = hz;
+        this.errorCents = errorCents;
+        this.durationMillis = durationMillis;
+    }
+
+    /** Returns true if this setting is a rest (i.e. the timer is stopped) */
+    public boolean isRest() {
+        return prescaler == 0;
+    }
+
+    /**
+     * Returns the number of timer periods that make up the duration of this tone.
+     */
+    public long periods() {
+        return Math.round(hz * durationMillis / 1000.0);
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        TimerSetting that = (TimerSetting) o;
+
+        return prescalerIndex == that.prescalerIndex && prescaler == that.prescaler && top == that.top &&
+            compare == that.compare && durationMillis == that.durationMillis;
+    }
+
+    @Override public int hashCode() {
+        int result = prescalerIndex;
+        result = 31 * result + prescaler;
+        result = 31 * result + top;
+        result = 31 * result + compare;
+        result = 31 * result + durationMillis;
+        return result;
+    }
+
+    @Override public String toString() {
+        return "TimerSetting{" +
+            "prescaler=" + prescaler +
+            ", top=" + top +
+            ", compare=" + compare +
+            ", hz=" + hz +
+            ", errorCents=" + errorCents +
+            ", durationMillis=" + durationMillis +
+            '}';
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates hardware timer settings for playing tone sequences on a PWM buzzer, so firmware does not need to compute
+ * them at run time.
+ * <p>
+ * The best prescaler and top value for every {@link Note} are computed once when the generator is created, so
+ * generating the table for a tone sequence only costs a lookup per tone. Instances are immutable and may be shared
+ * between threads.
+ */
+public class TimerTableGenerator
+{
+    /** Prescaler index written for rests */
+    public static final int REST_PRESCALER_INDEX = 0xFF;
+
+    /** Number of bytes per tone written by {@link #toByteArray(List)} */
+    public static final int BYTES_PER_TONE = 7;
+
+    /** Timer input clock frequency, in hz */
+    public final long clockHz;
+
+    /** Largest top value supported by the timer */
+    public final int maxTop;
+
+    /** Available clock prescalers */
+    private final int[] prescalers;
+
+    /** Best setting for each note, indexed by semitone, with a duration of 0 */
+    private final TimerSetting[] noteSettings = new TimerSetting[Note.MAX_SEMITONE + 1];
+
+    /**
+     * Creates a generator.
+     *
+     * @param clockHz The timer input clock frequency, in hz. Must be greater than 0.
+     * @param prescalers The available clock prescalers, such as 1, 8, 64, 256 and 1024. At most 255 are allowed.
+     * @param timerBits The width of the timer counter, in bits. Must be between 2 and 16, inclusive.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public TimerTableGenerator(long clockHz, int[] prescalers, int timerBits) {
+        this(clockHz, prescalers, timerBits, TuningTable.STANDARD);
+    }
+
+    /**
+     * Creates a generator for the given tuning.
+     *
+     * @param clockHz The timer input clock frequency, in hz. Must be greater than 0.
+     * @param prescalers The available clock prescalers, such as 1, 8, 64, 256 and 1024. At most 255 are allowed.
+     * @param timerBits The width of the timer counter, in bits. Must be between 2 and 16, inclusive.
+     * @param tuning The tuning used to find the frequency of each note
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public TimerTableGenerator(long clockHz, int[] prescalers, int timerBits, TuningTable tuning) {
+        if (clockHz <= 0) {
+            throw new IllegalArgumentException("clockHz must be > 0.");
+        }
+        if (prescalers == null || prescalers.length == 0 || prescalers.length >= REST_PRESCALER_INDEX) {
+            throw new IllegalArgumentException("prescalers must contain between 1 and 254 values.");
+        }
+        if (timerBits < 2 || timerBits > 16) {
+            throw new IllegalArgumentException("timerBits must be between 2-16, inclusive.");
+        }
+        if (tuning == null) {
+            throw new IllegalArgumentException("tuning cannot be null.");
+        }
+        for (int prescaler : prescalers) {
+            if (prescaler <= 0) {
+                throw new IllegalArgumentException("prescalers must be > 0.");
+            }
+        }
+        this.clockHz = clockHz;
+        this.maxTop = (1 << timerBits) - 1;
+        this.prescalers = prescalers.clone();
+        for (Note note : Note.values()) {
+            noteSettings[note.semitone] = findBestSetting(tuning.hz(note));
+        }
+    }
+
+    /**
+     * Returns the best setting for the given note, with a duration of 0.
+     */
+    public TimerSetting settingForNote(Note note) {
+        return noteSettings[note.semitone];
+    }
+
+    /**
+     * Generates the timer settings for each tone in the given sequence.
+     *
+     * @param toneSequence The sequence to generate settings for
+     * @return A setting for each tone, in order
+     */
+    public List<TimerSetting> generate(ToneSequence toneSequence) {
+        List<Tone> toneList = toneSequence.toneList;
+        List<TimerSetting> result = new ArrayList<TimerSetting>(toneList.size());
+        long units = 0;
+        long startMillis = 0;
+        for (Tone tone : toneList) {
+            // Durations are computed from the start of the tune, so rounding errors do not accumulate
+            units += ToneRenderer.durationUnits(tone.duration);
+            long endMillis = units * 60000 / ((long) ToneRenderer.UNITS_PER_QUARTER_NOTE * toneSequence.beatsPerMinute);
+            int durationMillis = (int) (endMillis - startMillis);
+            startMillis = endMillis;
+
+            if (tone.isRest()) {
+                result.add(new TimerSetting(-1, 0, 0, 0, 0.0f, 0.0f, durationMillis));
+            } else {
+                TimerSetting s = noteSettings[tone.note.semitone];
+                result.add(new TimerSetting(s.prescalerIndex, s.prescaler, s.top, s.compare, s.hz, s.errorCents,
+                    durationMillis));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Packs the given settings into a byte array.
+     * <p>
+     * Each tone is written as {@link #BYTES_PER_TONE} bytes: the prescaler index ({@link #REST_PRESCALER_INDEX} for a
+     * rest), followed by the top value, the compare value and the duration in milliseconds, each as an unsigned
+     * 16-bit little-endian integer.
+     *
+     * @throws IllegalArgumentException If a duration does not fit in 16 bits.
+     */
+    public byte[] toByteArray(List<TimerSetting> settings)
+        throws IllegalArgumentException
+    {
+        byte[] result = new byte[settings.size() * BYTES_PER_TONE];
+        int i = 0;
+        for (TimerSetting setting : settings) {
+            checkDuration(setting);
+            result[i++] = (byte) (setting.isRest() ? REST_PRESCALER_INDEX : setting.prescalerIndex);
+            i = putUnsignedShort(result, i, setting.top);
+            i = putUnsignedShort(result, i, setting.compare);
+            i = putUnsignedShort(result, i, setting.durationMillis);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the given settings as a C header declaring a constant array named arrayName.
+     * <p>
+     * Each row of the array holds the prescaler index ({@link #REST_PRESCALER_INDEX} for a rest), the top value, the
+     * compare value and the duration in milliseconds.
+     *
+     * @throws IllegalArgumentException If arrayName is not a C identifier, or a duration does not fit in 16 bits.
+     */
+    public String toCHeader(String arrayName, List<TimerSetting> settings)
+        throws IllegalArgumentException
+    {
+        if (!isCIdentifier(arrayName)) {
+            throw new IllegalArgumentException("arrayName must be a C identifier.");
+        }
+        String guard = arrayName.toUpperCase(Locale.ROOT) + "_H";
+        StringBuilder result = new StringBuilder();
+        result.append("#ifndef ").append(guard).append('\n');
+        result.append("#define ").append(guard).append("\n\n");
+        result.append("#include <stdint.h>\n\n");
+        result.append("/* Timer clock ").append(clockHz).append(" hz, prescalers {");
+        for (int i = 0; i < prescalers.length; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(prescalers[i]);
+        }
+        result.append("} */\n");
+        result.append("#define ").append(arrayName.toUpperCase(Locale.ROOT)).append("_LENGTH ").append(settings.size())
+            .append("\n\n");
+        result.append("/* { prescaler index, top, compare, duration ms } */\n");
+        result.append("static const uint16_t ").append(arrayName).append("[][4] = {\n");
+        for (TimerSetting setting : settings) {
+            checkDuration(setting);
+            result.append("    { ").append(setting.isRest() ? REST_PRESCALER_INDEX : setting.prescalerIndex)
+                .append(", ").append(setting.top)
+                .append(", ").append(setting.compare)
+                .append(", ").append(setting.durationMillis)
+                .append(" },\n");
+        }
+        result.append("};\n\n");
+        result.append("#endif\n");
+        return result.toString();
+    }
+
+    /**
+     * Finds the prescaler and top value that produce the frequency closest to hz. Ties are resolved in favor of
+     * the earlier prescaler.
+     */
+    private TimerSetting findBestSetting(float hz) {
+        int bestIndex = 0;
+        int bestTop = 0;
+        double bestError = Double.MAX_VALUE;
+        for (int i = 0; i < prescalers.length; i++) {
+            double prescaledHz = (double) clockHz / prescalers[i];
+            long top = Math.round(prescaledHz / hz) - 1;
+            if (top < 1) {
+                top = 1;
+            }
+            if (top > maxTop) {
+                top = maxTop;
+            }
+            double error = Math.abs(prescaledHz / (top + 1) - hz);
+            if (error < bestError) {
+                bestError = error;
+                bestIndex = i;
+                bestTop = (int) top;
+            }
+        }
+        int prescaler = prescalers[bestIndex];
+        double actualHz = (double) clockHz / ((double) prescaler * (bestTop + 1));
+        float errorCents = (float) (1200 * Math.log(actualHz / hz) / Math.log(2));
+        return new TimerSetting(bestIndex, prescaler, bestTop, (bestTop + 1) / 2, (float) actualHz, errorCents, 0);
+    }
+
+    private static void checkDuration(TimerSetting setting) {
+        if (setting.durationMillis > 0xFFFF) {
+            throw new IllegalArgumentException("Duration " + setting.durationMillis + " ms does not fit in 16 bits.");
+        }
+    }
+
+    /**
+     * Returns true if the given name is a C identifier: an ASCII letter or underscore, then letters, digits or
+     * underscores.
+     */
+    private static boolean isCIdentifier(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' ||
+                (i > 0 && c >= '0' && c <= '9');
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int putUnsignedShort(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        return offset + 2;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.InputStream;
+
+/**
+ * Audio input stream that renders a {@link ToneSequence} as it is read.
+ * <p>
+ * Audio is signed 16-bit little-endian mono PCM at the sample rate of the renderer. Samples are only synthesized
+ * when they are read, through a single small buffer, and skipping moves directly to the target tone without
+ * rendering the samples in between.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ToneAudioInputStream extends AudioInputStream
+{
+    /**
+     * Creates a stream positioned at the start of the tune.
+     *
+     * @param renderer The renderer used to produce samples
+     * @param toneSequence The sequence to render
+     */
+    public ToneAudioInputStream(ToneRenderer renderer, ToneSequence toneSequence) {
+        this(renderer.open(toneSequence), renderer.sampleRate);
+    }
+
+    private ToneAudioInputStream(ToneStream stream, int sampleRate) {
+        super(new PcmInputStream(stream), new AudioFormat(sampleRate, 16, 1, true, false), stream.length());
+    }
+
+    /**
+     * Byte stream of little-endian 16-bit samples read from a {@link ToneStream}.
+     */
+    private static class PcmInputStream extends InputStream
+    {
+        private final ToneStream stream;
+
+        private final short[] samples = new short[ToneRenderer.BLOCK_SIZE];
+
+        private final byte[] buffer = new byte[ToneRenderer.BLOCK_SIZE * 2];
+
+        /** Position of the next byte to read from the buffer */
+        private int bufferPosition;
+
+        /** Number of valid bytes in the buffer */
+        private int bufferLimit;
+
+        PcmInputStream(ToneStream stream) {
+            this.stream = stream;
+        }
+
+        @Override public int read() {
+            if (!fillBuffer()) {
+                return -1;
+            }
+            return buffer[bufferPosition++] & 0xFF;
+        }
+
+        @Override public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int done = 0;
+            while (done < len && fillBuffer()) {
+                int n = Math.min(len - done, bufferLimit - bufferPosition);
+                System.arraycopy(buffer, bufferPosition, b, off + done, n);
+                bufferPosition += n;
+                done += n;
+            }
+            return done == 0 ? -1 : done;
+        }
+
+        @Override public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            long buffered = Math.min(n, bufferLimit - bufferPosition);
+            bufferPosition += buffered;
+            long remaining = n - buffered;
+            long skipped = buffered + 2 * stream.skip(remaining / 2);
+            if (remaining % 2 != 0 && skipped == n - 1 && fillBuffer()) {
+                bufferPosition++;
+                skipped++;
+            }
+            return skipped;
+        }
+
+        @Override public void close() {
+            stream.close();
+        }
+
+        @Override public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, bufferLimit - bufferPosition + 2 * stream.remaining());
+        }
+
+        /**
+         * Renders the next block into the buffer if it is empty.
+         *
+         * @return false if the end of the tune has been reached.
+         */
+        private boolean fillBuffer() {
+            if (bufferPosition < bufferLimit) {
+                return true;
+            }
+            int count = stream.read(samples, 0, samples.length);
+            if (count == -1) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                buffer[2 * i] = (byte) samples[i];
+                buffer[2 * i + 1] = (byte) (samples[i] >> 8);
+            }
+            bufferPosition = 0;
+            bufferLimit = 2 * count;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link ToneSequence} from a stream of events, each a frequency held for a number of seconds, such as the
+ * output of a pitch tracker or a game's sound effects.
+ * <p>
+ * Each event is mapped to the closest note, or to a rest if its frequency is not greater than 0, and consecutive
+ * events on the same note are merged. The tempo is chosen from a list of candidates to minimise the total timing
+ * error: the end of every event is rounded to the nearest sixteenth of a beat, and the error is the sum of the
+ * distances between the rounded and the actual ends, in seconds. Events that round to less than a thirty-second
+ * note are merged into the following event, and events longer than any single duration are split into several
+ * tones, longest first, using dotted durations where they save a tone. Since split tones are articulated
+ * separately, each extra tone adds a penalty to the error of a tempo, so that faster tempos are only chosen when
+ * they are substantially more accurate. Tempos with equal scores, such as multiples of each other that fit the events
+ * exactly, are told apart by preferring the one whose tones are closest to quarter notes on average.
+ * <p>
+ * Events are read from primitive arrays. Rounding is computed from the cumulative time of each event, so errors do
+ * not accumulate, and each candidate tempo is scored in a single pass without allocating.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ToneQuantiser
+{
+    /** The standard RTTTL tempos, in quarter note beats per minute */
+    public static final int[] STANDARD_BEATS_PER_MINUTE = {
+        25, 28, 31, 35, 40, 45, 50, 56, 63, 70, 80, 90, 100, 112, 125, 140, 160, 180, 200, 225, 250, 285, 320, 355,
+        400, 450, 500, 565, 635, 715, 800, 900
+    };
+
+    /** Penalty for each tone added by splitting an event, if not specified, in seconds */
+    public static final float DEFAULT_SPLIT_PENALTY_SECONDS = 0.01f;
+
+    /** Difference in score below which two tempos are considered equally accurate, in seconds */
+    private static final double SCORE_TOLERANCE_SECONDS = 1e-6;
+
+    /** Spacing of the grid event ends are rounded to, in units; every multiple of it of at least 4 can be played */
+    private static final int GRID_UNITS = 2;
+
+    /** Length of the shortest duration, a thirty-second note, in units */
+    private static final int MIN_UNITS = 4;
+
+    /** Durations, longest first */
+    private static final Duration[] DURATIONS_BY_LENGTH = {
+        Duration.DOTTED_WHOLE, Duration.WHOLE, Duration.DOTTED_HALF, Duration.HALF, Duration.DOTTED_QUARTER,
+        Duration.QUARTER, Duration.DOTTED_EIGHTH, Duration.EIGHTH, Duration.DOTTED_SIXTEENTH, Duration.SIXTEENTH,
+        Duration.DOTTED_THIRTY_SECOND, Duration.THIRTY_SECOND
+    };
+
+    /** Length of the longest duration, in units */
+    private static final int MAX_UNITS = ToneRenderer.durationUnits(Duration.DOTTED_WHOLE);
+
+    /** Number of tones needed for each length shorter than twice the longest duration, indexed by length / 2 */
+    private static final int[] TONE_COUNTS = new int[MAX_UNITS];
+    static {
+        for (int units = MIN_UNITS; units < 2 * MAX_UNITS; units += GRID_UNITS) {
+            TONE_COUNTS[units / GRID_UNITS] = split(units, null, null);
+        }
+    }
+
+    private TuningTable tuning = TuningTable.STANDARD;
+
+    private int[] candidateBeatsPerMinute = STANDARD_BEATS_PER_MINUTE;
+
+    private float splitPenaltySeconds = DEFAULT_SPLIT_PENALTY_SECONDS;
+
+    /** Semitone of each merged event, or -1 for a rest */
+    private int[] semitones = new int[0];
+
+    /** Time from the start to the end of each merged event, in seconds */
+    private double[] ends = new double[0];
+
+    /** Number of merged events */
+    private int eventCount;
+
+    /** Average tone length of the last tempo scored, in quarter notes */
+    private double averageQuarterNotes;
+
+    /** Sets the tuning used to find the closest note, which is {@link TuningTable#STANDARD} by default */
+    public void setTuning(TuningTable tuning) {
+        if (tuning == null) {
+            throw new IllegalArgumentException("tuning cannot be null.");
+        }
+        this.tuning = tuning;
+    }
+
+    /**
+     * Sets the tempos to choose from, which are {@link #STANDARD_BEATS_PER_MINUTE} by default.
+     *
+     * @throws IllegalArgumentException If there are no candidates, or any is not greater than 0.
+     */
+    public void setCandidateBeatsPerMinute(int... candidates) {
+        if (candidates == null || candidates.length == 0) {
+            throw new IllegalArgumentException("candidates cannot be empty.");
+        }
+        for (int candidate : candidates) {
+            if (candidate <= 0) {
+                throw new IllegalArgumentException("candidates must be > 0.");
+            }
+        }
+        this.candidateBeatsPerMinute = candidates.clone();
+    }
+
+    /**
+     * Sets the penalty for each tone added by splitting an event, in seconds of timing error.
+     *
+     * @throws IllegalArgumentException If the penalty is negative.
+     */
+    public void setSplitPenaltySeconds(float splitPenaltySeconds) {
+        if (!(splitPenaltySeconds >= 0.0f)) {
+            throw new IllegalArgumentException("splitPenaltySeconds must be >= 0.");
+        }
+        this.splitPenaltySeconds = splitPenaltySeconds;
+    }
+
+    /**
+     * Quantises all of the given events.
+     *
+     * @see #quantise(String, float[], float[], int, int)
+     */
+    public ToneSequence quantise(String name, float[] hz, float[] seconds) {
+        if (hz.length != seconds.length) {
+            throw new IllegalArgumentException("hz and seconds must have the same length.");
+        }
+        return quantise(name, hz, seconds, 0, hz.length);
+    }
+
+    /**
+     * Quantises a range of events.
+     *
+     * @param name The name of the sequence
+     * @param hz The frequency of each event, in hz, or 0 for a rest
+     * @param seconds The length of each event, in seconds. Each must be greater than 0.
+     * @param offset The index of the first event
+     * @param count The number of events
+     * @return The sequence, using the tempo with the least error
+     * @throws IllegalArgumentException If the range is out of bounds or an event is invalid.
+     */
+    public ToneSequence quantise(String name, float[] hz, float[] seconds, int offset, int count)
+        throws IllegalArgumentException
+    {
+        if (offset < 0 || count < 0 || offset + count > hz.length || offset + count > seconds.length) {
+            throw new IllegalArgumentException("offset and count must be within the arrays.");
+        }
+        mergeEvents(hz, seconds, offset, count);
+
+        int bestBeatsPerMinute = candidateBeatsPerMinute[0];
+        double bestScore = Double.MAX_VALUE;
+        double bestDistance = Double.MAX_VALUE;
+        for (int beatsPerMinute : candidateBeatsPerMinute) {
+            double score = score(beatsPerMinute);
+            // Distance from a quarter note, in octaves of length
+            double distance = Math.abs(Math.log(averageQuarterNotes));
+            boolean tie = Math.abs(score - bestScore) <= SCORE_TOLERANCE_SECONDS;
+            if ((!tie && score < bestScore) || (tie && distance < bestDistance)) {
+                bestScore = score;
+                bestDistance = distance;
+                bestBeatsPerMinute = beatsPerMinute;
+            }
+        }
+        return build(name, bestBeatsPerMinute);
+    }
+
+    /**
+     * Returns the total timing error of the merged events at the given tempo, plus the penalty for split tones, in
+     * seconds, and sets {@link #averageQuarterNotes}.
+     */
+    double score(int beatsPerMinute) {
+        double unitsPerSecond = beatsPerMinute * (double) ToneRenderer.UNITS_PER_QUARTER_NOTE / 60.0;
+        double error = 0.0;
+        long tones = 0;
+        long extraTones = 0;
+        long position = 0;
+        for (int i = 0; i < eventCount; i++) {
+            double end = ends[i] * unitsPerSecond;
+            long rounded = GRID_UNITS * Math.round(end / GRID_UNITS);
+            if (rounded - position >= MIN_UNITS) {
+                int count = toneCount(rounded - position);
+                tones += count;
+                extraTones += count - 1;
+                position = rounded;
+            }
+            error += Math.abs(position - end);
+        }
+        averageQuarterNotes = tones == 0 ? 1.0 : (double) position / tones / ToneRenderer.UNITS_PER_QUARTER_NOTE;
+        if (tones == 0 && eventCount > 0) {
+            // Nothing would be left of the tune
+            return Double.MAX_VALUE;
+        }
+        return error / unitsPerSecond + extraTones * (double) splitPenaltySeconds;
+    }
+
+    /**
+     * Builds the sequence for the merged events at the given tempo.
+     */
+    private ToneSequence build(String name, int beatsPerMinute) {
+        double unitsPerSecond = beatsPerMinute * (double) ToneRenderer.UNITS_PER_QUARTER_NOTE / 60.0;
+        List<Tone> toneList = new ArrayList<Tone>();
+        long position = 0;
+        for (int i = 0; i < eventCount; i++) {
+            long rounded = GRID_UNITS * Math.round(ends[i] * unitsPerSecond / GRID_UNITS);
+            if (rounded - position < MIN_UNITS) {
+                // Merged into the next event
+                continue;
+            }
+            Note note = semitones[i] < 0 ? null : Note.findNoteFromSemitone(semitones[i]);
+            split(rounded - position, toneList, note);
+            position = rounded;
+        }
+        return ToneSequence.withCommonDefaults(name, toneList, beatsPerMinute);
+    }
+
+    /**
+     * Maps events to notes and merges consecutive events on the same note, accumulating their end times.
+     */
+    private void mergeEvents(float[] hz, float[] seconds, int offset, int count) {
+        if (semitones.length < count) {
+            semitones = new int[count];
+            ends = new double[count];
+        }
+        eventCount = 0;
+        double time = 0.0;
+        for (int i = offset; i < offset + count; i++) {
+            float length = seconds[i];
+            if (!(length > 0.0f) || Float.isInfinite(length)) {
+                throw new IllegalArgumentException("seconds[" + i + "] must be > 0.");
+            }
+            if (Float.isNaN(hz[i])) {
+                throw new IllegalArgumentException("hz[" + i + "] cannot be NaN.");
+            }
+            int semitone = hz[i] > 0.0f ? tuning.findClosestNote(hz[i]).semitone : -1;
+            time += length;
+            if (eventCount > 0 && semitones[eventCount - 1] == semitone) {
+                ends[eventCount - 1] = time;
+            } else {
+                semitones[eventCount] = semitone;
+                ends[eventCount] = time;
+                eventCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tones needed to fill the given length, which is a multiple of {@link #GRID_UNITS} of
+     * at least {@link #MIN_UNITS}.
+     */
+    static int toneCount(long units) {
+        if (units < 2 * MAX_UNITS) {
+            return TONE_COUNTS[(int) (units / GRID_UNITS)];
+        }
+        // Every tone but the last two is the longest duration
+        long longest = units / MAX_UNITS - 1;
+        return (int) (longest + TONE_COUNTS[(int) ((units - longest * MAX_UNITS) / GRID_UNITS)]);
+    }
+
+    /**
+     * Fills the given length with tones of the given note, longest first, never leaving a remainder shorter than
+     * the shortest duration.
+     *
+     * @param units The length to fill, a multiple of {@link #GRID_UNITS} of at least {@link #MIN_UNITS}
+     * @param toneList The list to add tones to, or null to only count them
+     * @param note The note of the tones, or null for rests
+     * @return The number of tones
+     */
+    private static int split(long units, List<Tone> toneList, Note note) {
+        int count = 0;
+        for (Duration duration : DURATIONS_BY_LENGTH) {
+            int length = ToneRenderer.durationUnits(duration);
+            while (units >= length && (units == length || units - length >= MIN_UNITS)) {
+                if (toneList != null) {
+                    toneList.add(new Tone(note, duration));
+                }
+                units -= length;
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.List;
+
+/**
+ * Renders a {@link ToneSequence} to signed 16-bit mono PCM samples.
+ * <p>
+ * Each tone starts at the sample nearest to its position in the tune, computed from the total number of beats that
+ * precede it, so rounding errors do not accumulate over long tunes. The oscillator phase restarts with every tone
+ * and a short linear attack and release ramp is applied to avoid clicks between tones. Notes at or above the Nyquist
+ * frequency (half the sample rate) cannot be represented and are rendered as silence.
+ * <p>
+ * Note frequencies come from a {@link TuningTable}, and the oscillator phase increment of every note is computed
+ * from it when the renderer is created, so the tuning adds no work per tone.
+ * <p>
+ * Samples are produced in small blocks by simple counted loops over primitive arrays (oscillator fill, envelope
+ * multiply and 16-bit conversion). On Java 21 and later these use the Vector API when it is available, with output
+ * identical to the scalar loops; see {@link SynthesisKernels}.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public class ToneRenderer
+{
+    /** Sample rate used if not specified, in hz */
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    /** Peak amplitude used if not specified, as a fraction of full scale */
+    public static final float DEFAULT_AMPLITUDE = 0.5f;
+
+    /** Length of the attack and release ramps used if not specified, in seconds */
+    public static final float DEFAULT_RAMP_SECONDS = 0.005f;
+
+    /** Number of samples rendered per block */
+    static final int BLOCK_SIZE = 256;
+
+    /** Number of units per quarter note; every {@link Duration} is a whole number of these. */
+    static final int UNITS_PER_QUARTER_NOTE = 32;
+
+    /** Sample rate, in hz */
+    public final int sampleRate;
+
+    /** Oscillator waveform */
+    public final Waveform waveform;
+
+    /** Peak amplitude, as a fraction of full scale */
+    public final float amplitude;
+
+    /** Length of the attack and release ramps, in seconds */
+    public final float rampSeconds;
+
+    /** Tuning used to find the frequency of each note */
+    public final TuningTable tuning;
+
+    /** Length of the attack and release ramps, in samples */
+    private final int rampSamples;
+
+    /** Oscillator phase increment per sample of each note, indexed by semitone, or 0 if it cannot be rendered */
+    private final int[] phaseIncrements;
+
+    /**
+     * Creates a renderer producing sine waves at {@link #DEFAULT_SAMPLE_RATE}.
+     */
+    public ToneRenderer() {
+        this(DEFAULT_SAMPLE_RATE, Waveform.SINE);
+    }
+
+    /**
+     * Creates a renderer using the default amplitude ({@link #DEFAULT_AMPLITUDE}) and ramp length
+     * ({@link #DEFAULT_RAMP_SECONDS}).
+     *
+     * @param sampleRate The sample rate, in hz. Must be greater than 0.
+     * @param waveform The oscillator waveform
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public ToneRenderer(int sampleRate, Waveform waveform) {
+        this(sampleRate, waveform, DEFAULT_AMPLITUDE, DEFAULT_RAMP_SECONDS);
+    }
+
+    /**
+     * Creates a renderer using the standard tuning, {@link TuningTable#STANDARD}.
+     *
+     * @param sampleRate The sample rate, in hz. Must be greater than 0.
+     * @param waveform The oscillator waveform
+     * @param amplitude The peak amplitude, as a fraction of full scale. Must be greater than 0 and at most 1.
+     * @param rampSeconds The length of the attack and release ramp of each tone, in seconds. Must be at least 0.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public ToneRenderer(int sampleRate, Waveform waveform, float amplitude, float rampSeconds) {
+        this(sampleRate, waveform, amplitude, rampSeconds, TuningTable.STANDARD);
+    }
+
+    /**
+     * Creates a renderer.
+     *
+     * @param sampleRate The sample rate, in hz. Must be greater than 0.
+     * @param waveform The oscillator waveform
+     * @param amplitude The peak amplitude, as a fraction of full scale. Must be greater than 0 and at most 1.
+     * @param rampSeconds The length of the attack and release ramp of each tone, in seconds. Must be at least 0.
+     * @param tuning The tuning used to find the frequency of each note
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public ToneRenderer(int sampleRate, Waveform waveform, float amplitude, float rampSeconds, TuningTable tuning) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be > 0.");
+        }
+        if (waveform == null) {
+            throw new IllegalArgumentException("waveform cannot be null.");
+        }
+        if (!(amplitude > 0.0f && amplitude <= 1.0f)) {
+            throw new IllegalArgumentException("amplitude must be > 0 and <= 1.");
+        }
+        if (!(rampSeconds >= 0.0f)) {
+            throw new IllegalArgumentException("rampSeconds must be >= 0.");
+        }
+        if (tuning == null) {
+            throw new IllegalArgumentException("tuning cannot be null.");
+        }
+        this.sampleRate = sampleRate;
+        this.waveform = waveform;
+        this.amplitude = amplitude;
+        this.rampSeconds = rampSeconds;
+        this.tuning = tuning;
+        this.rampSamples = Math.round(rampSeconds * sampleRate);
+        this.phaseIncrements = tuning.phaseIncrements(sampleRate);
+    }
+
+    /**
+     * Returns the number of samples needed to render the given tone sequence.
+     */
+    public long sampleCount(ToneSequence toneSequence) {
+        long units = 0;
+        for (Tone tone : toneSequence.toneList) {
+            units += durationUnits(tone.duration);
+        }
+        return sampleAtUnits(units, toneSequence.beatsPerMinute);
+    }
+
+    /**
+     * Renders the given tone sequence.
+     *
+     * @param toneSequence The sequence to render
+     * @return The rendered samples
+     * @throws IllegalArgumentException If the rendered tune would not fit in an array.
+     */
+    public short[] render(ToneSequence toneSequence)
+        throws IllegalArgumentException
+    {
+        ToneStream stream = open(toneSequence);
+        if (stream.length() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tone sequence is too long to render into an array.");
+        }
+        short[] result = new short[(int) stream.length()];
+        stream.read(result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Renders part of the given tone sequence. The samples are identical to the same range of
+     * {@link #render(ToneSequence)}.
+     * <p>
+     * This builds a {@link ToneTimeline} on every call; callers rendering many ranges of the same tune should build
+     * one timeline and use {@link #render(ToneTimeline, long, short[], int, int)}.
+     *
+     * @param toneSequence The sequence to render
+     * @param startSample The first sample to render
+     * @param count The maximum number of samples to render
+     * @return The rendered samples, which are fewer than count if the range extends past the end of the tune.
+     */
+    public short[] render(ToneSequence toneSequence, long startSample, int count) {
+        ToneTimeline timeline = new ToneTimeline(toneSequence, sampleRate);
+        short[] result = new short[(int) Math.max(0, Math.min(count, timeline.length() - startSample))];
+        render(timeline, startSample, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Renders part of a tone sequence. The tone containing the first sample is found with a binary search and the
+     * oscillator phase is computed directly from the offset within that tone, so the cost depends only on the
+     * number of samples rendered and not on where they are in the tune.
+     *
+     * @param timeline The timeline of the sequence to render, at the sample rate of this renderer
+     * @param startSample The first sample to render. Must be at least 0.
+     * @param out The array to render into
+     * @param offset The offset within out of the first sample
+     * @param count The maximum number of samples to render
+     * @return The number of samples rendered, which is less than count only if the range extends past the end of
+     *         the tune.
+     * @throws IllegalArgumentException If the timeline is for a different sample rate or startSample is negative.
+     */
+    public int render(ToneTimeline timeline, long startSample, short[] out, int offset, int count)
+        throws IllegalArgumentException
+    {
+        RTTTLMetrics metrics = RTTTLMetrics.installed;
+        if (metrics == null) {
+            return renderRange(timeline, startSample, out, offset, count);
+        }
+        long start = System.nanoTime();
+        try {
+            int done = renderRange(timeline, startSample, out, offset, count);
+            int tones = done == 0 ? 0 :
+                timeline.toneIndexAt(startSample + done - 1) - timeline.toneIndexAt(startSample) + 1;
+            metrics.recordSuccess(RTTTLMetrics.Operation.RENDER, start, tones, 2L * done);
+            return done;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(RTTTLMetrics.Operation.RENDER, start, e);
+            throw e;
+        }
+    }
+
+    private int renderRange(ToneTimeline timeline, long startSample, short[] out, int offset, int count) {
+        if (timeline.sampleRate != sampleRate) {
+            throw new IllegalArgumentException("Timeline sample rate " + timeline.sampleRate +
+                " does not match renderer sample rate " + sampleRate + ".");
+        }
+        if (startSample < 0) {
+            throw new IllegalArgumentException("startSample must be >= 0.");
+        }
+        if (startSample >= timeline.length()) {
+            return 0;
+        }
+
+        List<Tone> toneList = timeline.toneSequence.toneList;
+        float[] block = new float[BLOCK_SIZE];
+        long position = startSample;
+        int done = 0;
+        int toneIndex = timeline.toneIndexAt(startSample);
+        while (done < count && toneIndex < toneList.size()) {
+            long toneStart = timeline.toneStart(toneIndex);
+            long toneEnd = timeline.toneEnd(toneIndex);
+            int n = (int) Math.min(count - done, toneEnd - position);
+            renderTone(toneList.get(toneIndex), toneEnd - toneStart, position - toneStart, out, offset + done, n,
+                block);
+            done += n;
+            position += n;
+            toneIndex++;
+        }
+        return done;
+    }
+
+    /**
+     * Opens a stream that renders the given tone sequence incrementally.
+     *
+     * @param toneSequence The sequence to render
+     * @return A stream positioned at the start of the tune
+     */
+    public ToneStream open(ToneSequence toneSequence) {
+        return new ToneStream(this, toneSequence);
+    }
+
+    /**
+     * Returns whether the given object is a renderer with the same settings, and so renders identical samples.
+     */
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ToneRenderer that = (ToneRenderer) o;
+
+        return sampleRate == that.sampleRate && waveform == that.waveform &&
+            Float.floatToIntBits(amplitude) == Float.floatToIntBits(that.amplitude) &&
+            Float.floatToIntBits(rampSeconds) == Float.floatToIntBits(that.rampSeconds) && tuning.equals(that.tuning);
+    }
+
+    @Override public int hashCode() {
+        int result = sampleRate;
+        result = 31 * result + waveform.hashCode();
+        result = 31 * result + Float.floatToIntBits(amplitude);
+        result = 31 * result + Float.floatToIntBits(rampSeconds);
+        result = 31 * result + tuning.hashCode();
+        return result;
+    }
+
+    /**
+     * Renders part of a single tone.
+     *
+     * @param tone The tone to render
+     * @param toneLength The length of the whole tone, in samples
+     * @param offset The offset within the tone of the first sample to render
+     * @param out The array to render into
+     * @param outOffset The offset within out of the first sample to render
+     * @param count The number of samples to render
+     * @param block Scratch space of at least {@link #BLOCK_SIZE} samples
+     */
+    void renderTone(Tone tone, long toneLength, long offset, short[] out, int outOffset, int count, float[] block) {
+        int increment = tone.isRest() ? 0 : phaseIncrements[tone.note.semitone];
+        if (increment == 0) {
+            for (int i = 0; i < count; i++) {
+                out[outOffset + i] = 0;
+            }
+            return;
+        }
+
+        SynthesisKernels kernels = SynthesisKernels.INSTANCE;
+        int ramp = (int) Math.min(rampSamples, toneLength / 2);
+        float gain = amplitude * Short.MAX_VALUE;
+        int done = 0;
+        while (done < count) {
+            int n = Math.min(BLOCK_SIZE, count - done);
+            long position = offset + done;
+            waveform.fill(kernels, block, n, (int) (position * increment), increment);
+            kernels.applyEnvelope(block, n, position, toneLength, ramp);
+            kernels.toPcm16(block, 0, n, gain, out, outOffset + done);
+            done += n;
+        }
+    }
+
+    /**
+     * Returns the number of samples from the start of the tune to the given position, in units.
+     */
+    long sampleAtUnits(long units, int beatsPerMinute) {
+        return sampleAtUnits(units, beatsPerMinute, sampleRate);
+    }
+
+    /**
+     * Returns the number of samples from the start of the tune to the given position, in units.
+     */
+    static long sampleAtUnits(long units, int beatsPerMinute, int sampleRate) {
+        return units * 60 * sampleRate / ((long) UNITS_PER_QUARTER_NOTE * beatsPerMinute);
+    }
+
+    /**
+     * Returns the length of the given duration, in units.
+     */
+    static int durationUnits(Duration duration) {
+        return (int) (duration.quarterNoteBeats * UNITS_PER_QUARTER_NOTE);
+    }
+}
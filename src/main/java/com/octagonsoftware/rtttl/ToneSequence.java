@@ -23,6 +23,8 @@
 
 package com.octagonsoftware.rtttl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -99,6 +101,62 @@ public class ToneSequence {
         this.beatsPerMinute = beatsPerMinute;
     }
 
+    /**
+     * Returns a copy of this sequence with every note moved by the given number of semitones.
+     *
+     * @param semitones The number of semitones to move by, which may be negative
+     * @throws IllegalArgumentException If a note would move outside the range of {@link Note}.
+     */
+    public ToneSequence transpose(int semitones)
+        throws IllegalArgumentException
+    {
+        List<Tone> result = new ArrayList<Tone>(toneList.size());
+        for (Tone tone : toneList) {
+            if (tone.isRest()) {
+                result.add(tone);
+                continue;
+            }
+            int semitone = tone.note.semitone + semitones;
+            if (semitone < Note.MIN_SEMITONE || semitone > Note.MAX_SEMITONE) {
+                throw new IllegalArgumentException("Cannot transpose " + tone.note + " by " + semitones +
+                    " semitones.");
+            }
+            result.add(new Tone(Note.findNoteFromSemitone(semitone), tone.duration));
+        }
+        int octave = Math.min(Math.max(defaultOctave + semitones / 12, 0), 8);
+        return new ToneSequence(name, Collections.unmodifiableList(result), octave, defaultDuration, beatsPerMinute);
+    }
+
+    /**
+     * Creates a ring tone whose default octave and duration are the most common among its tones. Dotted durations
+     * count toward their undotted base, since the default duration cannot be dotted.
+     */
+    static ToneSequence withCommonDefaults(String name, List<Tone> toneList, int beatsPerMinute) {
+        if (toneList.isEmpty()) {
+            return new ToneSequence(name, toneList, DEFAULT_OCTAVE, DEFAULT_DURATION, beatsPerMinute);
+        }
+        int[] durationCounts = new int[Duration.values().length];
+        int[] octaveCounts = new int[9];
+        for (Tone tone : toneList) {
+            durationCounts[tone.duration.asUndotted().ordinal()]++;
+            if (!tone.isRest()) {
+                octaveCounts[tone.note.octave]++;
+            }
+        }
+        return new ToneSequence(name, toneList, indexOfMax(octaveCounts),
+            Duration.values()[indexOfMax(durationCounts)], beatsPerMinute);
+    }
+
+    private static int indexOfMax(int[] counts) {
+        int result = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[result]) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
     @Override public boolean equals(Object o) {
         if (this == o) {
             return true;
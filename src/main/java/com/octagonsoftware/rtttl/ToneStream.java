@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.List;
+
+/**
+ * Incrementally renders a {@link ToneSequence}, a block at a time.
+ * <p>
+ * A stream only keeps its position in the tune and a small scratch buffer, so memory use does not depend on the
+ * length of the tune. The samples produced are identical to those of {@link ToneRenderer#render(ToneSequence)}.
+ * <p>
+ * If {@link RTTTLMetrics} are installed, a stream records one render when it reaches the end of the tune, fails, or
+ * is closed, with the time spent in {@link #read(short[], int, int)} as its latency.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ToneStream
+{
+    private final ToneRenderer renderer;
+
+    private final List<Tone> toneList;
+
+    private final int beatsPerMinute;
+
+    /** Total number of samples in the tune */
+    private final long length;
+
+    /** Scratch space for the renderer */
+    private final float[] block = new float[ToneRenderer.BLOCK_SIZE];
+
+    /** Index of the current tone, or -1 before the first tone */
+    private int toneIndex = -1;
+
+    /** Position of the end of the current tone, in units */
+    private long toneEndUnits;
+
+    /** First sample of the current tone */
+    private long toneStart;
+
+    /** First sample after the current tone */
+    private long toneEnd;
+
+    /** Next sample to be read */
+    private long position;
+
+    /** Samples rendered by read, as opposed to skipped */
+    private long renderedCount;
+
+    /** Time spent rendering while metrics were installed */
+    private long renderNanos;
+
+    /** Whether the render has been recorded in the metrics */
+    private boolean recorded;
+
+    /**
+     * Creates a stream positioned at the start of the tune.
+     *
+     * @param renderer The renderer used to produce samples
+     * @param toneSequence The sequence to render
+     */
+    public ToneStream(ToneRenderer renderer, ToneSequence toneSequence) {
+        this.renderer = renderer;
+        this.toneList = toneSequence.toneList;
+        this.beatsPerMinute = toneSequence.beatsPerMinute;
+        this.length = renderer.sampleCount(toneSequence);
+    }
+
+    /** Returns the total number of samples in the tune */
+    public long length() {
+        return length;
+    }
+
+    /** Returns the index of the next sample to be read */
+    public long position() {
+        return position;
+    }
+
+    /** Returns the number of samples left to read */
+    public long remaining() {
+        return length - position;
+    }
+
+    /**
+     * Renders up to count samples into the given array.
+     *
+     * @param out The array to render into
+     * @param offset The offset within out of the first sample
+     * @param count The maximum number of samples to render
+     * @return The number of samples rendered, or -1 if the end of the tune has been reached.
+     */
+    public int read(short[] out, int offset, int count) {
+        if (position >= length) {
+            return -1;
+        }
+        RTTTLMetrics metrics = RTTTLMetrics.installed;
+        long start = metrics == null ? 0 : System.nanoTime();
+        int done = 0;
+        try {
+            while (done < count && position < length) {
+                while (position >= toneEnd) {
+                    nextTone();
+                }
+                int n = (int) Math.min(count - done, toneEnd - position);
+                renderer.renderTone(toneList.get(toneIndex), toneEnd - toneStart, position - toneStart, out,
+                    offset + done, n, block);
+                done += n;
+                position += n;
+            }
+        } catch (RuntimeException e) {
+            if (metrics != null && !recorded) {
+                recorded = true;
+                metrics.recordFailure(RTTTLMetrics.Operation.RENDER, start - renderNanos, e);
+            }
+            throw e;
+        }
+        renderedCount += done;
+        if (metrics != null) {
+            renderNanos += System.nanoTime() - start;
+        }
+        if (position >= length) {
+            close();
+        }
+        return done;
+    }
+
+    /**
+     * Records the render of the samples read so far in the installed metrics, if it has not already been recorded.
+     * This is done automatically at the end of the tune, so a stream only needs to be closed if it is abandoned
+     * early. Reading after closing is allowed, but is not recorded.
+     */
+    public void close() {
+        if (recorded) {
+            return;
+        }
+        recorded = true;
+        RTTTLMetrics metrics = RTTTLMetrics.installed;
+        if (metrics != null && renderedCount > 0) {
+            metrics.recordSuccess(RTTTLMetrics.Operation.RENDER, System.nanoTime() - renderNanos, toneIndex + 1,
+                2L * renderedCount);
+        }
+    }
+
+    /**
+     * Skips over up to count samples without rendering them. Only the boundaries of the skipped tones are computed.
+     *
+     * @param count The number of samples to skip
+     * @return The number of samples skipped, which is less than count only at the end of the tune.
+     */
+    public long skip(long count) {
+        if (count <= 0) {
+            return 0;
+        }
+        long target = count >= length - position ? length : position + count;
+        while (target >= toneEnd && toneIndex + 1 < toneList.size()) {
+            nextTone();
+        }
+        long skipped = target - position;
+        position = target;
+        return skipped;
+    }
+
+    private void nextTone() {
+        toneIndex++;
+        toneStart = toneEnd;
+        toneEndUnits += ToneRenderer.durationUnits(toneList.get(toneIndex).duration);
+        toneEnd = renderer.sampleAtUnits(toneEndUnits, beatsPerMinute);
+    }
+}
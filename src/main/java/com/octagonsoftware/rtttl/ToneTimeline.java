@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.List;
+
+/**
+ * Immutable index of where each tone of a {@link ToneSequence} starts when rendered at a given sample rate.
+ * <p>
+ * The timeline allows the tone playing at any sample to be found with a binary search, which is used to render
+ * arbitrary ranges of a tune without rendering everything before them.
+ *
+ * @see ToneRenderer#render(ToneTimeline, long, short[], int, int)
+ */
+public class ToneTimeline
+{
+    /** The indexed tone sequence */
+    public final ToneSequence toneSequence;
+
+    /** Sample rate, in hz */
+    public final int sampleRate;
+
+    /** First sample of each tone, followed by the total number of samples */
+    private final long[] boundaries;
+
+    /**
+     * Creates a timeline for the given tone sequence.
+     *
+     * @param toneSequence The sequence to index
+     * @param sampleRate The sample rate, in hz. Must be greater than 0.
+     * @throws IllegalArgumentException If the sample rate is invalid.
+     */
+    public ToneTimeline(ToneSequence toneSequence, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be > 0.");
+        }
+        this.toneSequence = toneSequence;
+        this.sampleRate = sampleRate;
+
+        List<Tone> toneList = toneSequence.toneList;
+        boundaries = new long[toneList.size() + 1];
+        long units = 0;
+        for (int i = 0; i < toneList.size(); i++) {
+            units += ToneRenderer.durationUnits(toneList.get(i).duration);
+            boundaries[i + 1] = ToneRenderer.sampleAtUnits(units, toneSequence.beatsPerMinute, sampleRate);
+        }
+    }
+
+    /** Returns the total number of samples in the tune */
+    public long length() {
+        return boundaries[boundaries.length - 1];
+    }
+
+    /** Returns the number of tones in the tune */
+    public int toneCount() {
+        return boundaries.length - 1;
+    }
+
+    /** Returns the first sample of the tone with the given index */
+    public long toneStart(int toneIndex) {
+        return boundaries[toneIndex];
+    }
+
+    /** Returns the first sample after the tone with the given index */
+    public long toneEnd(int toneIndex) {
+        return boundaries[toneIndex + 1];
+    }
+
+    /**
+     * Returns the index of the tone playing at the given sample.
+     *
+     * @return The index of the tone, or -1 if the sample is before the start or after the end of the tune.
+     */
+    public int toneIndexAt(long sample) {
+        if (sample < 0 || sample >= length()) {
+            return -1;
+        }
+        // Find the last boundary <= sample; tones of zero length share a boundary with the next tone.
+        int low = 0;
+        int high = boundaries.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (boundaries[mid] <= sample) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Maps each {@link Note} to a frequency, for tunings other than the standard A4 = 440 Hz equal temperament of
+ * {@link Note#hz}.
+ * <p>
+ * A table is defined by a reference pitch for A4, a {@link Temperament} and a detune in cents applied to every
+ * note. The frequency of every note is computed once when the table is created and kept in a primitive array
+ * indexed by semitone, so renderers using an alternative tuning do no more work per note than with
+ * {@link #STANDARD}; {@link ToneRenderer} additionally precomputes its oscillator phase increments from the table.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public class TuningTable
+{
+    /** Ways of dividing the octave into the 12 notes of the scale */
+    public enum Temperament
+    {
+        /** Every semitone is the same ratio, 2^(1/12) */
+        EQUAL(),
+
+        /** Five-limit just intonation, with pure thirds and fifths above the tonic */
+        JUST(1, 1, 16, 15, 9, 8, 6, 5, 5, 4, 4, 3, 45, 32, 3, 2, 8, 5, 5, 3, 9, 5, 15, 8),
+
+        /** Pythagorean tuning, built from pure fifths */
+        PYTHAGOREAN(1, 1, 256, 243, 9, 8, 32, 27, 81, 64, 4, 3, 729, 512, 3, 2, 128, 81, 27, 16, 16, 9, 243, 128);
+
+        /** Difference from equal temperament of each interval above the tonic, in cents */
+        private final double[] offsetCents = new double[12];
+
+        /**
+         * @param ratios The numerator and denominator of the ratio of each interval above the tonic, from unison
+         * to major seventh, or nothing for equal temperament
+         */
+        Temperament(int... ratios) {
+            for (int i = 1; i < ratios.length / 2; i++) {
+                double ratio = (double) ratios[2 * i] / ratios[2 * i + 1];
+                offsetCents[i] = 1200.0 * Math.log(ratio) / Math.log(2) - 100.0 * i;
+            }
+        }
+    }
+
+    /** The standard tuning: A4 = 440 Hz in equal temperament. Its frequencies are identical to {@link Note#hz}. */
+    public static final TuningTable STANDARD = new TuningTable(440.0f, Temperament.EQUAL, 0, 0.0f);
+
+    /** Frequency of A4 in equal temperament, in hz */
+    public final float referenceHz;
+
+    /** Temperament */
+    public final Temperament temperament;
+
+    /** Pitch class of the tonic the temperament is built on, from 0 for C to 11 for B */
+    public final int tonic;
+
+    /** Offset applied to every note, in cents */
+    public final float detuneCents;
+
+    /** Frequency of each note, indexed by semitone */
+    private final float[] hz = new float[Note.MAX_SEMITONE + 1];
+
+    /**
+     * Creates an equal tempered table with the given pitch for A4, such as 432 or 442 Hz.
+     *
+     * @param referenceHz The frequency of A4, in hz. Must be greater than 0.
+     * @throws IllegalArgumentException If referenceHz is invalid.
+     */
+    public TuningTable(float referenceHz) {
+        this(referenceHz, Temperament.EQUAL, 0, 0.0f);
+    }
+
+    /**
+     * Creates a table. The tonic of each octave has its equal tempered frequency, and the other notes are tuned
+     * relative to it, so with a temperament other than {@link Temperament#EQUAL} the frequency of A4 is not exactly
+     * referenceHz unless A is the tonic.
+     *
+     * @param referenceHz The frequency of A4 in equal temperament, in hz. Must be greater than 0.
+     * @param temperament The temperament
+     * @param tonic The pitch class of the tonic, from 0 for C to 11 for B
+     * @param detuneCents An offset applied to every note, in cents. Must be between -1200 and 1200, inclusive.
+     * @throws IllegalArgumentException If any argument is invalid.
+     */
+    public TuningTable(float referenceHz, Temperament temperament, int tonic, float detuneCents) {
+        if (!(referenceHz > 0.0f) || Float.isInfinite(referenceHz)) {
+            throw new IllegalArgumentException("referenceHz must be > 0.");
+        }
+        if (temperament == null) {
+            throw new IllegalArgumentException("temperament cannot be null.");
+        }
+        if (tonic < 0 || tonic > 11) {
+            throw new IllegalArgumentException("tonic must be between 0-11, inclusive.");
+        }
+        if (!(detuneCents >= -1200.0f && detuneCents <= 1200.0f)) {
+            throw new IllegalArgumentException("detuneCents must be between -1200 and 1200, inclusive.");
+        }
+        this.referenceHz = referenceHz;
+        this.temperament = temperament;
+        this.tonic = tonic;
+        this.detuneCents = detuneCents;
+        for (int semitone = Note.MIN_SEMITONE; semitone <= Note.MAX_SEMITONE; semitone++) {
+            double cents = temperament.offsetCents[(semitone - tonic + 12) % 12] + detuneCents;
+            // Same arithmetic as Note.hzFromSemitone, so that the standard table matches Note.hz exactly
+            hz[semitone] = (float) (Math.pow(2, (semitone - 69) / 12f + cents / 1200.0) * referenceHz);
+        }
+    }
+
+    /** Returns the frequency of the given note, in hz */
+    public float hz(Note note) {
+        return hz[note.semitone];
+    }
+
+    /**
+     * Returns the note whose frequency in this table is closest to the given frequency, measured in cents.
+     * Frequencies outside the range of notes return the lowest or highest note.
+     */
+    public Note findClosestNote(float hz) {
+        int low = Note.MIN_SEMITONE;
+        int high = Note.MAX_SEMITONE;
+        if (!(hz > this.hz[low])) {
+            return Note.findNoteFromSemitone(low);
+        }
+        if (hz >= this.hz[high]) {
+            return Note.findNoteFromSemitone(high);
+        }
+        // Find the adjacent pair of notes around hz
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (this.hz[middle] <= hz) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        // Compare ratios rather than differences, so the boundary is the midpoint in cents
+        boolean lower = hz * hz < this.hz[low] * this.hz[high];
+        return Note.findNoteFromSemitone(lower ? low : high);
+    }
+
+    /**
+     * Returns the oscillator phase increment per sample of every note at the given sample rate, indexed by
+     * semitone, or 0 for notes at or above the Nyquist frequency.
+     */
+    int[] phaseIncrements(int sampleRate) {
+        int[] increments = new int[Note.MAX_SEMITONE + 1];
+        for (int semitone = Note.MIN_SEMITONE; semitone <= Note.MAX_SEMITONE; semitone++) {
+            if (hz[semitone] * 2 < sampleRate) {
+                increments[semitone] = (int) Math.round(hz[semitone] * 4294967296.0 / sampleRate);
+            }
+        }
+        return increments;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        TuningTable that = (TuningTable) o;
+
+        return Float.floatToIntBits(referenceHz) == Float.floatToIntBits(that.referenceHz) &&
+            temperament == that.temperament && tonic == that.tonic &&
+            Float.floatToIntBits(detuneCents) == Float.floatToIntBits(that.detuneCents);
+    }
+
+    @Override public int hashCode() {
+        int result = Float.floatToIntBits(referenceHz);
+        result = 31 * result + temperament.hashCode();
+        result = 31 * result + tonic;
+        result = 31 * result + Float.floatToIntBits(detuneCents);
+        return result;
+    }
+
+    @Override public String toString() {
+        return "TuningTable{" +
+            "referenceHz=" + referenceHz +
+            ", temperament=" + temperament +
+            ", tonic=" + tonic +
+            ", detuneCents=" + detuneCents +
+            '}';
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+/**
+ * Oscillator waveform used when rendering tones to PCM samples.
+ * <p>
+ * Oscillators use a 32-bit phase accumulator, where the full int range represents one period. The phase of
+ * sample <code>n</code> of a tone is therefore always exactly <code>n * increment</code> (modulo 2<sup>32</sup>),
+ * no matter how the tone is split into blocks.
+ */
+public enum Waveform
+{
+    SINE {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            float[] table = SINE_TABLE;
+            int p = phase;
+            for (int i = 0; i < count; i++) {
+                block[i] = table[p >>> SINE_TABLE_SHIFT];
+                p += increment;
+            }
+        }
+    },
+    SQUARE {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            kernels.fillSquare(block, 0, count, phase, increment);
+        }
+    },
+    TRIANGLE {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            kernels.fillTriangle(block, 0, count, phase, increment);
+        }
+    },
+    SAWTOOTH {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            kernels.fillSawtooth(block, 0, count, phase, increment);
+        }
+    },
+    /**
+     * Square wave with PolyBLEP corrected edges, which keeps aliasing low at low sample rates.
+     */
+    BANDLIMITED_SQUARE {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            float dt = unsignedToUnit(increment);
+            int p = phase;
+            for (int i = 0; i < count; i++) {
+                float t = unsignedToUnit(p);
+                float t2 = unsignedToUnit(p + HALF_PERIOD);
+                block[i] = (p >= 0 ? 1.0f : -1.0f) + polyBlep(t, dt) - polyBlep(t2, dt);
+                p += increment;
+            }
+        }
+    },
+    /**
+     * Rising sawtooth wave with a PolyBLEP corrected edge, which keeps aliasing low at low sample rates.
+     */
+    BANDLIMITED_SAWTOOTH {
+        @Override void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment) {
+            float dt = unsignedToUnit(increment);
+            int p = phase;
+            for (int i = 0; i < count; i++) {
+                float t = unsignedToUnit(p);
+                block[i] = 2.0f * t - 1.0f - polyBlep(t, dt);
+                p += increment;
+            }
+        }
+    };
+
+    /** Number of bits used to index the sine table */
+    private static final int SINE_TABLE_BITS = 12;
+
+    /** Shift that turns a 32-bit phase into a sine table index */
+    private static final int SINE_TABLE_SHIFT = 32 - SINE_TABLE_BITS;
+
+    /** Scales an unsigned 32-bit phase to the range [0, 1) */
+    private static final float UNSIGNED_PHASE_TO_UNIT = 1.0f / 4294967296.0f;
+
+    /** Half a period, as a phase */
+    private static final int HALF_PERIOD = Integer.MIN_VALUE;
+
+    /** One period of a sine wave */
+    private static final float[] SINE_TABLE = new float[1 << SINE_TABLE_BITS];
+    static {
+        for (int i = 0; i < SINE_TABLE.length; i++) {
+            SINE_TABLE[i] = (float) Math.sin(2.0 * Math.PI * i / SINE_TABLE.length);
+        }
+    }
+
+    /**
+     * Fills the first <code>count</code> entries of the block with samples in the range [-1, 1].
+     * <p>
+     * The square, triangle and sawtooth waves are filled by the given kernels, which may be vectorized. Sine waves
+     * are read from a table, and a gather is no faster than scalar loads of it; the band-limited waves branch on
+     * the phase of every sample. Both are filled here.
+     *
+     * @param kernels The kernels to fill with
+     * @param block The block to fill
+     * @param count The number of samples to fill
+     * @param phase The phase of the first sample
+     * @param increment The phase increment per sample
+     */
+    abstract void fill(SynthesisKernels kernels, float[] block, int count, int phase, int increment);
+
+    /**
+     * Returns the given phase as a fraction of a period, in the range [0, 1).
+     */
+    private static float unsignedToUnit(int phase) {
+        return (phase & 0xFFFFFFFFL) * UNSIGNED_PHASE_TO_UNIT;
+    }
+
+    /**
+     * Returns the polynomial band-limited step correction for a unit discontinuity at phase 0.
+     *
+     * @param t The phase, as a fraction of a period
+     * @param dt The phase increment per sample, as a fraction of a period
+     */
+    private static float polyBlep(float t, float dt) {
+        if (t < dt) {
+            float x = t / dt;
+            return x + x - x * x - 1.0f;
+        } else if (t > 1.0f - dt) {
+            float x = (t - 1.0f) / dt;
+            return x * x + x + x + 1.0f;
+        }
+        return 0.0f;
+    }
+}
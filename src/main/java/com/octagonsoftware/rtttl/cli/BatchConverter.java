@@ -0,0 +1,667 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl.cli;
+
+import com.octagonsoftware.rtttl.MidiWriter;
+import com.octagonsoftware.rtttl.RTTTLEncoder;
+import com.octagonsoftware.rtttl.RTTTLParser;
+import com.octagonsoftware.rtttl.TimerTableGenerator;
+import com.octagonsoftware.rtttl.ToneAudioInputStream;
+import com.octagonsoftware.rtttl.ToneRenderer;
+import com.octagonsoftware.rtttl.ToneSequence;
+import com.octagonsoftware.rtttl.Waveform;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts trees of RTTTL files to normalized RTTTL, WAV, MIDI or timer tables from the command line.
+ * <p>
+ * Each input file holds one tune. Files are parsed, transformed (transposed or re-timed, if requested) and written
+ * by a pool of worker threads, and progress and throughput are printed periodically. Each output is written to a
+ * temporary file and renamed into place, then its path is appended to a checkpoint file. A run that is stopped
+ * can be restarted with the same arguments, and skips every input whose output is listed in the checkpoint. The
+ * checkpoint starts with the settings that affect the outputs, and a run with different settings refuses to use it.
+ * <p>
+ * Inputs that would be written to the same output, such as {@code a.rtttl} and {@code a.txt} in one directory, are
+ * rejected before anything is converted.
+ * <p>
+ * Run with no arguments for usage.
+ */
+public class BatchConverter
+{
+    /** Output formats */
+    public enum Format
+    {
+        /** RTTTL as written by {@link RTTTLEncoder} */
+        RTTTL(".rtttl"),
+
+        /** 16-bit mono WAV audio */
+        WAV(".wav"),
+
+        /** Standard MIDI file, as written by {@link MidiWriter} */
+        MIDI(".mid"),
+
+        /** Timer settings for a 16 MHz, 16-bit AVR timer, as written by {@link TimerTableGenerator} */
+        TIMER(".bin");
+
+        /** File name extension of outputs */
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** Name of the checkpoint file in the output directory, if not specified */
+    public static final String DEFAULT_CHECKPOINT_NAME = ".rtttl-checkpoint";
+
+    /** Interval between progress reports, if not specified, in milliseconds */
+    public static final long DEFAULT_PROGRESS_MILLIS = 5000;
+
+    /** Extensions of files read from input directories */
+    private static final String[] INPUT_EXTENSIONS = {".rtttl", ".rtx", ".txt"};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String USAGE =
+        "Usage: java -jar rtttl.jar [options] -o <output-dir> <input>...\n" +
+        "\n" +
+        "Converts RTTTL files, or directories of .rtttl, .rtx and .txt files, one tune per file.\n" +
+        "\n" +
+        "Options:\n" +
+        "  -f, --format <rtttl|wav|midi|timer>   output format (default rtttl)\n" +
+        "  -o, --output <dir>                    output directory\n" +
+        "  -j, --threads <n>                     worker threads (default: number of processors)\n" +
+        "  --sample-rate <hz>                    WAV sample rate (default 44100)\n" +
+        "  --waveform <sine|square|...>          WAV waveform (default sine)\n" +
+        "  --transpose <semitones>               transpose every note\n" +
+        "  --tempo <bpm>                         replace the tempo\n" +
+        "  --checkpoint <file>                   checkpoint file (default <output-dir>/" + DEFAULT_CHECKPOINT_NAME +
+        ")\n" +
+        "  --progress <seconds>                  interval between progress reports (default 5)\n";
+
+    private final File outputDirectory;
+
+    private final Format format;
+
+    private final RTTTLParser parser = new RTTTLParser();
+
+    private final RTTTLEncoder encoder = new RTTTLEncoder();
+
+    private final MidiWriter midiWriter = new MidiWriter();
+
+    /** Generator for {@link Format#TIMER} output, or null for other formats */
+    private final TimerTableGenerator timerTableGenerator;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    private ToneRenderer renderer = new ToneRenderer();
+
+    private int transpose;
+
+    private int beatsPerMinute;
+
+    private File checkpointFile;
+
+    private PrintStream progress;
+
+    private long progressMillis = DEFAULT_PROGRESS_MILLIS;
+
+    private final AtomicLong convertedCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private int skippedCount;
+
+    /**
+     * Creates a converter.
+     *
+     * @param outputDirectory The directory to write outputs to, which is created if needed
+     * @param format The output format
+     * @throws IllegalArgumentException If either argument is null.
+     */
+    public BatchConverter(File outputDirectory, Format format) {
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("outputDirectory cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("format cannot be null.");
+        }
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+        this.checkpointFile = new File(outputDirectory, DEFAULT_CHECKPOINT_NAME);
+        this.timerTableGenerator = format != Format.TIMER ? null :
+            new TimerTableGenerator(16000000, new int[] {1, 8, 64, 256, 1024}, 16);
+    }
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @throws IllegalArgumentException If threadCount is not greater than 0.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be > 0.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /** Sets the renderer used for WAV output */
+    public void setRenderer(ToneRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /** Sets the number of semitones to transpose every note by, which may be negative */
+    public void setTranspose(int semitones) {
+        this.transpose = semitones;
+    }
+
+    /**
+     * Sets the tempo of every output, or 0 to keep the tempo of each input.
+     *
+     * @throws IllegalArgumentException If beatsPerMinute is negative.
+     */
+    public void setBeatsPerMinute(int beatsPerMinute) {
+        if (beatsPerMinute < 0) {
+            throw new IllegalArgumentException("beatsPerMinute must be >= 0.");
+        }
+        this.beatsPerMinute = beatsPerMinute;
+    }
+
+    /** Sets the checkpoint file, which is {@link #DEFAULT_CHECKPOINT_NAME} in the output directory by default */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Sets where progress is reported, or null for no reports, and how often.
+     *
+     * @throws IllegalArgumentException If intervalMillis is not greater than 0.
+     */
+    public void setProgress(PrintStream progress, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be > 0.");
+        }
+        this.progress = progress;
+        this.progressMillis = intervalMillis;
+    }
+
+    /** Returns the number of inputs converted by the last run */
+    public long convertedCount() {
+        return convertedCount.get();
+    }
+
+    /** Returns the number of inputs that could not be converted by the last run */
+    public long failureCount() {
+        return failureCount.get();
+    }
+
+    /** Returns the number of inputs skipped by the last run because the checkpoint lists their outputs */
+    public int skippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Converts the given files, and the files within the given directories. Inputs that cannot be converted are
+     * reported to the progress stream, if any, and counted, but do not stop the run.
+     *
+     * @param inputs The files and directories to convert
+     * @throws IOException If the inputs cannot be listed, two inputs would be written to the same output, the
+     *         checkpoint was written with different settings, or the checkpoint cannot be read or written.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public void convert(List<File> inputs)
+        throws IOException, InterruptedException
+    {
+        convertedCount.set(0);
+        failureCount.set(0);
+        bytesWritten.set(0);
+
+        List<File[]> jobs = new ArrayList<File[]>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                listDirectory(input, outputDirectory, jobs);
+            } else if (input.isFile()) {
+                jobs.add(new File[] {input, outputFile(outputDirectory, input.getName())});
+            } else {
+                throw new IOException("Input " + input + " does not exist.");
+            }
+        }
+
+        checkOutputs(jobs);
+
+        final Checkpoint checkpoint = new Checkpoint(checkpointFile);
+        Set<String> done = checkpoint.read(checkpointHeader());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        int total = 0;
+        try {
+            for (final File[] job : jobs) {
+                final String key = job[1].getAbsolutePath();
+                if (done.contains(key)) {
+                    continue;
+                }
+                total++;
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        try {
+                            convertFile(job[0], job[1]);
+                            checkpoint.append(key);
+                            convertedCount.incrementAndGet();
+                        } catch (Exception e) {
+                            failureCount.incrementAndGet();
+                            report(job[0] + ": " + e.getMessage());
+                        }
+                    }
+                });
+            }
+            skippedCount = jobs.size() - total;
+            executor.shutdown();
+            long start = System.nanoTime();
+            while (!executor.awaitTermination(progressMillis, TimeUnit.MILLISECONDS)) {
+                reportProgress(total, start);
+            }
+            reportProgress(total, start);
+        } finally {
+            executor.shutdownNow();
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Drops jobs listed twice, as when a file is given both directly and within a directory, and fails if two
+     * different inputs would be written to the same output.
+     */
+    private static void checkOutputs(List<File[]> jobs)
+        throws IOException
+    {
+        Map<String, File> inputsByOutput = new HashMap<String, File>();
+        for (Iterator<File[]> i = jobs.iterator(); i.hasNext(); ) {
+            File[] job = i.next();
+            File previous = inputsByOutput.put(job[1].getAbsolutePath(), job[0]);
+            if (previous == null) {
+                continue;
+            }
+            if (!previous.getAbsoluteFile().equals(job[0].getAbsoluteFile())) {
+                throw new IOException("Inputs " + previous + " and " + job[0] + " would both be written to " +
+                    job[1] + ".");
+            }
+            i.remove();
+        }
+    }
+
+    /**
+     * Returns the first line of the checkpoint, which records every setting that changes the outputs.
+     */
+    String checkpointHeader() {
+        StringBuilder header = new StringBuilder("# rtttl-checkpoint");
+        header.append(" format=").append(format.name().toLowerCase(Locale.ROOT));
+        header.append(" transpose=").append(transpose);
+        header.append(" tempo=").append(beatsPerMinute);
+        if (format == Format.WAV) {
+            header.append(" sample-rate=").append(renderer.sampleRate);
+            header.append(" waveform=").append(renderer.waveform.name().toLowerCase(Locale.ROOT));
+            header.append(" amplitude=").append(renderer.amplitude);
+            header.append(" ramp=").append(renderer.rampSeconds);
+            header.append(" tuning=").append(renderer.tuning.referenceHz).append('/')
+                .append(renderer.tuning.temperament.name().toLowerCase(Locale.ROOT)).append('/')
+                .append(renderer.tuning.tonic).append('/').append(renderer.tuning.detuneCents);
+        }
+        return header.toString();
+    }
+
+    private void listDirectory(File directory, File outputDirectory, List<File[]> jobs)
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + directory + ".");
+        }
+        // Sort so that runs process inputs in the same order
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listDirectory(file, new File(outputDirectory, file.getName()), jobs);
+            } else if (isInput(file.getName())) {
+                jobs.add(new File[] {file, outputFile(outputDirectory, file.getName())});
+            }
+        }
+    }
+
+    private static boolean isInput(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (String extension : INPUT_EXTENSIONS) {
+            if (lowerName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File outputFile(File directory, String inputName) {
+        int dot = inputName.lastIndexOf('.');
+        String baseName = dot > 0 ? inputName.substring(0, dot) : inputName;
+        return new File(directory, baseName + format.extension);
+    }
+
+    /**
+     * Parses, transforms and writes one file. The output is written to a temporary file that is renamed into place
+     * once it is complete, so a stopped run never leaves a partial output under the final name. The temporary file
+     * is deleted if the conversion fails.
+     */
+    void convertFile(File input, File output)
+        throws IOException, ParseException
+    {
+        ToneSequence toneSequence = transform(parser.parse(new String(readFully(input), UTF_8).trim()));
+        byte[] encoded = format == Format.WAV ? null : encode(toneSequence);
+        File directory = output.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Cannot create " + directory + ".");
+        }
+        File temporary = new File(directory, output.getName() + ".part");
+        boolean renamed = false;
+        try {
+            if (format == Format.WAV) {
+                AudioSystem.write(new ToneAudioInputStream(renderer, toneSequence), AudioFileFormat.Type.WAVE,
+                    temporary);
+            } else {
+                OutputStream out = new FileOutputStream(temporary);
+                try {
+                    out.write(encoded);
+                } finally {
+                    out.close();
+                }
+            }
+            bytesWritten.addAndGet(temporary.length());
+            if (output.exists() && !output.delete()) {
+                throw new IOException("Cannot replace " + output + ".");
+            }
+            if (!temporary.renameTo(output)) {
+                throw new IOException("Cannot rename " + temporary + " to " + output + ".");
+            }
+            renamed = true;
+        } finally {
+            if (!renamed) {
+                temporary.delete();
+            }
+        }
+    }
+
+    private byte[] encode(ToneSequence toneSequence) {
+        switch (format) {
+            case RTTTL:
+                return (encoder.encode(toneSequence) + "\n").getBytes(UTF_8);
+            case MIDI:
+                return midiWriter.toByteArray(toneSequence);
+            case TIMER:
+                return timerTableGenerator.toByteArray(timerTableGenerator.generate(toneSequence));
+            default:
+                throw new IllegalStateException("Unexpected format " + format);
+        }
+    }
+
+    /**
+     * Applies the transposition and tempo settings to the given sequence.
+     *
+     * @throws IllegalArgumentException If a transposed note is out of range.
+     */
+    ToneSequence transform(ToneSequence toneSequence)
+        throws IllegalArgumentException
+    {
+        if (transpose != 0) {
+            toneSequence = toneSequence.transpose(transpose);
+        }
+        if (beatsPerMinute == 0) {
+            return toneSequence;
+        }
+        return new ToneSequence(toneSequence.name, toneSequence.toneList, toneSequence.defaultOctave,
+            toneSequence.defaultDuration, beatsPerMinute);
+    }
+
+    private void reportProgress(int total, long startNanos) {
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        long finished = convertedCount.get() + failureCount.get();
+        report(String.format(Locale.ROOT, "%d/%d files (%d failed, %d skipped), %.1f files/s, %.1f KB/s",
+            finished, total, failureCount.get(), skippedCount, finished / seconds,
+            bytesWritten.get() / 1024.0 / seconds));
+    }
+
+    private void report(String message) {
+        PrintStream progress = this.progress;
+        if (progress != null) {
+            progress.println(message);
+        }
+    }
+
+    private static byte[] readFully(File file)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Runs the converter with the given command line arguments, and exits with status 0 if every input was
+     * converted, 1 if some failed, or 2 if the arguments are invalid or the run could not complete.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs the converter with the given command line arguments, reporting to the given stream.
+     *
+     * @return The exit status, as described by {@link #main(String[])}
+     */
+    static int run(String[] args, PrintStream err) {
+        Format format = Format.RTTTL;
+        File outputDirectory = null;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int sampleRate = ToneRenderer.DEFAULT_SAMPLE_RATE;
+        Waveform waveform = Waveform.SINE;
+        int transpose = 0;
+        int beatsPerMinute = 0;
+        File checkpointFile = null;
+        long progressMillis = DEFAULT_PROGRESS_MILLIS;
+        List<File> inputs = new ArrayList<File>();
+        BatchConverter converter;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("-")) {
+                    inputs.add(new File(arg));
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg + ".");
+                }
+                String value = args[++i];
+                if (arg.equals("-f") || arg.equals("--format")) {
+                    format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+                } else if (arg.equals("-o") || arg.equals("--output")) {
+                    outputDirectory = new File(value);
+                } else if (arg.equals("-j") || arg.equals("--threads")) {
+                    threadCount = Integer.parseInt(value);
+                } else if (arg.equals("--sample-rate")) {
+                    sampleRate = Integer.parseInt(value);
+                } else if (arg.equals("--waveform")) {
+                    waveform = Waveform.valueOf(value.toUpperCase(Locale.ROOT));
+                } else if (arg.equals("--transpose")) {
+                    transpose = Integer.parseInt(value);
+                } else if (arg.equals("--tempo")) {
+                    beatsPerMinute = Integer.parseInt(value);
+                } else if (arg.equals("--checkpoint")) {
+                    checkpointFile = new File(value);
+                } else if (arg.equals("--progress")) {
+                    progressMillis = Math.round(Double.parseDouble(value) * 1000);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg + ".");
+                }
+            }
+            if (outputDirectory == null || inputs.isEmpty()) {
+                throw new IllegalArgumentException("An output directory and at least one input are required.");
+            }
+            converter = new BatchConverter(outputDirectory, format);
+            converter.setThreadCount(threadCount);
+            converter.setRenderer(new ToneRenderer(sampleRate, waveform));
+            converter.setTranspose(transpose);
+            converter.setBeatsPerMinute(beatsPerMinute);
+            if (checkpointFile != null) {
+                converter.setCheckpointFile(checkpointFile);
+            }
+            converter.setProgress(err, progressMillis);
+        } catch (IllegalArgumentException e) {
+            // Also thrown for invalid numbers and enum names
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+        try {
+            converter.convert(inputs);
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            err.println("Interrupted.");
+            return 2;
+        }
+        return converter.failureCount() == 0 ? 0 : 1;
+    }
+
+    /**
+     * An append-only list of the outputs that have been written, one absolute path per line, after a header line
+     * with the settings they were written with.
+     */
+    private static class Checkpoint
+    {
+        private final File file;
+
+        private Writer writer;
+
+        Checkpoint(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Returns the outputs listed in the checkpoint, ignoring a final line that was not completely written, and
+         * opens the checkpoint for appending. A checkpoint without a complete header is started again.
+         *
+         * @param header The header line for the current settings
+         * @throws IOException If the checkpoint has a different header, or cannot be read or opened.
+         */
+        Set<String> read(String header)
+            throws IOException
+        {
+            Set<String> done = new HashSet<String>();
+            boolean partialLine = false;
+            boolean append = false;
+            if (file.exists()) {
+                String text = new String(readFully(file), UTF_8);
+                int start = text.indexOf('\n') + 1;
+                if (start > 0) {
+                    String previousHeader = text.substring(0, start - 1);
+                    if (!previousHeader.equals(header)) {
+                        throw new IOException("Checkpoint " + file + " was written with different settings (" +
+                            previousHeader + "). Delete it, or use another checkpoint file.");
+                    }
+                    append = true;
+                    int end;
+                    while ((end = text.indexOf('\n', start)) != -1) {
+                        done.add(text.substring(start, end));
+                        start = end + 1;
+                    }
+                    partialLine = start < text.length();
+                }
+            }
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Cannot create " + directory + ".");
+            }
+            writer = new OutputStreamWriter(new FileOutputStream(file, append), UTF_8);
+            if (!append) {
+                writer.write(header);
+                writer.write('\n');
+                writer.flush();
+            } else if (partialLine) {
+                // End the partial line so that it cannot merge with the next entry
+                writer.write('\n');
+                writer.flush();
+            }
+            return done;
+        }
+
+        synchronized void append(String output)
+            throws IOException
+        {
+            writer.write(output);
+            writer.write('\n');
+            writer.flush();
+        }
+
+        synchronized void close()
+            throws IOException
+        {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+
+/**
+ * Allocation regression tests for the parser, encoder and note lookups.
+ * <p>
+ * Each test measures the bytes allocated per call on a fixed input, after warming up, and fails if it exceeds the
+ * budget below. When a change legitimately moves a number, update its budget in the same commit.
+ */
+public class AllocationTest
+{
+    /** Budget for parsing {@link #RTTTL}, in bytes per call. Measured at 21 to 30 KB, depending on JIT state. */
+    private static final long PARSE_BUDGET = 36000;
+
+    /** Budget for encoding {@link #RTTTL}, in bytes per call. Measured at about 1.5 KB. */
+    private static final long ENCODE_BUDGET = 2000;
+
+    /** Budget for a note lookup, in bytes per call. Lookups must not allocate. */
+    private static final long LOOKUP_BUDGET = 8;
+
+    private static final String RTTTL = "Simpsons:d=4,o=5,b=160:c.6,e6,f#6,8a6,g.6,e6,c6,8a,8f#,8f#,8f#,2g,8p,8p," +
+        "8f#,8f#,8f#,8g,a#.,8c6,8c6,8c6,c6";
+
+    private static final int WARMUP_CALLS = 20000;
+
+    private static final int MEASURED_CALLS = 1000;
+
+    private static final int ROUNDS = 5;
+
+    private static com.sun.management.ThreadMXBean threadBean;
+
+    /** Keeps results reachable so the calls are not optimized away */
+    private static Object sink;
+
+    @BeforeClass
+    public static void enableAllocationCounting() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testParse() {
+        final RTTTLParser parser = new RTTTLParser();
+        assertWithinBudget("RTTTLParser.parse", PARSE_BUDGET, new Runnable() {
+            @Override public void run() {
+                try {
+                    sink = parser.parse(RTTTL);
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testEncode()
+        throws ParseException
+    {
+        final RTTTLEncoder encoder = new RTTTLEncoder();
+        final ToneSequence seq = new RTTTLParser().parse(RTTTL);
+        assertWithinBudget("RTTTLEncoder.encode", ENCODE_BUDGET, new Runnable() {
+            @Override public void run() {
+                sink = encoder.encode(seq);
+            }
+        });
+    }
+
+    @Test
+    public void testFindNoteByName() {
+        assertWithinBudget("Note.findNoteByName", LOOKUP_BUDGET, new Runnable() {
+            @Override public void run() {
+                sink = Note.findNoteByName("F#6");
+            }
+        });
+    }
+
+    @Test
+    public void testFindClosestNote() {
+        assertWithinBudget("Note.findClosestNote", LOOKUP_BUDGET, new Runnable() {
+            private float hz = 440.0f;
+
+            @Override public void run() {
+                hz = hz > 4000.0f ? 440.0f : hz * 1.01f;
+                sink = Note.findClosestNote(hz);
+            }
+        });
+    }
+
+    /**
+     * Fails if the smallest number of bytes allocated per call over several rounds exceeds the budget. Taking the
+     * smallest round ignores allocations made by the JIT compiler or other background work on this thread.
+     */
+    private static void assertWithinBudget(String name, long budget, Runnable call) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURED_CALLS; i++) {
+                call.run();
+            }
+            long after = threadBean.getThreadAllocatedBytes(threadId);
+            best = Math.min(best, (after - before) / MEASURED_CALLS);
+        }
+        Assert.assertTrue(name + " allocated " + best + " bytes per call, over budget of " + budget,
+            best <= budget);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for AsyncRTTTLService
+ */
+public class AsyncRTTTLServiceTest
+{
+    private static final String TUNE = "name:d=8,o=5,b=140:c,e,g,p,2c6,16b,a.,32c,32d";
+
+    @Test
+    public void testResultsMatchSynchronousCalls()
+        throws ParseException, InterruptedException, ExecutionException
+    {
+        AsyncRTTTLService service = new AsyncRTTTLService(2, 10);
+        try {
+            ToneSequence seq = new RTTTLParser().parse(TUNE);
+            ToneRenderer renderer = new ToneRenderer(11025, Waveform.SQUARE);
+            Assert.assertEquals(seq, service.parse(TUNE).get());
+            Assert.assertEquals(new RTTTLEncoder().encode(seq), service.encode(seq).get());
+            Assert.assertArrayEquals(renderer.render(seq), service.render(renderer, seq).get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallback()
+        throws InterruptedException
+    {
+        AsyncRTTTLService service = new AsyncRTTTLService(1, 10);
+        try {
+            final AtomicReference<Object> outcome = new AtomicReference<Object>();
+            final CountDownLatch latch = new CountDownLatch(2);
+            AsyncRTTTLService.Callback<ToneSequence> callback = new AsyncRTTTLService.Callback<ToneSequence>() {
+                @Override public void onSuccess(ToneSequence result) {
+                    outcome.set(result);
+                    latch.countDown();
+                }
+
+                @Override public void onFailure(Throwable failure) {
+                    outcome.set(failure);
+                    latch.countDown();
+                }
+            };
+            service.parse(TUNE, callback);
+            service.parse("name:x", callback);
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(outcome.get() instanceof ParseException);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenFull()
+        throws InterruptedException, ExecutionException
+    {
+        AsyncRTTTLService service = new AsyncRTTTLService(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // The callback runs on the only worker, keeping it busy until released
+            service.parse(TUNE, new AsyncRTTTLService.Callback<ToneSequence>() {
+                @Override public void onSuccess(ToneSequence result) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override public void onFailure(Throwable failure) {
+                }
+            });
+            Future<ToneSequence> queued = null;
+            int rejected = 0;
+            for (int i = 0; i < 3; i++) {
+                try {
+                    Future<ToneSequence> future = service.parse(TUNE);
+                    if (queued == null) {
+                        queued = future;
+                    }
+                } catch (RejectedExecutionException e) {
+                    rejected++;
+                }
+            }
+            // At most one of the three fits in the queue, depending on whether the worker has started
+            Assert.assertTrue(rejected >= 2);
+            Assert.assertEquals(rejected, service.rejectedCount());
+            release.countDown();
+            if (queued != null) {
+                Assert.assertNotNull(queued.get());
+            }
+        } finally {
+            release.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelStopsRender()
+        throws ParseException, InterruptedException, ExecutionException, TimeoutException
+    {
+        // About 10 minutes of audio
+        ToneSequence seq = new RTTTLParser().parse("name:d=1,b=25:"
+            + "c,d,e,f,g,a,b,c6,d6,e6,f6,g6,a6,b6,c7,d7,e7,f7,g7,a7,b7,"
+            + "c,d,e,f,g,a,b,c6,d6,e6,f6,g6,a6,b6,c7,d7,e7,f7,g7,a7,b7,"
+            + "c,d,e,f,g,a,b,c6,d6,e6,f6,g6,a6");
+        GatedRenderer renderer = new GatedRenderer();
+        long total = 2L * renderer.sampleCount(seq);
+        RTTTLMetrics metrics = new RTTTLMetrics();
+        RTTTLMetrics.install(metrics);
+        AsyncRTTTLService service = new AsyncRTTTLService(1, 1);
+        try {
+            Future<short[]> render = service.render(renderer, seq);
+            Assert.assertTrue(renderer.started.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(render.cancel(true));
+            try {
+                render.get();
+                Assert.fail("Should have failed with CancellationException");
+            } catch (CancellationException e) {
+                // pass
+            }
+            // The worker is free again once the render has stopped
+            Assert.assertNotNull(service.parse(TUNE).get(10, TimeUnit.SECONDS));
+            // A cancelled render is recorded once, with the samples rendered before it stopped
+            Assert.assertEquals(1, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+            Assert.assertTrue(metrics.byteCount(RTTTLMetrics.Operation.RENDER) > 0);
+            Assert.assertTrue(metrics.byteCount(RTTTLMetrics.Operation.RENDER) < total);
+        } finally {
+            RTTTLMetrics.install(null);
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownCancelsQueuedWork()
+        throws ParseException, InterruptedException
+    {
+        ToneSequence seq = new RTTTLParser().parse(TUNE);
+        GatedRenderer renderer = new GatedRenderer();
+        AsyncRTTTLService service = new AsyncRTTTLService(1, 10);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Future<short[]> render = service.render(renderer, seq);
+        Future<ToneSequence> queued = service.parse(TUNE, new AsyncRTTTLService.Callback<ToneSequence>() {
+            @Override public void onSuccess(ToneSequence result) {
+            }
+
+            @Override public void onFailure(Throwable t) {
+                failure.set(t);
+            }
+        });
+        Assert.assertTrue(renderer.started.await(10, TimeUnit.SECONDS));
+        service.shutdown();
+
+        // Queued work completes as cancelled, and its callback has run
+        Assert.assertTrue(queued.isDone());
+        Assert.assertTrue(queued.isCancelled());
+        Assert.assertTrue(failure.get() instanceof CancellationException);
+        try {
+            render.get(10, TimeUnit.SECONDS);
+            Assert.fail("Should have failed with ExecutionException");
+        } catch (ExecutionException e) {
+            // pass
+        } catch (TimeoutException e) {
+            Assert.fail("Render was not stopped");
+        }
+
+        // Work submitted after shutdown is rejected, but not counted as over capacity
+        try {
+            service.parse(TUNE);
+            Assert.fail("Should have failed with RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // pass
+        }
+        Assert.assertEquals(0, service.rejectedCount());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new AsyncRTTTLService(0, 1);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new AsyncRTTTLService(1, 0);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testCallbackExceptionsAreIsolated()
+        throws InterruptedException, ExecutionException
+    {
+        AsyncRTTTLService service = new AsyncRTTTLService(1, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Keeps the only worker busy until released
+            Future<ToneSequence> first = service.parse(TUNE, new AsyncRTTTLService.Callback<ToneSequence>() {
+                @Override public void onSuccess(ToneSequence result) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("onSuccess");
+                }
+
+                @Override public void onFailure(Throwable failure) {
+                }
+            });
+            final AtomicReference<Thread> failureThread = new AtomicReference<Thread>();
+            Future<ToneSequence> queued = service.parse(TUNE, new AsyncRTTTLService.Callback<ToneSequence>() {
+                @Override public void onSuccess(ToneSequence result) {
+                }
+
+                @Override public void onFailure(Throwable failure) {
+                    failureThread.set(Thread.currentThread());
+                    throw new IllegalStateException("onFailure");
+                }
+            });
+
+            // The callback of work cancelled before it runs is called on the cancelling thread
+            Assert.assertTrue(queued.cancel(false));
+            Assert.assertSame(Thread.currentThread(), failureThread.get());
+            Assert.assertEquals(1, service.callbackFailureCount());
+
+            release.countDown();
+            Assert.assertNotNull(first.get());
+            // The worker survives the exception and runs later work, after which the first callback has returned
+            Assert.assertNotNull(service.parse(TUNE).get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, service.callbackFailureCount());
+        } catch (TimeoutException e) {
+            Assert.fail("Worker did not run later work");
+        } finally {
+            release.countDown();
+            service.shutdown();
+        }
+    }
+
+    /**
+     * Renderer that signals when it starts rendering, then waits until interrupted.
+     */
+    private static class GatedRenderer extends ToneRenderer
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        GatedRenderer() {
+            super(8000, Waveform.SINE);
+        }
+
+        @Override void renderTone(Tone tone, long toneLength, long offset, short[] out, int outOffset, int count,
+            float[] block)
+        {
+            if (started.getCount() > 0) {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.renderTone(tone, toneLength, offset, out, outOffset, count, block);
+        }
+    }
+}
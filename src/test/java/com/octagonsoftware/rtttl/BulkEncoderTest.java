@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Unit tests for BulkEncoder
+ */
+public class BulkEncoderTest
+{
+    @Test
+    public void testEncode()
+        throws Exception
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(5);
+        RTTTLParser parser = new RTTTLParser();
+        RTTTLEncoder encoder = new RTTTLEncoder();
+        List<ToneSequence> sequences = new ArrayList<ToneSequence>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ToneSequence toneSequence = parser.parse(generator.next());
+            sequences.add(toneSequence);
+            expected.append(encoder.encode(toneSequence)).append('\n');
+        }
+        // Multi-byte characters are written as UTF-8
+        ToneSequence named = new ToneSequence("F\u00fcr Elise \u266b", parser.parse("x::e,d#").toneList);
+        sequences.add(named);
+        expected.append(encoder.encode(named)).append('\n');
+
+        BulkEncoder bulkEncoder = new BulkEncoder(encoder);
+        bulkEncoder.setThreadCount(3);
+        bulkEncoder.setChunkSize(7);
+        bulkEncoder.setMaxChunksInFlight(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(sequences.size(), bulkEncoder.encode(sequences.iterator(), Channels.newChannel(out)));
+        Assert.assertEquals(expected.toString(), out.toString("UTF-8"));
+
+        // Reused, with one chunk holding everything
+        bulkEncoder.setChunkSize(5000);
+        out.reset();
+        Assert.assertEquals(sequences.size(), bulkEncoder.encode(sequences.iterator(), Channels.newChannel(out)));
+        Assert.assertEquals(expected.toString(), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testEncodeEmpty()
+        throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(0, new BulkEncoder().encode(Collections.<ToneSequence>emptyList().iterator(),
+            Channels.newChannel(out)));
+        Assert.assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testEncodeFailure()
+        throws IOException, InterruptedException, ParseException
+    {
+        ToneSequence valid = new RTTTLParser().parse("x::c,d,e");
+        ToneSequence invalid = new ToneSequence("bad", Arrays.<Tone>asList((Tone) null));
+        BulkEncoder bulkEncoder = new BulkEncoder();
+        bulkEncoder.setChunkSize(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            bulkEncoder.encode(Arrays.asList(valid, invalid, valid).iterator(), Channels.newChannel(out));
+            Assert.fail("Should have failed with ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        // Chunks before the failure have been written
+        Assert.assertEquals("x::c,d,e\n", out.toString("UTF-8"));
+
+        WritableByteChannel closed = Channels.newChannel(new ByteArrayOutputStream());
+        closed.close();
+        try {
+            bulkEncoder.encode(Arrays.asList(valid, valid).iterator(), closed);
+            Assert.fail("Should have failed with IOException");
+        } catch (IOException e) {
+            // pass
+        } catch (ExecutionException e) {
+            Assert.fail("Should have failed with IOException");
+        }
+    }
+
+    @Test
+    public void testSettings() {
+        BulkEncoder bulkEncoder = new BulkEncoder();
+        try {
+            bulkEncoder.setThreadCount(0);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            bulkEncoder.setChunkSize(0);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            bulkEncoder.setMaxChunksInFlight(0);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
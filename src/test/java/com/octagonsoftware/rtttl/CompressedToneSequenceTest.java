@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for CompressedToneSequence
+ */
+public class CompressedToneSequenceTest
+{
+    @Test
+    public void testRepeatedPhrases()
+        throws ParseException
+    {
+        StringBuilder builder = new StringBuilder("name:d=8,o=5,b=140:");
+        for (int i = 0; i < 16; i++) {
+            builder.append("c,e,g,4c6,p,g,e,4c,");
+        }
+        builder.append("1c");
+        ToneSequence seq = new RTTTLParser().parse(builder.toString());
+        CompressedToneSequence compressed = new CompressedToneSequence(seq);
+
+        Assert.assertEquals(129, compressed.size());
+        Assert.assertEquals(7, compressed.distinctToneCount());
+        Assert.assertTrue(compressed.symbolCount() < 30);
+        assertSameTones(seq.toneList, compressed);
+    }
+
+    @Test
+    public void testRandomSequences()
+        throws ParseException
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(41);
+        generator.setToneCount(1, 300);
+        generator.setOctaveRange(5, 5);
+        RTTTLParser parser = new RTTTLParser();
+        for (int i = 0; i < 100; i++) {
+            ToneSequence seq = parser.parse(generator.next());
+            CompressedToneSequence compressed = new CompressedToneSequence(seq);
+            assertSameTones(seq.toneList, compressed);
+            Assert.assertEquals(seq, compressed.toToneSequence());
+        }
+    }
+
+    @Test
+    public void testRunsOfEqualTones() {
+        List<Tone> toneList = new ArrayList<Tone>();
+        for (int i = 0; i < 37; i++) {
+            toneList.add(new Tone(Note.A4, Duration.SIXTEENTH));
+        }
+        CompressedToneSequence compressed = new CompressedToneSequence(new ToneSequence("run", toneList));
+        assertSameTones(toneList, compressed);
+        Assert.assertTrue(compressed.symbolCount() < 15);
+
+        CompressedToneSequence empty = new CompressedToneSequence(new ToneSequence("empty", new ArrayList<Tone>()));
+        Assert.assertEquals(0, empty.size());
+        Assert.assertFalse(empty.iterator().hasNext());
+    }
+
+    @Test
+    public void testRendering()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("name:d=16,o=6,b=180:a,b,a,b,a,b,c7,p,a,b,a,b,a,b,c7,2p,a,b,a,b");
+        ToneSequence compressed = new CompressedToneSequence(seq).toToneSequence();
+        ToneRenderer renderer = new ToneRenderer(22050, Waveform.SQUARE);
+        Assert.assertArrayEquals(renderer.render(seq), renderer.render(compressed));
+        Assert.assertEquals(new RTTTLEncoder().encode(seq), new RTTTLEncoder().encode(compressed));
+    }
+
+    private static void assertSameTones(List<Tone> expected, CompressedToneSequence compressed) {
+        Assert.assertEquals(expected.size(), compressed.size());
+        Iterator<Tone> iterator = compressed.iterator();
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), compressed.get(i));
+            Assert.assertEquals(expected.get(i), iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(expected, compressed.toneList());
+        try {
+            compressed.get(expected.size());
+            Assert.fail("Should have failed with IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // pass
+        }
+    }
+}
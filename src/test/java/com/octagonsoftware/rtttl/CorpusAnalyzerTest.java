@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for CorpusAnalyzer and CorpusStatistics
+ */
+public class CorpusAnalyzerTest
+{
+    private static final double EPSILON = 1.0E-9;
+
+    private static final String[] SONGS = {
+        "Auld L S:d=4,o=5,b=100:g,c.6,8c6,c6,e6,d.6,8c6,d6,8e6,8d6,c.6,8c6,e6,g6,2a.6,a6,g.6,8e6,e6,c6,d.6,8c6,d6,8e6,8d6,c.6,8a,a,g,2c.6",
+        "Ba Ba:d=4,o=5,b=100:c,c,g,g,8a,8b,8c6,8a,g,p,f,f,e,e,d,d,c",
+        "Beethoven:d=4,o=5,b=160:c,e,c,g,c,c6,8b,8a,8g,8a,8g,8f,8e,8f,8e,8d,c,e,g,e,c6,g",
+        "Minor:d=4,o=5,b=2000:a,c6,e6,a6,e6,c6,2a,b,g#,2a"
+    };
+
+    @Test
+    public void testStatistics()
+        throws ParseException, InterruptedException
+    {
+        CorpusStatistics statistics = new CorpusAnalyzer(1).analyze(parseSongs(1));
+        Assert.assertEquals(4, statistics.sequenceCount());
+        Assert.assertEquals(30 + 17 + 22 + 10, statistics.toneCount());
+        Assert.assertEquals(1, statistics.restCount());
+        Assert.assertEquals(7, statistics.noteCount(Note.C5));
+        Assert.assertEquals(6, statistics.durationCount(Duration.DOTTED_QUARTER));
+        Assert.assertEquals(2, statistics.beatsPerMinuteCount(100));
+        Assert.assertEquals(1, statistics.beatsPerMinuteCount(160));
+        Assert.assertEquals(1, statistics.beatsPerMinuteCount(CorpusStatistics.MAX_BEATS_PER_MINUTE_BUCKET));
+        Assert.assertEquals(Note.C5, statistics.minNote());
+        Assert.assertEquals(Note.A6, statistics.maxNote());
+        Assert.assertEquals((14 + 12 + 12 + 13) / 4.0, statistics.averageRange(), EPSILON);
+        Assert.assertEquals((32 + 15 + 17 + 12) / 4.0, statistics.averageQuarterNoteBeats(), EPSILON);
+        Assert.assertEquals((32 * 0.6 + 15 * 0.6 + 17 * 0.375 + 12 * 0.03) / 4.0, statistics.averageSeconds(),
+            EPSILON);
+    }
+
+    @Test
+    public void testKeys()
+        throws ParseException, InterruptedException
+    {
+        CorpusStatistics statistics = new CorpusAnalyzer(1).analyze(parseSongs(1));
+        Assert.assertEquals("C major", CorpusStatistics.keyName(statistics.corpusKey()));
+        Assert.assertEquals(3, statistics.keyCount(0));
+        Assert.assertEquals(1, statistics.keyCount(12 + 9));
+        Assert.assertEquals("A minor", CorpusStatistics.keyName(12 + 9));
+
+        double total = 0.0;
+        for (double fraction : statistics.pitchClassProfile()) {
+            total += fraction;
+        }
+        Assert.assertEquals(1.0, total, EPSILON);
+    }
+
+    @Test
+    public void testParallelMatchesSequential()
+        throws ParseException, InterruptedException
+    {
+        List<ToneSequence> sequences = parseSongs(CorpusAnalyzer.BATCH_SIZE);
+        CorpusStatistics sequential = new CorpusAnalyzer(1).analyze(sequences);
+        CorpusStatistics parallel = new CorpusAnalyzer(4).analyze(sequences);
+        CorpusStatistics iterated = new CorpusAnalyzer(3).analyze(sequences.iterator());
+        for (CorpusStatistics statistics : new CorpusStatistics[] {parallel, iterated}) {
+            Assert.assertEquals(sequential.sequenceCount(), statistics.sequenceCount());
+            Assert.assertEquals(sequential.toneCount(), statistics.toneCount());
+            for (Note note : Note.values()) {
+                Assert.assertEquals(sequential.noteCount(note), statistics.noteCount(note));
+            }
+            for (int key = 0; key < CorpusStatistics.KEY_COUNT; key++) {
+                Assert.assertEquals(sequential.keyCount(key), statistics.keyCount(key));
+            }
+            Assert.assertEquals(sequential.averageSeconds(), statistics.averageSeconds(), EPSILON);
+        }
+    }
+
+    private static List<ToneSequence> parseSongs(int copies)
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        List<ToneSequence> result = new ArrayList<ToneSequence>();
+        for (int i = 0; i < copies; i++) {
+            for (String song : SONGS) {
+                result.add(parser.parse(song));
+            }
+        }
+        return result;
+    }
+}
@@ -54,6 +54,16 @@ public class DurationTest
         }
     }
 
+    @Test
+    public void testAsUndotted() {
+        for (Duration duration : Duration.values()) {
+            Assert.assertFalse(duration.asUndotted().isDotted());
+            Assert.assertEquals(duration.beatDenominator, duration.asUndotted().beatDenominator);
+        }
+        Assert.assertEquals(Duration.HALF, Duration.DOTTED_HALF.asUndotted());
+        Assert.assertEquals(Duration.HALF, Duration.HALF.asUndotted());
+    }
+
     @Test
     public void testSecondsAtBeatsPerMinute() {
         Assert.assertEquals(3.0f, Duration.DOTTED_HALF.secondsAtBeatsPerMinute(60.0f), EPSILON);
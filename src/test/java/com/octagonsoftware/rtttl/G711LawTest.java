@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for G711Law enumeration
+ */
+public class G711LawTest
+{
+    @Test
+    public void testSilence() {
+        Assert.assertEquals((byte) 0xFF, G711Law.MU_LAW.encode((short) 0));
+        Assert.assertEquals((byte) 0xD5, G711Law.A_LAW.encode((short) 0));
+        Assert.assertEquals(0, G711Law.MU_LAW.decode((byte) 0xFF));
+        Assert.assertEquals(8, G711Law.A_LAW.decode((byte) 0xD5));
+    }
+
+    @Test
+    public void testFullScale() {
+        Assert.assertEquals((byte) 0x80, G711Law.MU_LAW.encode(Short.MAX_VALUE));
+        Assert.assertEquals((byte) 0x00, G711Law.MU_LAW.encode(Short.MIN_VALUE));
+        Assert.assertEquals((byte) 0xAA, G711Law.A_LAW.encode(Short.MAX_VALUE));
+        Assert.assertEquals((byte) 0x2A, G711Law.A_LAW.encode(Short.MIN_VALUE));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (G711Law law : G711Law.values()) {
+            for (int sample = Short.MIN_VALUE; sample <= Short.MAX_VALUE; sample += 7) {
+                short decoded = law.decode(law.encode((short) sample));
+                // Quantization error is at most about 1/16 of the sample magnitude
+                int tolerance = Math.max(16, Math.abs(sample) / 16);
+                Assert.assertTrue(law + " " + sample + " -> " + decoded, Math.abs(decoded - sample) <= tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeEncodeIsIdentity() {
+        for (G711Law law : G711Law.values()) {
+            for (int value = 0; value < 256; value++) {
+                byte encoded = (byte) value;
+                if (law == G711Law.MU_LAW && value == 0x7F) {
+                    // Negative zero encodes as positive zero
+                    continue;
+                }
+                Assert.assertEquals(law + " " + value, encoded, law.encode(law.decode(encoded)));
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeArray() {
+        short[] samples = {0, 1000, -1000, 30000};
+        byte[] out = new byte[5];
+        G711Law.A_LAW.encode(samples, 0, out, 1, samples.length);
+        for (int i = 0; i < samples.length; i++) {
+            Assert.assertEquals(G711Law.A_LAW.encode(samples[i]), out[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+/**
+ * Unit tests for G711Stream
+ */
+public class G711StreamTest
+{
+    @Test
+    public void testFrames()
+        throws ParseException
+    {
+        // Half a second of audio is 4000 samples, which is 25 frames of 160 samples
+        ToneSequence seq = new RTTTLParser().parse("name:b=120:c,8d,8p");
+        G711Stream stream = new G711Stream(seq, G711Law.MU_LAW);
+        Assert.assertEquals(160, stream.frameSize);
+        Assert.assertEquals(50, stream.frameCount());
+
+        short[] expected = new ToneRenderer(G711Stream.SAMPLE_RATE, Waveform.SINE).render(seq);
+        byte[] frame = new byte[stream.frameSize];
+        int frames = 0;
+        while (stream.nextFrame(frame)) {
+            for (int i = 0; i < frame.length; i++) {
+                Assert.assertEquals(G711Law.MU_LAW.encode(expected[frames * frame.length + i]), frame[i]);
+            }
+            frames++;
+        }
+        Assert.assertEquals(50, frames);
+        Assert.assertFalse(stream.nextFrame(frame));
+    }
+
+    @Test
+    public void testPartialFramePaddedWithSilence()
+        throws ParseException
+    {
+        // 32nd note at 63 bpm is 952 samples
+        ToneSequence seq = new RTTTLParser().parse("name::32c");
+        G711Stream stream = new G711Stream(seq, G711Law.A_LAW, 10, Waveform.BANDLIMITED_SQUARE);
+        Assert.assertEquals(80, stream.frameSize);
+        Assert.assertEquals(12, stream.frameCount());
+
+        byte[] frame = new byte[stream.frameSize];
+        for (int i = 0; i < 12; i++) {
+            Assert.assertTrue(stream.nextFrame(frame));
+        }
+        for (int i = 952 - 880; i < frame.length; i++) {
+            Assert.assertEquals(G711Law.A_LAW.encode((short) 0), frame[i]);
+        }
+        Assert.assertFalse(stream.nextFrame(frame));
+    }
+}
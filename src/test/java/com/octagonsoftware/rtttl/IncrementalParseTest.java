@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Random;
+
+/**
+ * Unit tests for IncrementalParse
+ */
+public class IncrementalParseTest
+{
+    private static final String EDIT_CHARACTERS = "cdefgabp#.,,,123468o=b=d= ";
+
+    @Test
+    public void testEditTone()
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        IncrementalParse parse = parser.parseIncremental("name:d=4,o=5,b=120:c,d,e,f,g");
+        IncrementalParse edited = parse.edit(21, 1, "8d#");
+        Assert.assertEquals("name:d=4,o=5,b=120:c,8d#,e,f,g", edited.text());
+        Assert.assertEquals(parser.parse(edited.text()), edited.toneSequence);
+        // Unchanged tones are reused
+        Assert.assertSame(parse.toneSequence.toneList.get(0), edited.toneSequence.toneList.get(0));
+        Assert.assertSame(parse.toneSequence.toneList.get(4), edited.toneSequence.toneList.get(4));
+    }
+
+    @Test
+    public void testEditControlPairRipples()
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        IncrementalParse parse = parser.parseIncremental("name:d=4,o=5,b=120:c,o=6,d,e,o=4,f,g");
+        IncrementalParse edited = parse.edit(23, 1, "7");
+        Assert.assertEquals("name:d=4,o=5,b=120:c,o=7,d,e,o=4,f,g", edited.text());
+        Assert.assertEquals(parser.parse(edited.text()), edited.toneSequence);
+        Assert.assertEquals(Note.D7, edited.toneSequence.toneList.get(1).note);
+        Assert.assertSame(parse.toneSequence.toneList.get(3), edited.toneSequence.toneList.get(3));
+
+        // Removing a separator merges two commands
+        try {
+            edited.edit(20, 1, "");
+            Assert.fail("Should have failed with ParseException");
+        } catch (ParseException e) {
+            // pass
+        }
+        edited = edited.edit(24, 2, "");
+        Assert.assertEquals("name:d=4,o=5,b=120:c,o=7,e,o=4,f,g", edited.text());
+        Assert.assertEquals(parser.parse(edited.text()), edited.toneSequence);
+    }
+
+    @Test
+    public void testEditHeader()
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        IncrementalParse parse = parser.parseIncremental("name:d=4,o=5,b=120:c,d");
+        IncrementalParse edited = parse.edit(7, 1, "8");
+        Assert.assertEquals(parser.parse("name:d=8,o=5,b=120:c,d"), edited.toneSequence);
+        edited = edited.edit(0, 4, "song");
+        Assert.assertEquals("song", edited.toneSequence.name);
+    }
+
+    @Test
+    public void testRandomEditsMatchFullParse()
+        throws ParseException
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(23);
+        generator.setControlPairProbability(0.2);
+        generator.setWhitespaceProbability(0.05);
+        generator.setToneCount(1, 40);
+        RTTTLParser parser = new RTTTLParser(new ParseLimits(2000, 60, 100, 20, 600.0f));
+        Random random = new Random(29);
+        for (int i = 0; i < 200; i++) {
+            IncrementalParse parse = parser.parseIncremental(generator.next());
+            for (int j = 0; j < 50; j++) {
+                String text = parse.text();
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+                StringBuilder inserted = new StringBuilder();
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    inserted.append(EDIT_CHARACTERS.charAt(random.nextInt(EDIT_CHARACTERS.length())));
+                }
+                String newText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+
+                ToneSequence expected;
+                try {
+                    expected = parser.parse(newText);
+                } catch (Exception e) {
+                    try {
+                        parse.edit(offset, removed, inserted.toString());
+                        Assert.fail("Should have failed on " + newText);
+                    } catch (Exception actual) {
+                        Assert.assertEquals(newText, e instanceof ParseException, actual instanceof ParseException);
+                    }
+                    continue;
+                }
+                parse = parse.edit(offset, removed, inserted.toString());
+                Assert.assertEquals(newText, parse.text());
+                Assert.assertEquals(newText, expected, parse.toneSequence);
+            }
+        }
+    }
+
+    @Test
+    public void testDurationLimitAtFinalTempo()
+        throws ParseException
+    {
+        // 8 quarter notes take 2 seconds at b=240, 4 at b=120 and 8 at b=60
+        RTTTLParser parser = new RTTTLParser(new ParseLimits(1000, 100, 100, 10, 6.0f));
+        IncrementalParse parse = parser.parseIncremental("x:b=120:c,c,c,c,c,c,c,c,b=240");
+        // An earlier tempo does not count, as the final tempo applies to every tone
+        IncrementalParse edited = parse.edit(8, 0, "b=60,");
+        Assert.assertEquals(parser.parse(edited.text()), edited.toneSequence);
+        try {
+            parse.edit(parse.length() - 3, 3, "60");
+            Assert.fail("Should have failed with ParseLimitExceededException");
+        } catch (ParseLimitExceededException e) {
+            Assert.assertEquals(ParseLimits.Limit.DURATION, e.getLimit());
+        }
+        edited = parse.edit(parse.length() - 3, 3, "100");
+        Assert.assertEquals(parser.parse(edited.text()), edited.toneSequence);
+    }
+
+    @Test
+    public void testEditCostIndependentOfLength()
+        throws ParseException
+    {
+        // Warm up, then compare the best of several runs for a short and a long tune
+        editNanos(1000);
+        editNanos(100000);
+        long shortNanos = Long.MAX_VALUE;
+        long longNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            shortNanos = Math.min(shortNanos, editNanos(1000));
+            longNanos = Math.min(longNanos, editNanos(100000));
+        }
+        // An edit that copied the tune would be about 100 times slower for the long tune
+        Assert.assertTrue("Short " + shortNanos + " ns, long " + longNanos + " ns", longNanos < 10 * shortNanos);
+    }
+
+    /**
+     * Returns the time taken by a fixed number of edits in the middle of a tune of the given number of tones.
+     */
+    private static long editNanos(int toneCount)
+        throws ParseException
+    {
+        StringBuilder builder = new StringBuilder("x:d=4,o=5,b=240:");
+        for (int i = 0; i < toneCount; i++) {
+            builder.append(i == 0 ? "c" : ",c");
+        }
+        RTTTLParser parser = new RTTTLParser(new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, 100, 10,
+            Float.MAX_VALUE));
+        IncrementalParse parse = parser.parseIncremental(builder.toString());
+        int middle = 16 + toneCount;
+        long start = System.nanoTime();
+        for (int i = 0; i < 2000; i++) {
+            parse = parse.edit(middle, 1, "8d#");
+            parse = parse.edit(middle, 3, "c");
+        }
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(toneCount, parse.toneSequence.toneList.size());
+        Assert.assertEquals(builder.length(), parse.length());
+        return elapsed;
+    }
+
+    @Test
+    public void testInvalidEdit()
+        throws ParseException
+    {
+        IncrementalParse parse = new RTTTLParser().parseIncremental("name::c");
+        try {
+            parse.edit(5, 3, "");
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for IngestPipeline
+ */
+public class IngestPipelineTest
+{
+    @Test
+    public void testIngest()
+        throws InterruptedException, ExecutionException
+    {
+        // Every string appears twice, and some are invalid
+        List<String> records = new ArrayList<String>();
+        int invalid = 0;
+        RTTTLGenerator generator = new RTTTLGenerator(17);
+        generator.setInvalidProbability(0.1);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.setLength(0);
+            if (!generator.generate(builder)) {
+                invalid++;
+            }
+            records.add(builder.toString());
+            records.add(builder.toString());
+        }
+        Set<ToneSequence> expected = new HashSet<ToneSequence>();
+        int longSequences = 0;
+        RTTTLParser parser = new RTTTLParser();
+        for (String record : records) {
+            try {
+                ToneSequence seq = parser.parse(record);
+                if (seq.toneList.size() > 50) {
+                    longSequences++;
+                } else {
+                    expected.add(seq);
+                }
+            } catch (ParseException e) {
+                // counted by generator
+            }
+        }
+
+        final List<ToneSequence> stored = Collections.synchronizedList(new ArrayList<ToneSequence>());
+        IngestPipeline pipeline = new IngestPipeline(records.iterator(),
+            new IngestPipeline.Validator() {
+                @Override public boolean isValid(ToneSequence toneSequence) {
+                    return toneSequence.toneList.size() <= 50;
+                }
+            },
+            new IngestPipeline.Sink() {
+                @Override public void store(List<ToneSequence> batch) {
+                    stored.addAll(batch);
+                }
+            });
+        pipeline.setBatchSize(64);
+        pipeline.setQueueCapacity(2);
+        pipeline.setThreadCount(IngestPipeline.Stage.PARSE, 4);
+        pipeline.setThreadCount(IngestPipeline.Stage.DEDUPE, 2);
+        pipeline.setThreadCount(IngestPipeline.Stage.STORE, 3);
+        pipeline.run();
+
+        Assert.assertEquals(expected.size(), stored.size());
+        Assert.assertEquals(expected, new HashSet<ToneSequence>(stored));
+        Assert.assertEquals(2 * invalid, pipeline.parseFailureCount());
+        Assert.assertEquals(longSequences, pipeline.invalidCount());
+        Assert.assertEquals(records.size(), pipeline.recordsIn(IngestPipeline.Stage.READ));
+        Assert.assertEquals(records.size() - 2 * invalid, pipeline.recordsOut(IngestPipeline.Stage.PARSE));
+        Assert.assertEquals(stored.size(), pipeline.recordsIn(IngestPipeline.Stage.STORE));
+        Assert.assertEquals(stored.size(), pipeline.recordsOut(IngestPipeline.Stage.STORE));
+        Assert.assertTrue(pipeline.throughput(IngestPipeline.Stage.STORE) > 0.0);
+        Assert.assertEquals(pipeline.recordsIn(IngestPipeline.Stage.DEDUPE) - stored.size(),
+            pipeline.duplicateCount());
+        Assert.assertEquals(0, pipeline.queueDepth(IngestPipeline.Stage.PARSE));
+        Assert.assertTrue(pipeline.throughput(IngestPipeline.Stage.PARSE) > 0.0);
+    }
+
+    @Test
+    public void testSinkFailureStopsPipeline()
+        throws InterruptedException
+    {
+        List<String> records = new ArrayList<String>();
+        RTTTLGenerator generator = new RTTTLGenerator(3);
+        for (int i = 0; i < 10000; i++) {
+            records.add(generator.next());
+        }
+        IngestPipeline pipeline = new IngestPipeline(records.iterator(), IngestPipeline.ACCEPT_ALL,
+            new IngestPipeline.Sink() {
+                @Override public void store(List<ToneSequence> batch)
+                    throws Exception
+                {
+                    throw new Exception("disk full");
+                }
+            });
+        pipeline.setQueueCapacity(1);
+        pipeline.setBatchSize(10);
+        try {
+            pipeline.run();
+            Assert.fail("Should have failed with ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("disk full", e.getCause().getMessage());
+        }
+        try {
+            pipeline.run();
+            Assert.fail("Should have failed with IllegalStateException");
+        } catch (IllegalStateException e) {
+            // pass
+        } catch (ExecutionException e) {
+            Assert.fail("Should have failed with IllegalStateException");
+        }
+    }
+
+    @Test
+    public void testStopWhileQueuesFull()
+        throws InterruptedException
+    {
+        // A source that never ends, and a sink that ignores interrupts until released
+        Iterator<String> source = new Iterator<String>() {
+            @Override public boolean hasNext() {
+                return true;
+            }
+
+            @Override public String next() {
+                return "x::c,d,e";
+            }
+
+            @Override public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final IngestPipeline pipeline = new IngestPipeline(source, IngestPipeline.ACCEPT_ALL,
+            new IngestPipeline.Sink() {
+                @Override public void store(List<ToneSequence> batch) {
+                    storing.countDown();
+                    boolean interrupted = false;
+                    while (true) {
+                        try {
+                            release.await();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        pipeline.setQueueCapacity(1);
+        pipeline.setBatchSize(4);
+        pipeline.setThreadCount(IngestPipeline.Stage.PARSE, 2);
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Thread runner = new Thread() {
+            @Override public void run() {
+                try {
+                    pipeline.run();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        };
+        runner.start();
+        Assert.assertTrue(storing.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.queueDepth(IngestPipeline.Stage.PARSE) < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(1, pipeline.queueDepth(IngestPipeline.Stage.PARSE));
+
+        runner.interrupt();
+        runner.join(10000);
+        Assert.assertFalse(runner.isAlive());
+        Assert.assertTrue(thrown.get() instanceof InterruptedException);
+
+        // Once the sink returns, every pipeline thread ends even though the queues were full
+        release.countDown();
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ingestThreadCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, ingestThreadCount());
+    }
+
+    private static int ingestThreadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ingest-") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for LatencyHistogram
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 1000000; value += 7) {
+            int index = LatencyHistogram.indexOf(value);
+            long high = LatencyHistogram.highestEquivalentValue(index);
+            Assert.assertTrue("value " + value, high >= value);
+            Assert.assertTrue("value " + value, high - value <= value / 32);
+        }
+        Assert.assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE, LatencyHistogram.highestEquivalentValue(
+            LatencyHistogram.indexOf(LatencyHistogram.MAX_TRACKABLE_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.valueAtPercentile(50.0));
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(10000, histogram.count());
+        Assert.assertEquals(10000000, histogram.max());
+        Assert.assertEquals(5000500.0, histogram.mean(), 0.001);
+        assertNear(5000000, histogram.valueAtPercentile(50.0));
+        assertNear(9900000, histogram.valueAtPercentile(99.0));
+        Assert.assertEquals(10000000, histogram.valueAtPercentile(100.0));
+        assertNear(1000, histogram.valueAtPercentile(0.0));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(0, histogram.valueAtPercentile(0.0));
+        Assert.assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE, histogram.max());
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.count());
+        Assert.assertEquals(0, histogram.max());
+
+        try {
+            histogram.valueAtPercentile(101.0);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue("expected " + expected + " but got " + actual,
+            actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for MelodySimilarityIndex
+ */
+public class MelodySimilarityIndexTest
+{
+    private static final String[] SONGS = {
+        "Auld L S:d=4,o=5,b=100:g,c.6,8c6,c6,e6,d.6,8c6,d6,8e6,8d6,c.6,8c6,e6,g6,2a.6,a6,g.6,8e6,e6,c6,d.6,8c6,d6,8e6,8d6,c.6,8a,a,g,2c.6",
+        "Ba Ba:d=4,o=5,b=100:c,c,g,g,8a,8b,8c6,8a,g,p,f,f,e,e,d,d,c",
+        "Beethoven:d=4,o=5,b=160:c,e,c,g,c,c6,8b,8a,8g,8a,8g,8f,8e,8f,8e,8d,c,e,g,e,c6,g"
+    };
+
+    @Test
+    public void testFindsTransposedSlowerMelody()
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        List<ToneSequence> sequences = new ArrayList<ToneSequence>();
+        for (String song : SONGS) {
+            sequences.add(parser.parse(song));
+        }
+        MelodySimilarityIndex index = new MelodySimilarityIndex(sequences);
+
+        // Ba Ba, a fourth higher, with every duration doubled and a different tempo
+        ToneSequence query = parser.parse("q:d=2,o=5,b=60:f,f,c6,c6,4d6,4e6,4f6,4d6,c6,p,a#,a#,a,a,g,g,f");
+        List<MelodyMatch> matches = index.search(query, 2);
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals(1, matches.get(0).index);
+        Assert.assertEquals("Ba Ba", matches.get(0).toneSequence.name);
+        Assert.assertEquals(0.0f, matches.get(0).distance, 1.0E-3f);
+        Assert.assertTrue(matches.get(1).distance > matches.get(0).distance);
+    }
+
+    @Test
+    public void testPruningMatchesBruteForce()
+        throws InterruptedException
+    {
+        List<ToneSequence> sequences = randomSequences(new Random(42), 2000);
+        MelodySimilarityIndex index = new MelodySimilarityIndex(sequences, 24, 3);
+        ToneSequence query = randomSequences(new Random(7), 1).get(0);
+
+        // Brute force distances, without pruning
+        int n = index.seriesLength;
+        float[] querySeries = new float[n];
+        MelodySimilarityIndex.toSeries(query, querySeries, 0, n);
+        float[] distances = new float[sequences.size()];
+        float[] candidate = new float[n];
+        for (int i = 0; i < sequences.size(); i++) {
+            MelodySimilarityIndex.toSeries(sequences.get(i), candidate, 0, n);
+            distances[i] = index.dtw(querySeries, candidate, 0, Float.POSITIVE_INFINITY, new float[n], new float[n]);
+        }
+        float[] sorted = distances.clone();
+        Arrays.sort(sorted);
+
+        List<MelodyMatch> sequential = index.search(query, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<MelodyMatch> parallel;
+        try {
+            parallel = index.search(query, 10, executor, 4);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(10, sequential.size());
+        Assert.assertEquals(10, parallel.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(sorted[i], sequential.get(i).distance, 0.0f);
+            Assert.assertEquals(distances[sequential.get(i).index], sequential.get(i).distance, 0.0f);
+            Assert.assertEquals(sequential.get(i).index, parallel.get(i).index);
+        }
+    }
+
+    @Test
+    public void testInvalidParallelism()
+        throws InterruptedException
+    {
+        List<ToneSequence> sequences = randomSequences(new Random(1), 10);
+        MelodySimilarityIndex index = new MelodySimilarityIndex(sequences);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int parallelism : new int[] {0, -1}) {
+                try {
+                    index.search(sequences.get(0), 3, executor, parallelism);
+                    Assert.fail("Should have failed with IllegalArgumentException");
+                } catch (IllegalArgumentException e) {
+                    Assert.assertEquals("parallelism must be > 0.", e.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<ToneSequence> randomSequences(Random random, int count) {
+        Duration[] durations = {Duration.QUARTER, Duration.EIGHTH, Duration.HALF, Duration.DOTTED_QUARTER};
+        List<ToneSequence> result = new ArrayList<ToneSequence>();
+        for (int i = 0; i < count; i++) {
+            List<Tone> toneList = new ArrayList<Tone>();
+            int length = 4 + random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                Note note = random.nextInt(10) == 0 ? null : Note.findNoteFromSemitone(60 + random.nextInt(24));
+                toneList.add(new Tone(note, durations[random.nextInt(durations.length)]));
+            }
+            result.add(new ToneSequence("song" + i, toneList));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for MidiReader
+ */
+public class MidiReaderTest
+{
+    @Test
+    public void testRoundTrip()
+        throws ParseException, IOException
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(11);
+        generator.setRestProbability(0.0);
+        RTTTLParser parser = new RTTTLParser();
+        MidiWriter writer = new MidiWriter();
+        MidiReader reader = new MidiReader();
+        for (int i = 0; i < 200; i++) {
+            ToneSequence expected = parser.parse(generator.next());
+            ToneSequence actual = reader.read(new ByteArrayInputStream(writer.toByteArray(expected)));
+            Assert.assertEquals(expected.toneList, actual.toneList);
+            Assert.assertEquals(expected.beatsPerMinute, actual.beatsPerMinute);
+            Assert.assertEquals(expected.name, actual.name);
+        }
+    }
+
+    @Test
+    public void testRoundTripMostlyDotted()
+        throws ParseException, IOException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        ToneSequence seq = parser.parse("x:d=4,o=5,b=120:c.,d.,e.,f,g.,8a.");
+        ToneSequence actual = new MidiReader().read(new ByteArrayInputStream(new MidiWriter().toByteArray(seq)));
+        Assert.assertEquals(Duration.QUARTER, actual.defaultDuration);
+        Assert.assertEquals(actual, parser.parse(new RTTTLEncoder().encode(actual)));
+        Assert.assertEquals(seq.toneList, actual.toneList);
+    }
+
+    @Test
+    public void testRests()
+        throws ParseException, IOException
+    {
+        ToneSequence seq = new RTTTLParser().parse("x:d=8,o=5,b=100:p,c,p,p,d,16p,2p,e,1p");
+        ToneSequence actual = new MidiReader().read(new ByteArrayInputStream(new MidiWriter().toByteArray(seq)));
+        // Adjacent rests are merged, and the trailing rest has no note to end it
+        Assert.assertEquals(new RTTTLParser().parse("x:d=8,o=5,b=100:p,c,4p,d,2p,16p,e"), actual);
+    }
+
+    @Test
+    public void testHighestNoteAndChannels()
+        throws InvalidMidiDataException, IOException, ParseException
+    {
+        Sequence sequence = new Sequence(Sequence.PPQ, 96);
+        Track melody = sequence.createTrack();
+        melody.add(new MidiEvent(new MetaMessage(0x51, new byte[] {0x09, 0x27, (byte) 0xC0}, 3), 0));
+        // C major chord, then a higher note starting during it, then a lower note under the higher note
+        addNote(melody, 0, 60, 0, 96);
+        addNote(melody, 0, 64, 0, 96);
+        addNote(melody, 0, 67, 0, 96);
+        addNote(melody, 0, 79, 48, 96);
+        addNote(melody, 0, 55, 96, 48);
+        Track other = sequence.createTrack();
+        // Bass on channel 1, drums on channel 9
+        addNote(other, 1, 36, 0, 192);
+        addNote(other, 9, 100, 0, 192);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiSystem.write(sequence, 1, out);
+        byte[] bytes = out.toByteArray();
+
+        // 120 bpm from 600000 us per quarter note is 100 bpm
+        Assert.assertEquals(new RTTTLParser().parse(":d=4,o=4,b=100:8g,g5"),
+            new MidiReader().read(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals(new RTTTLParser().parse(":d=2,o=2,b=100:c"),
+            new MidiReader(1).read(new ByteArrayInputStream(bytes)));
+        Assert.assertEquals(new RTTTLParser().parse(":d=2,o=7,b=100:e"),
+            new MidiReader(9).read(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testInvalidFiles()
+        throws ParseException, IOException
+    {
+        try {
+            new MidiReader().read(new ByteArrayInputStream("name:d=4:c".getBytes("US-ASCII")));
+            Assert.fail("Should have failed with ParseException");
+        } catch (ParseException e) {
+            // pass
+        }
+
+        byte[] bytes = new MidiWriter().toByteArray(new RTTTLParser().parse("name:d=4:c,d,e"));
+        try {
+            new MidiReader().read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 5)));
+            Assert.fail("Should have failed with IOException");
+        } catch (IOException e) {
+            // pass
+        }
+
+        // SMPTE division
+        bytes[12] = (byte) 0xE7;
+        try {
+            new MidiReader().read(new ByteArrayInputStream(bytes));
+            Assert.fail("Should have failed with ParseException");
+        } catch (ParseException e) {
+            Assert.assertEquals(12, e.getErrorOffset());
+        }
+
+        try {
+            new MidiReader(16);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testFindClosestDuration() {
+        Assert.assertEquals(Duration.QUARTER, Duration.findClosestDuration(1.1f));
+        Assert.assertEquals(Duration.DOTTED_QUARTER, Duration.findClosestDuration(1.4f));
+        Assert.assertEquals(Duration.DOTTED_WHOLE, Duration.findClosestDuration(100.0f));
+        Assert.assertEquals(Duration.THIRTY_SECOND, Duration.findClosestDuration(0.0f));
+    }
+
+    private static void addNote(Track track, int channel, int key, long start, long length)
+        throws InvalidMidiDataException
+    {
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, key, 100), start));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, channel, key, 0), start + length));
+    }
+}
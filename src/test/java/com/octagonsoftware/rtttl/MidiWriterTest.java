@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for MidiWriter
+ */
+public class MidiWriterTest
+{
+    @Test
+    public void testBytes()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("ab:d=4,o=5,b=120:c,8p,8d#.");
+        byte[] expected = {
+            'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 0, 0, 1, 0, 96,
+            'M', 'T', 'r', 'k', 0, 0, 0, 33,
+            // Track name and tempo of 500000 us per quarter note
+            0, (byte) 0xFF, 0x03, 2, 'a', 'b',
+            0, (byte) 0xFF, 0x51, 3, 0x07, (byte) 0xA1, 0x20,
+            // C5 for 96 ticks
+            0, (byte) 0x90, 72, 100, 96, (byte) 0x80, 72, 0,
+            // 48 tick rest, then D#5 for 72 ticks
+            48, (byte) 0x90, 75, 100, 72, (byte) 0x80, 75, 0,
+            0, (byte) 0xFF, 0x2F, 0
+        };
+        Assert.assertArrayEquals(expected, new MidiWriter(96, 0, 100).toByteArray(seq));
+    }
+
+    @Test
+    public void testReadableByJavaSound()
+        throws ParseException, IOException, InvalidMidiDataException
+    {
+        ToneSequence seq = new RTTTLParser().parse(
+            "Simpsons:d=4,o=5,b=160:c.6,e6,f#6,8a6,g.6,e6,c6,8a,8f#,8f#,8f#,2g,8p,8p,8f#,8f#,8f#,8g,a#.,8c6,8c6,8c6,c6,1p");
+        MidiWriter writer = new MidiWriter(480, 3, 90);
+        byte[] bytes = writer.toByteArray(seq);
+
+        Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(bytes));
+        Assert.assertEquals(Sequence.PPQ, sequence.getDivisionType(), 0.0f);
+        Assert.assertEquals(480, sequence.getResolution());
+        Assert.assertEquals(1, sequence.getTracks().length);
+
+        Track track = sequence.getTracks()[0];
+        List<Integer> notes = new ArrayList<Integer>();
+        long ticks = 0;
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage) {
+                ShortMessage message = (ShortMessage) event.getMessage();
+                Assert.assertEquals(3, message.getChannel());
+                if (message.getCommand() == ShortMessage.NOTE_ON) {
+                    notes.add(message.getData1());
+                    Assert.assertEquals(90, message.getData2());
+                }
+            } else if (event.getMessage() instanceof MetaMessage) {
+                MetaMessage message = (MetaMessage) event.getMessage();
+                if (message.getType() == 0x51) {
+                    byte[] data = message.getData();
+                    Assert.assertEquals(60000000 / 160,
+                        ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF));
+                }
+            }
+            ticks = event.getTick();
+        }
+
+        List<Integer> expectedNotes = new ArrayList<Integer>();
+        long expectedTicks = 0;
+        for (Tone tone : seq.toneList) {
+            if (!tone.isRest()) {
+                expectedNotes.add(tone.note.semitone);
+            }
+            expectedTicks += Math.round(tone.duration.quarterNoteBeats * 480);
+        }
+        Assert.assertEquals(expectedNotes, notes);
+        // The end of track event falls after the trailing rest
+        Assert.assertEquals(expectedTicks, ticks);
+    }
+
+    @Test
+    public void testChannelOutputMatchesStream()
+        throws ParseException, IOException
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(5);
+        generator.setToneCount(2000, 2000);
+        ToneSequence seq = new RTTTLParser().parse(generator.next());
+        MidiWriter writer = new MidiWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(seq, Channels.newChannel(out));
+        Assert.assertArrayEquals(writer.toByteArray(seq), out.toByteArray());
+    }
+
+    @Test
+    public void testVarIntLength() {
+        Assert.assertEquals(1, MidiWriter.varIntLength(0));
+        Assert.assertEquals(1, MidiWriter.varIntLength(0x7F));
+        Assert.assertEquals(2, MidiWriter.varIntLength(0x80));
+        Assert.assertEquals(2, MidiWriter.varIntLength(0x3FFF));
+        Assert.assertEquals(3, MidiWriter.varIntLength(0x4000));
+        Assert.assertEquals(4, MidiWriter.varIntLength(0x0FFFFFFF));
+    }
+
+    @Test
+    public void testInvalidArguments()
+        throws ParseException
+    {
+        try {
+            new MidiWriter(100, 0, 100);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new MidiWriter(480, 16, 100);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new MidiWriter().toByteArray(new RTTTLParser().parse("name:b=3:c"));
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        // Rests of 1023 ticks per unit that add up to more than 2^28 - 1 ticks before the note
+        StringBuilder rests = new StringBuilder("name:d=1:");
+        for (int i = 0; i < 1400; i++) {
+            rests.append("p.,");
+        }
+        ToneSequence longRest = new RTTTLParser().parse(rests + "c");
+        try {
+            new MidiWriter(32736, 0, 100).toByteArray(longRest);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        new MidiWriter().toByteArray(longRest);
+    }
+}
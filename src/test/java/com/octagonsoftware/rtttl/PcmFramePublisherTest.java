@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for PcmFramePublisher
+ */
+public class PcmFramePublisherTest
+{
+    private static final Executor DIRECT = new Executor() {
+        @Override public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** Records signals, and requests a frame at a time up to a limit */
+    private static class RecordingSubscriber
+        implements PcmFramePublisher.Subscriber
+    {
+        final List<short[]> frames = Collections.synchronizedList(new ArrayList<short[]>());
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final int limit;
+
+        volatile PcmFramePublisher.Subscription subscription;
+
+        volatile boolean completed;
+
+        volatile Throwable failure;
+
+        RecordingSubscriber(int limit) {
+            this.limit = limit;
+        }
+
+        @Override public void onSubscribe(PcmFramePublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override public void onNext(short[] frame) {
+            frames.add(frame);
+            if (frames.size() < limit) {
+                subscription.request(1);
+            }
+        }
+
+        @Override public void onError(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        @Override public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testFramesMatchRender()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        ToneSequence seq = new RTTTLParser().parse("name:d=8,o=5,b=140:c,e,g,p,2c6,16b,a.,32c,32d");
+        short[] expected = renderer.render(seq);
+        PcmFramePublisher publisher = new PcmFramePublisher(renderer, seq, 160, DIRECT);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Integer.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        Assert.assertEquals(0, subscriber.frames.size());
+
+        subscriber.subscription.request(1);
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertNull(subscriber.failure);
+        Assert.assertEquals(publisher.frameCount(), subscriber.frames.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], subscriber.frames.get(i / 160)[i % 160]);
+        }
+        short[] last = subscriber.frames.get(subscriber.frames.size() - 1);
+        for (int i = expected.length % 160; i > 0 && i < 160; i++) {
+            Assert.assertEquals(0, last[i]);
+        }
+    }
+
+    @Test
+    public void testOnlyRequestedFramesAreSent()
+        throws ParseException
+    {
+        PcmFramePublisher publisher = new PcmFramePublisher(new ToneRenderer(8000, Waveform.SINE),
+            new RTTTLParser().parse("name:b=60:c,d,e"), 800, DIRECT);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(3);
+        Assert.assertEquals(3, subscriber.frames.size());
+        subscriber.subscription.request(4);
+        Assert.assertEquals(7, subscriber.frames.size());
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        Assert.assertEquals(7, subscriber.frames.size());
+        Assert.assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void testInvalidRequest()
+        throws ParseException
+    {
+        PcmFramePublisher publisher = new PcmFramePublisher(new ToneRenderer(8000, Waveform.SINE),
+            new RTTTLParser().parse("name:b=60:c"), 800, DIRECT);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assert.assertTrue(subscriber.failure instanceof IllegalArgumentException);
+        subscriber.subscription.request(1);
+        Assert.assertEquals(0, subscriber.frames.size());
+    }
+
+    @Test
+    public void testManySubscribersOnPool()
+        throws ParseException, InterruptedException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE);
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,b=200:c,e,g,c6,g,e,c");
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PcmFramePublisher publisher = new PcmFramePublisher(renderer, seq, 100, executor);
+            List<RecordingSubscriber> subscribers = new ArrayList<RecordingSubscriber>();
+            for (int i = 0; i < 200; i++) {
+                RecordingSubscriber subscriber = new RecordingSubscriber(Integer.MAX_VALUE);
+                publisher.subscribe(subscriber);
+                subscriber.subscription.request(i % 2 == 0 ? 1 : Long.MAX_VALUE);
+                subscribers.add(subscriber);
+            }
+            short[] expected = renderer.render(seq);
+            for (RecordingSubscriber subscriber : subscribers) {
+                Assert.assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+                Assert.assertTrue(subscriber.completed);
+                Assert.assertEquals(publisher.frameCount(), subscriber.frames.size());
+                for (int i = 0; i < expected.length; i++) {
+                    Assert.assertEquals(expected[i], subscriber.frames.get(i / 100)[i % 100]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidArguments()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("name::c");
+        try {
+            new PcmFramePublisher(new ToneRenderer(8000, Waveform.SINE), seq, 0, DIRECT);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new PcmFramePublisher(new ToneRenderer(8000, Waveform.SINE), seq, 10, null);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for PcmRingBuffer
+ */
+public class PcmRingBufferTest
+{
+    @Test
+    public void testWrapAround() {
+        PcmRingBuffer buffer = new PcmRingBuffer(6);
+        Assert.assertEquals(8, buffer.capacity());
+        short[] samples = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        Assert.assertEquals(8, buffer.write(samples, 0, 10));
+        Assert.assertEquals(0, buffer.write(samples, 8, 2));
+
+        short[] out = new short[10];
+        Assert.assertEquals(5, buffer.read(out, 0, 5));
+        Assert.assertEquals(3, buffer.size());
+        Assert.assertEquals(2, buffer.write(samples, 8, 2));
+        Assert.assertEquals(5, buffer.read(out, 5, 10));
+        Assert.assertArrayEquals(samples, out);
+        Assert.assertEquals(0, buffer.read(out, 0, 1));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testConcurrentTransfer()
+        throws InterruptedException
+    {
+        final PcmRingBuffer buffer = new PcmRingBuffer(64);
+        final int total = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override public void run() {
+                short[] chunk = new short[37];
+                int next = 0;
+                while (next < total) {
+                    int count = Math.min(chunk.length, total - next);
+                    for (int i = 0; i < count; i++) {
+                        chunk[i] = (short) (next + i);
+                    }
+                    int offset = 0;
+                    while (offset < count) {
+                        int n = buffer.write(chunk, offset, count - offset);
+                        if (n == 0) {
+                            Thread.yield();
+                        }
+                        offset += n;
+                    }
+                    next += count;
+                }
+            }
+        });
+        producer.start();
+
+        short[] out = new short[23];
+        int expected = 0;
+        while (expected < total) {
+            int n = buffer.read(out, 0, out.length);
+            if (n == 0) {
+                Thread.yield();
+            }
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals((short) expected, out[i]);
+                expected++;
+            }
+        }
+        producer.join();
+        Assert.assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Unit tests for PlaylistPlayer
+ */
+public class PlaylistPlayerTest
+{
+    private static final String FIRST = "one:d=8,o=5,b=160:c,e,g,c6";
+
+    private static final String SECOND = "two:d=4,o=6,b=120:a,p,b";
+
+    @Test
+    public void testGap()
+        throws ParseException, InterruptedException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        PlaylistPlayer player = new PlaylistPlayer(renderer, Arrays.asList(FIRST, "bad", SECOND).iterator(), 1000);
+        player.setGapMillis(100);
+        player.start();
+        short[] actual = playAll(player);
+
+        short[] first = renderer.render(new RTTTLParser().parse(FIRST));
+        short[] second = renderer.render(new RTTTLParser().parse(SECOND));
+        short[] expected = new short[first.length + 800 + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length + 800, second.length);
+        Assert.assertArrayEquals(expected, actual);
+        Assert.assertEquals(2, player.tuneCount());
+        Assert.assertEquals(1, player.parseFailureCount());
+        Assert.assertEquals(0, player.fillLevel());
+        player.stop();
+    }
+
+    @Test
+    public void testCrossfade()
+        throws ParseException, InterruptedException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE);
+        PlaylistPlayer player = new PlaylistPlayer(renderer, Arrays.asList(FIRST, SECOND).iterator(), 4096);
+        player.setCrossfadeMillis(50);
+        player.start();
+        short[] actual = playAll(player);
+
+        short[] first = renderer.render(new RTTTLParser().parse(FIRST));
+        short[] second = renderer.render(new RTTTLParser().parse(SECOND));
+        Assert.assertEquals(first.length + second.length - 400, actual.length);
+        // Untouched away from the crossfade, and a blend within it
+        for (int i = 0; i < first.length - 400; i++) {
+            Assert.assertEquals(first[i], actual[i]);
+        }
+        for (int i = 400; i < second.length; i++) {
+            Assert.assertEquals(second[i], actual[first.length - 400 + i]);
+        }
+        int mid = first.length - 200;
+        float blended = first[mid] * (1.0f - 200.5f / 400) + second[200] * (200.5f / 400);
+        Assert.assertEquals(blended, actual[mid], 2.0f);
+    }
+
+    @Test
+    public void testUnderrun() {
+        PlaylistPlayer player = new PlaylistPlayer(new ToneRenderer(), Arrays.asList(FIRST).iterator(), 1000);
+        short[] out = {1, 2, 3};
+        // Not started, so nothing has been rendered
+        Assert.assertEquals(0, player.read(out, 0, 3));
+        Assert.assertArrayEquals(new short[3], out);
+        Assert.assertEquals(1, player.underrunCount());
+        Assert.assertEquals(3, player.underrunSamples());
+        Assert.assertEquals(1024, player.bufferCapacity());
+    }
+
+    @Test
+    public void testProducerFailure()
+        throws ParseException, InterruptedException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        final Iterator<String> tunes = Arrays.asList(FIRST).iterator();
+        Iterator<String> playlist = new Iterator<String>() {
+            @Override public boolean hasNext() {
+                return true;
+            }
+
+            @Override public String next() {
+                if (tunes.hasNext()) {
+                    return tunes.next();
+                }
+                throw new NoSuchElementException("gone");
+            }
+
+            @Override public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        PlaylistPlayer player = new PlaylistPlayer(renderer, playlist, 1000);
+        player.start();
+        short[] first = renderer.render(new RTTTLParser().parse(FIRST));
+        short[] out = new short[300];
+        int total = 0;
+        try {
+            int n;
+            while ((n = player.read(out, 0, out.length)) != -1) {
+                total += n;
+                Thread.yield();
+            }
+            Assert.fail("Expected the producer's exception");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchElementException);
+        }
+        // The tune before the failure is still played
+        Assert.assertEquals(first.length, total);
+        Assert.assertEquals(1, player.tuneCount());
+        player.stop();
+    }
+
+    /**
+     * Reads the whole playlist, ignoring any silence from underruns.
+     */
+    private static short[] playAll(PlaylistPlayer player) {
+        List<short[]> chunks = new ArrayList<short[]>();
+        int total = 0;
+        short[] out = new short[300];
+        int n;
+        while ((n = player.read(out, 0, out.length)) != -1) {
+            chunks.add(Arrays.copyOf(out, n));
+            total += n;
+            Thread.yield();
+        }
+        short[] result = new short[total];
+        int offset = 0;
+        for (short[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return result;
+    }
+}
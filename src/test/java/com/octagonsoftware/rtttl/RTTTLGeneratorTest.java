@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.ParseException;
+
+/**
+ * Unit tests for RTTTLGenerator
+ */
+public class RTTTLGeneratorTest
+{
+    @Test
+    public void testReproducible() {
+        RTTTLGenerator a = new RTTTLGenerator(1234);
+        RTTTLGenerator b = new RTTTLGenerator(1234);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(a.next(), b.next());
+        }
+        Assert.assertFalse(new RTTTLGenerator(1).next().equals(new RTTTLGenerator(2).next()));
+    }
+
+    @Test
+    public void testValidAndInvalid() {
+        RTTTLGenerator generator = new RTTTLGenerator(99);
+        generator.setToneCount(1, 40);
+        generator.setNameLength(0, 20);
+        generator.setOctaveRange(0, 8);
+        generator.setControlPairProbability(0.2);
+        generator.setDottedProbability(0.3);
+        generator.setWhitespaceProbability(0.5);
+        generator.setInvalidProbability(0.3);
+
+        RTTTLParser parser = new RTTTLParser();
+        int invalidCount = 0;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.setLength(0);
+            boolean valid = generator.generate(builder);
+            String str = builder.toString();
+            try {
+                ToneSequence seq = parser.parse(str);
+                Assert.assertTrue("Should have been rejected: " + str, valid);
+                Assert.assertTrue(seq.toneList.size() >= 1 && seq.toneList.size() <= 40);
+            } catch (ParseException e) {
+                Assert.assertFalse("Should have been accepted: " + str, valid);
+                invalidCount++;
+            }
+        }
+        Assert.assertTrue(invalidCount > 400 && invalidCount < 800);
+    }
+
+    @Test
+    public void testWrite()
+        throws IOException
+    {
+        RTTTLGenerator generator = new RTTTLGenerator(5);
+        StringWriter out = new StringWriter();
+        generator.write(out, 25);
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(25, lines.length);
+        Assert.assertEquals(new RTTTLGenerator(5).next(), lines[0]);
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        RTTTLGenerator generator = new RTTTLGenerator(5);
+        try {
+            generator.setOctaveRange(3, 9);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            generator.setInvalidProbability(1.5);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
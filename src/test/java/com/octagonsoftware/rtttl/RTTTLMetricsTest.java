@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+/**
+ * Unit tests for RTTTLMetrics
+ */
+public class RTTTLMetricsTest
+{
+    @After
+    public void uninstall() {
+        RTTTLMetrics.install(null);
+    }
+
+    @Test
+    public void testParseAndEncode()
+        throws ParseException
+    {
+        RTTTLMetrics metrics = new RTTTLMetrics();
+        RTTTLMetrics.install(metrics);
+        Assert.assertSame(metrics, RTTTLMetrics.installed());
+
+        String rtttl = "name:d=8,o=6,b=140:c,e,g,2p";
+        ToneSequence seq = new RTTTLParser().parse(rtttl);
+        String encoded = new RTTTLEncoder().encode(seq);
+        try {
+            new RTTTLParser().parse("name:d=8:c,e:g");
+            Assert.fail("Should have failed with ParseException");
+        } catch (ParseException e) {
+            // pass
+        }
+        try {
+            new RTTTLParser(new ParseLimits(10, 10, 10, 10, 10.0f)).parse(rtttl);
+            Assert.fail("Should have failed with ParseLimitExceededException");
+        } catch (ParseLimitExceededException e) {
+            // pass
+        }
+
+        Assert.assertEquals(3, metrics.callCount(RTTTLMetrics.Operation.PARSE));
+        Assert.assertEquals(3, metrics.latency(RTTTLMetrics.Operation.PARSE).count());
+        Assert.assertEquals(4, metrics.toneCount(RTTTLMetrics.Operation.PARSE));
+        Assert.assertEquals(rtttl.length(), metrics.byteCount(RTTTLMetrics.Operation.PARSE));
+        Assert.assertEquals(1,
+            metrics.failureCount(RTTTLMetrics.Operation.PARSE, RTTTLMetrics.FailureKind.SYNTAX));
+        Assert.assertEquals(1,
+            metrics.failureCount(RTTTLMetrics.Operation.PARSE, RTTTLMetrics.FailureKind.LIMIT_EXCEEDED));
+
+        Assert.assertEquals(1, metrics.callCount(RTTTLMetrics.Operation.ENCODE));
+        Assert.assertEquals(4, metrics.toneCount(RTTTLMetrics.Operation.ENCODE));
+        Assert.assertEquals(encoded.length(), metrics.byteCount(RTTTLMetrics.Operation.ENCODE));
+        Assert.assertEquals(0, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+    }
+
+    @Test
+    public void testRender()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,b=60:c,d,e,f");
+        ToneRenderer renderer = new ToneRenderer(1000, Waveform.SINE);
+        RTTTLMetrics metrics = new RTTTLMetrics();
+        RTTTLMetrics.install(metrics);
+
+        renderer.render(seq);
+        Assert.assertEquals(1, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(4, metrics.toneCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(8000, metrics.byteCount(RTTTLMetrics.Operation.RENDER));
+
+        // Samples 900 to 2099 touch the first three tones
+        renderer.render(seq, 900, 1200);
+        Assert.assertEquals(2, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(7, metrics.toneCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(10400, metrics.byteCount(RTTTLMetrics.Operation.RENDER));
+
+        try {
+            renderer.render(new ToneTimeline(seq, 2000), 0, new short[10], 0, 10);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        Assert.assertEquals(1,
+            metrics.failureCount(RTTTLMetrics.Operation.RENDER, RTTTLMetrics.FailureKind.INVALID_ARGUMENT));
+    }
+
+    @Test
+    public void testStream()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,b=60:c,d,e,f");
+        ToneRenderer renderer = new ToneRenderer(1000, Waveform.SINE);
+        RTTTLMetrics metrics = new RTTTLMetrics();
+        RTTTLMetrics.install(metrics);
+
+        // Read a block at a time, the whole tune is one render
+        ToneStream stream = renderer.open(seq);
+        short[] block = new short[ToneRenderer.BLOCK_SIZE];
+        while (stream.read(block, 0, block.length) != -1) {
+            Assert.assertEquals(stream.remaining() == 0 ? 1 : 0, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        }
+        stream.close();
+        Assert.assertEquals(1, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(4, metrics.toneCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(8000, metrics.byteCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(1, metrics.latency(RTTTLMetrics.Operation.RENDER).count());
+
+        // A stream abandoned early is recorded when closed
+        stream = renderer.open(seq);
+        stream.read(block, 0, 200);
+        stream.read(block, 0, 100);
+        Assert.assertEquals(1, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        stream.close();
+        stream.close();
+        Assert.assertEquals(2, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(5, metrics.toneCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(8600, metrics.byteCount(RTTTLMetrics.Operation.RENDER));
+    }
+
+    @Test
+    public void testDisabled()
+        throws ParseException
+    {
+        RTTTLMetrics metrics = new RTTTLMetrics();
+        RTTTLMetrics.install(metrics);
+        RTTTLMetrics.install(null);
+        short[] samples = new ToneRenderer(1000, Waveform.SINE).render(new RTTTLParser().parse("name::c"));
+        Assert.assertTrue(samples.length > 0);
+        Assert.assertEquals(0, metrics.callCount(RTTTLMetrics.Operation.PARSE));
+        Assert.assertEquals(0, metrics.callCount(RTTTLMetrics.Operation.RENDER));
+        Assert.assertEquals(RTTTLMetrics.FailureKind.OTHER, RTTTLMetrics.kindOf(new RuntimeException()));
+    }
+}
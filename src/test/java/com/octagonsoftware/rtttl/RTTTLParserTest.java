@@ -94,6 +94,20 @@ public class RTTTLParserTest {
         } catch (ParseException e) {
             // pass
         }
+
+        try {
+            parser.parse("a:o=9:c");
+            Assert.fail("Should have thrown an exception about octave out of range");
+        } catch (ParseException e) {
+            // pass
+        }
+
+        try {
+            parser.parse("a:b=0:c");
+            Assert.fail("Should have thrown an exception about tempo out of range");
+        } catch (ParseException e) {
+            // pass
+        }
     }
 
     @Test
@@ -184,4 +198,75 @@ public class RTTTLParserTest {
         Assert.assertEquals(8, toneSequence.defaultOctave);
         Assert.assertEquals(30, toneSequence.beatsPerMinute);
     }
+
+    @Test
+    public void testTrailingSeparatorsIgnored()
+        throws ParseException
+    {
+        RTTTLParser parser = new RTTTLParser();
+        Assert.assertEquals(2, parser.parse("name::c,d,,").toneList.size());
+        Assert.assertEquals(0, parser.parse("name::,,").toneList.size());
+        try {
+            parser.parse("name::c,,d");
+            Assert.fail("Should have complained about empty tone command.");
+        } catch (ParseException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testLimits()
+        throws ParseException
+    {
+        String song = "Ba Ba:d=4,o=5,b=100:c,c,g,g,8a,8b,o=6,8c,8a,g,p,f,f,e,e,d,d,c";
+        ParseLimits limits = new ParseLimits(song.length(), 17, 5, 1, 9.0f);
+        Assert.assertEquals(17, new RTTTLParser(limits).parse(song).toneList.size());
+
+        assertLimitExceeded(new ParseLimits(song.length() - 1, 17, 5, 1, 9.0f), song,
+            ParseLimits.Limit.INPUT_LENGTH);
+        assertLimitExceeded(new ParseLimits(song.length(), 16, 5, 1, 9.0f), song, ParseLimits.Limit.TONE_COUNT);
+        assertLimitExceeded(new ParseLimits(song.length(), 17, 4, 1, 9.0f), song, ParseLimits.Limit.NAME_LENGTH);
+        assertLimitExceeded(new ParseLimits(song.length(), 17, 5, 0, 9.0f), song, ParseLimits.Limit.CONTROL_PAIRS);
+        assertLimitExceeded(new ParseLimits(song.length(), 17, 5, 1, 8.9f), song, ParseLimits.Limit.DURATION);
+    }
+
+    @Test
+    public void testDurationLimitUsesFinalTempo()
+        throws ParseException
+    {
+        // Four quarter notes take 4 seconds at the initial tempo, but 8 seconds at the final tempo
+        assertLimitExceeded(new ParseLimits(100, 100, 100, 100, 5.0f), "name:b=60:c,c,c,c,b=30",
+            ParseLimits.Limit.DURATION);
+
+        // 21 quarter notes would take 42 seconds at the initial tempo, but only 4.2 seconds at the final tempo
+        StringBuilder song = new StringBuilder("t:d=4,o=5,b=30:");
+        for (int i = 0; i < 20; i++) {
+            song.append("c,");
+        }
+        song.append("b=300,c");
+        ToneSequence seq = new RTTTLParser(new ParseLimits(1000, 100, 100, 100, 30.0f)).parse(song.toString());
+        Assert.assertEquals(new RTTTLParser().parse(song.toString()), seq);
+        Assert.assertEquals(300, seq.beatsPerMinute);
+    }
+
+    @Test
+    public void testInvalidLimits() {
+        try {
+            new ParseLimits(-1, 1, 1, 1, 1.0f);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    private static void assertLimitExceeded(ParseLimits limits, String str, ParseLimits.Limit limit) {
+        try {
+            new RTTTLParser(limits).parse(str);
+            Assert.fail("Should have exceeded limit " + limit);
+        } catch (ParseLimitExceededException e) {
+            Assert.assertEquals(limit, e.getLimit());
+        } catch (ParseException e) {
+            Assert.fail("Should have thrown ParseLimitExceededException but got " + e);
+        }
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit tests for RenderCache
+ */
+public class RenderCacheTest
+{
+    private static short[] toArray(ShortBuffer buffer) {
+        short[] samples = new short[buffer.remaining()];
+        buffer.get(samples);
+        return samples;
+    }
+
+    @Test
+    public void testHitsAndMisses()
+        throws ParseException
+    {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            RenderCache cache = new RenderCache(1L << 20, offHeap);
+            ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+            ToneSequence seq = new RTTTLParser().parse("one:d=8,b=140:c,e,g,p,2c6");
+            short[] expected = renderer.render(seq);
+
+            ShortBuffer first = cache.get(renderer, seq);
+            Assert.assertTrue(first.isReadOnly());
+            Assert.assertEquals(offHeap, first.isDirect());
+            Assert.assertArrayEquals(expected, toArray(first));
+            // Same tones under another name, and an equal renderer
+            ShortBuffer second = cache.get(new ToneRenderer(8000, Waveform.SINE),
+                new RTTTLParser().parse("two:d=4,o=6,b=140:8c,8e,8g,8p,2c6"));
+            Assert.assertArrayEquals(expected, toArray(second));
+            Assert.assertEquals(1, cache.missCount());
+            Assert.assertEquals(1, cache.hitCount());
+
+            // Any change to the settings is a different entry
+            cache.get(new ToneRenderer(8000, Waveform.SQUARE), seq);
+            cache.get(new ToneRenderer(8000, Waveform.SINE, 0.25f, ToneRenderer.DEFAULT_RAMP_SECONDS), seq);
+            cache.get(new ToneRenderer(11025, Waveform.SINE), seq);
+            cache.get(renderer, new RTTTLParser().parse("one:d=8,b=160:c,e,g,p,2c6"));
+            Assert.assertEquals(5, cache.missCount());
+            Assert.assertEquals(5, cache.size());
+            Assert.assertEquals(0, cache.evictionCount());
+        }
+    }
+
+    @Test
+    public void testEvictionBySize()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        ToneSequence hot = new RTTTLParser().parse("hot:b=120:c");
+        long bytes = 2 * renderer.sampleCount(hot);
+        RenderCache cache = new RenderCache(3 * bytes, false);
+        cache.get(renderer, hot);
+        String[] notes = {"d", "e", "f", "g", "a", "b"};
+        for (String note : notes) {
+            cache.get(renderer, new RTTTLParser().parse("cold:b=120:" + note));
+            // Keep the hot tune referenced
+            cache.get(renderer, hot);
+            Assert.assertTrue(cache.residentBytes() <= 3 * bytes);
+        }
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(4, cache.evictionCount());
+        Assert.assertEquals(7, cache.missCount());
+        Assert.assertEquals(6, cache.hitCount());
+
+        // A tune larger than the cache is returned but not kept
+        ToneSequence big = new RTTTLParser().parse("big:b=120:1c,1d");
+        Assert.assertEquals(2 * renderer.sampleCount(big), 2 * cache.get(renderer, big).remaining());
+        Assert.assertEquals(3, cache.size());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.residentBytes());
+    }
+
+    @Test
+    public void testConcurrentMissesRenderOnce()
+        throws Exception
+    {
+        final RenderCache cache = new RenderCache(1L << 24, true);
+        final ToneRenderer renderer = new ToneRenderer(44100, Waveform.TRIANGLE);
+        final ToneSequence seq = new RTTTLParser().parse("long:d=1,b=60:c,d,e,f");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ShortBuffer>> results = new ArrayList<Future<ShortBuffer>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<ShortBuffer>() {
+                    @Override public ShortBuffer call() {
+                        return cache.get(renderer, seq);
+                    }
+                }));
+            }
+            short[] expected = renderer.render(seq);
+            for (Future<ShortBuffer> result : results) {
+                Assert.assertArrayEquals(expected, toArray(result.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, cache.missCount());
+        Assert.assertEquals(7, cache.hitCount());
+    }
+
+    @Test
+    public void testFailedRenderIsNotKept()
+        throws ParseException
+    {
+        RenderCache cache = new RenderCache(1L << 20, false);
+        FailingRenderer renderer = new FailingRenderer();
+        ToneSequence seq = new RTTTLParser().parse("one:d=8,b=140:c,e,g");
+        try {
+            cache.get(renderer, seq);
+            Assert.fail("Should have failed with OutOfMemoryError");
+        } catch (OutOfMemoryError e) {
+            // pass
+        }
+        Assert.assertEquals(0, cache.size());
+
+        // The next request renders again, rather than failing with the cached error
+        renderer.fail = false;
+        Assert.assertArrayEquals(new ToneRenderer(8000, Waveform.SINE).render(seq), toArray(cache.get(renderer, seq)));
+        Assert.assertEquals(2, cache.missCount());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new RenderCache(0, false);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    /**
+     * Renderer that fails with an {@link Error} until told otherwise.
+     */
+    private static class FailingRenderer extends ToneRenderer
+    {
+        volatile boolean fail = true;
+
+        FailingRenderer() {
+            super(8000, Waveform.SINE);
+        }
+
+        @Override void renderTone(Tone tone, long toneLength, long offset, short[] out, int outOffset, int count,
+            float[] block)
+        {
+            if (fail) {
+                throw new OutOfMemoryError("Simulated");
+            }
+            super.renderTone(tone, toneLength, offset, out, outOffset, count, block);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import java.util.Locale;
+
+/**
+ * Measures the speed of the synthesis inner loops for each waveform, with the scalar kernels and with
+ * {@link SynthesisKernels#INSTANCE}, and prints the speedup. Each block is filled, ramped and converted to 16-bit
+ * samples, as {@link ToneRenderer} does.
+ * <p>
+ * To measure the vectorized kernels, run it on Java 21 or later after building there, with the Java 21 classes on
+ * the class path:
+ * <pre>
+ * java --add-modules jdk.incubator.vector \
+ *     -cp target/classes/META-INF/versions/21:target/classes:target/test-classes \
+ *     com.octagonsoftware.rtttl.SynthesisBenchmark [seconds]
+ * </pre>
+ */
+public class SynthesisBenchmark
+{
+    /** Phase increment of A4 at 44100 hz */
+    private static final int INCREMENT = (int) Math.round(440.0 / 44100 * 4294967296.0);
+
+    /** Length of the rendered tone, in samples, long enough that most blocks are outside the ramps */
+    private static final long TONE_LENGTH = 44100;
+
+    private static final int RAMP = 220;
+
+    private final float[] block = new float[ToneRenderer.BLOCK_SIZE];
+
+    private final short[] out = new short[ToneRenderer.BLOCK_SIZE];
+
+    /** Accumulates output so that the loops cannot be removed */
+    private long checksum;
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        SynthesisBenchmark benchmark = new SynthesisBenchmark();
+        SynthesisKernels scalar = new SynthesisKernels();
+        SynthesisKernels kernels = SynthesisKernels.INSTANCE;
+        System.out.println("Kernels: " + (kernels.isVectorized() ? "vector" : "scalar") + ", " +
+            ToneRenderer.BLOCK_SIZE + " samples per block");
+        System.out.println(String.format(Locale.ROOT, "%-22s %14s %14s %8s", "waveform", "scalar Ms/s",
+            "kernels Ms/s", "speedup"));
+        for (Waveform waveform : Waveform.values()) {
+            // Warm up both, then measure
+            benchmark.samplesPerSecond(scalar, waveform, seconds / 2);
+            benchmark.samplesPerSecond(kernels, waveform, seconds / 2);
+            double scalarRate = benchmark.samplesPerSecond(scalar, waveform, seconds);
+            double kernelsRate = benchmark.samplesPerSecond(kernels, waveform, seconds);
+            System.out.println(String.format(Locale.ROOT, "%-22s %14.1f %14.1f %7.2fx", waveform,
+                scalarRate / 1e6, kernelsRate / 1e6, kernelsRate / scalarRate));
+        }
+        if (benchmark.checksum == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Renders blocks of a tone for about the given time, and returns the number of samples rendered per second.
+     */
+    private double samplesPerSecond(SynthesisKernels kernels, Waveform waveform, double seconds) {
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long start = System.nanoTime();
+        long samples = 0;
+        long now;
+        do {
+            for (long position = 0; position < TONE_LENGTH; position += ToneRenderer.BLOCK_SIZE) {
+                int n = (int) Math.min(ToneRenderer.BLOCK_SIZE, TONE_LENGTH - position);
+                waveform.fill(kernels, block, n, (int) (position * INCREMENT), INCREMENT);
+                kernels.applyEnvelope(block, n, position, TONE_LENGTH, RAMP);
+                kernels.toPcm16(block, 0, n, 16383.5f, out, 0);
+                checksum += out[n - 1];
+            }
+            samples += TONE_LENGTH;
+        } while ((now = System.nanoTime()) < deadline);
+        return samples * 1e9 / (now - start);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for SynthesisKernels. On JVMs where {@link SynthesisKernels#INSTANCE} is vectorized, these check that
+ * it gives the same output as the scalar kernels.
+ */
+public class SynthesisKernelsTest
+{
+    private static final SynthesisKernels SCALAR = new SynthesisKernels();
+
+    private static final SynthesisKernels KERNELS = SynthesisKernels.INSTANCE;
+
+    private final Random random = new Random(26);
+
+    @Test
+    public void testFill() {
+        for (int trial = 0; trial < 1000; trial++) {
+            int from = random.nextInt(8);
+            int to = from + random.nextInt(ToneRenderer.BLOCK_SIZE);
+            int phase = random.nextInt();
+            // Small increments, as for low notes, and any increment, including ones that wrap
+            int increment = trial % 2 == 0 ? random.nextInt(1 << 24) : random.nextInt();
+            float[] expected = new float[to];
+            float[] actual = new float[to];
+
+            SCALAR.fillSquare(expected, from, to, phase, increment);
+            KERNELS.fillSquare(actual, from, to, phase, increment);
+            Assert.assertArrayEquals(expected, actual, 0.0f);
+
+            SCALAR.fillTriangle(expected, from, to, phase, increment);
+            KERNELS.fillTriangle(actual, from, to, phase, increment);
+            Assert.assertArrayEquals(expected, actual, 0.0f);
+
+            SCALAR.fillSawtooth(expected, from, to, phase, increment);
+            KERNELS.fillSawtooth(actual, from, to, phase, increment);
+            Assert.assertArrayEquals(expected, actual, 0.0f);
+        }
+    }
+
+    @Test
+    public void testEnvelope() {
+        for (int trial = 0; trial < 1000; trial++) {
+            int count = 1 + random.nextInt(ToneRenderer.BLOCK_SIZE);
+            int ramp = 1 + random.nextInt(trial % 2 == 0 ? 64 : 4096);
+            long toneLength = 2L * ramp + random.nextInt(1000) + (trial % 5 == 0 ? 1L << 40 : 0);
+            // Blocks that start before, within and after the ramps
+            long position;
+            switch (trial % 3) {
+                case 0:
+                    position = random.nextInt(ramp + 1);
+                    break;
+                case 1:
+                    position = Math.max(0, toneLength - ramp - random.nextInt(2 * ramp + count));
+                    break;
+                default:
+                    position = (long) (random.nextDouble() * toneLength);
+                    break;
+            }
+            float[] expected = new float[count];
+            for (int i = 0; i < count; i++) {
+                expected[i] = random.nextFloat() * 2.0f - 1.0f;
+            }
+            float[] actual = expected.clone();
+            SCALAR.applyEnvelope(expected, count, position, toneLength, ramp);
+            KERNELS.applyEnvelope(actual, count, position, toneLength, ramp);
+            Assert.assertArrayEquals(expected, actual, 0.0f);
+        }
+    }
+
+    @Test
+    public void testToPcm16() {
+        for (int trial = 0; trial < 1000; trial++) {
+            int from = random.nextInt(8);
+            int to = from + 1 + random.nextInt(ToneRenderer.BLOCK_SIZE);
+            float[] block = new float[to];
+            for (int i = 0; i < to; i++) {
+                block[i] = random.nextFloat() * 2.0f - 1.0f;
+            }
+            block[from] = 1.0f;
+            float gain = random.nextFloat() * Short.MAX_VALUE;
+            short[] expected = new short[to - from + 3];
+            short[] actual = new short[to - from + 3];
+            SCALAR.toPcm16(block, from, to, gain, expected, 3);
+            KERNELS.toPcm16(block, from, to, gain, actual, 3);
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testVectorPropertyDisables() {
+        // The property is read once, so only its effect on this JVM can be checked
+        if ("false".equalsIgnoreCase(System.getProperty(SynthesisKernels.VECTOR_PROPERTY))) {
+            Assert.assertFalse(KERNELS.isVectorized());
+        }
+        Assert.assertFalse(SCALAR.isVectorized());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Unit tests for TimerTableGenerator
+ */
+public class TimerTableGeneratorTest
+{
+    private static final int[] AVR_PRESCALERS = {1, 8, 64, 256, 1024};
+
+    private static final float EPSILON = 1.0E-2f;
+
+    @Test
+    public void testSixteenBitTimer() {
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, AVR_PRESCALERS, 16);
+        TimerSetting setting = generator.settingForNote(Note.A4);
+        Assert.assertEquals(0, setting.prescalerIndex);
+        Assert.assertEquals(1, setting.prescaler);
+        Assert.assertEquals(36363, setting.top);
+        Assert.assertEquals(18182, setting.compare);
+        Assert.assertEquals(16000000.0f / 36364, setting.hz, EPSILON);
+        Assert.assertTrue(Math.abs(setting.errorCents) < 0.1f);
+    }
+
+    @Test
+    public void testEightBitTimer() {
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, AVR_PRESCALERS, 8);
+        TimerSetting setting = generator.settingForNote(Note.A4);
+        Assert.assertEquals(3, setting.prescalerIndex);
+        Assert.assertEquals(256, setting.prescaler);
+        Assert.assertEquals(141, setting.top);
+        Assert.assertEquals(16000000.0f / (256 * 142), setting.hz, EPSILON);
+
+        // Every note must be within the timer range
+        for (Note note : Note.values()) {
+            Assert.assertTrue(generator.settingForNote(note).top <= 255);
+        }
+    }
+
+    @Test
+    public void testGenerate()
+        throws ParseException
+    {
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, AVR_PRESCALERS, 16);
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,o=4,b=120:a,8p,2c5.");
+        List<TimerSetting> settings = generator.generate(seq);
+        Assert.assertEquals(3, settings.size());
+        Assert.assertEquals(500, settings.get(0).durationMillis);
+        Assert.assertEquals(220, settings.get(0).periods());
+        Assert.assertTrue(settings.get(1).isRest());
+        Assert.assertEquals(250, settings.get(1).durationMillis);
+        Assert.assertEquals(1500, settings.get(2).durationMillis);
+        Assert.assertEquals(generator.settingForNote(Note.C5).top, settings.get(2).top);
+    }
+
+    @Test
+    public void testToByteArray()
+        throws ParseException
+    {
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, AVR_PRESCALERS, 16);
+        List<TimerSetting> settings = generator.generate(new RTTTLParser().parse("name:o=4,b=120:a,p"));
+        byte[] bytes = generator.toByteArray(settings);
+        Assert.assertArrayEquals(new byte[] {
+            0, (byte) 0x0B, (byte) 0x8E, (byte) 0x06, (byte) 0x47, (byte) 0xF4, 0x01,
+            (byte) 0xFF, 0, 0, 0, 0, (byte) 0xF4, 0x01
+        }, bytes);
+    }
+
+    @Test
+    public void testToCHeader()
+        throws ParseException
+    {
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, AVR_PRESCALERS, 16);
+        List<TimerSetting> settings = generator.generate(new RTTTLParser().parse("name:o=4,b=120:a,p"));
+        String header = generator.toCHeader("melody", settings);
+        Assert.assertTrue(header.contains("#define MELODY_LENGTH 2"));
+        Assert.assertTrue(header.contains("static const uint16_t melody[][4] = {"));
+        Assert.assertTrue(header.contains("{ 0, 36363, 18182, 500 },"));
+        Assert.assertTrue(header.contains("{ 255, 0, 0, 500 },"));
+
+        Assert.assertTrue(generator.toCHeader("_tune2", settings).contains("#define _TUNE2_LENGTH 2"));
+        for (String arrayName : new String[] {"", "2tune", "my-tune", "tune[0]", "t\u00e9"}) {
+            try {
+                generator.toCHeader(arrayName, settings);
+                Assert.fail("Should have failed with IllegalArgumentException for " + arrayName);
+            } catch (IllegalArgumentException e) {
+                // pass
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new TimerTableGenerator(16000000, new int[0], 16);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new TimerTableGenerator(16000000, AVR_PRESCALERS, 17);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
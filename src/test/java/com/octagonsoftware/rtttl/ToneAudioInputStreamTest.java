@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Unit tests for ToneAudioInputStream
+ */
+public class ToneAudioInputStreamTest
+{
+    private static final String SONG = "name:d=8,o=5,b=160:c,e,g,p,2c6,16b,a.";
+
+    @Test
+    public void testFormat()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(22050, Waveform.SINE);
+        ToneSequence seq = new RTTTLParser().parse(SONG);
+        ToneAudioInputStream in = new ToneAudioInputStream(renderer, seq);
+        AudioFormat format = in.getFormat();
+        Assert.assertEquals(22050.0f, format.getSampleRate(), 0.0f);
+        Assert.assertEquals(16, format.getSampleSizeInBits());
+        Assert.assertEquals(1, format.getChannels());
+        Assert.assertFalse(format.isBigEndian());
+        Assert.assertEquals(renderer.sampleCount(seq), in.getFrameLength());
+    }
+
+    @Test
+    public void testReadMatchesRender()
+        throws ParseException, IOException
+    {
+        ToneRenderer renderer = new ToneRenderer(22050, Waveform.SINE);
+        ToneSequence seq = new RTTTLParser().parse(SONG);
+        byte[] expected = toBytes(renderer.render(seq));
+
+        ToneAudioInputStream in = new ToneAudioInputStream(renderer, seq);
+        Assert.assertEquals(expected.length, in.available());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1001 * 2];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        Assert.assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void testSkip()
+        throws ParseException, IOException
+    {
+        ToneRenderer renderer = new ToneRenderer(22050, Waveform.TRIANGLE);
+        ToneSequence seq = new RTTTLParser().parse(SONG);
+        byte[] expected = toBytes(renderer.render(seq));
+
+        ToneAudioInputStream in = new ToneAudioInputStream(renderer, seq);
+        byte[] buffer = new byte[100];
+        Assert.assertEquals(100, in.read(buffer));
+        Assert.assertEquals(20000, in.skip(20000));
+        Assert.assertEquals(100, in.read(buffer));
+        for (int i = 0; i < buffer.length; i++) {
+            Assert.assertEquals(expected[20100 + i], buffer[i]);
+        }
+        long remaining = expected.length - 20200;
+        Assert.assertEquals(remaining, in.skip(expected.length));
+        Assert.assertEquals(-1, in.read(buffer));
+    }
+
+    private static byte[] toBytes(short[] samples) {
+        byte[] result = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            result[2 * i] = (byte) samples[i];
+            result[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Random;
+
+/**
+ * Unit tests for ToneQuantiser
+ */
+public class ToneQuantiserTest
+{
+    @Test
+    public void testExactTempo()
+        throws ParseException
+    {
+        // Mostly quarter notes at 140 bpm, which also fit 35 and 70 bpm exactly as shorter durations
+        float quarter = 60.0f / 140;
+        float[] hz = {Note.C5.hz, Note.E5.hz, 0.0f, Note.G5.hz, Note.C6.hz};
+        float[] seconds = {quarter, quarter * 0.75f, quarter, quarter, quarter * 2};
+        ToneSequence seq = new ToneQuantiser().quantise("test", hz, seconds);
+        Assert.assertEquals(140, seq.beatsPerMinute);
+        Assert.assertEquals(new RTTTLParser().parse("test:d=4,o=5,b=140:c,8e.,p,g,2c6").toneList, seq.toneList);
+    }
+
+    @Test
+    public void testMergeAndSplit()
+        throws ParseException
+    {
+        ToneQuantiser quantiser = new ToneQuantiser();
+        quantiser.setCandidateBeatsPerMinute(120);
+        // Repeated frames of the same pitch, slightly off, and a glitch too short to keep
+        float[] hz = {440.0f, 441.0f, 439.0f, 880.0f, 523.0f, 0.0f};
+        float[] seconds = {0.25f, 0.125f, 0.125f, 0.01f, 5.0f, 0.5f};
+        ToneSequence seq = quantiser.quantise("test", hz, seconds);
+        Assert.assertEquals(120, seq.beatsPerMinute);
+        // 5 s at 120 bpm is 10 beats: a dotted whole and a whole note
+        Assert.assertEquals(new RTTTLParser().parse("test:d=4,o=5,b=120:a4,1c.,1c,p").toneList, seq.toneList);
+    }
+
+    @Test
+    public void testMostlyDottedRoundTrip()
+        throws ParseException
+    {
+        ToneQuantiser quantiser = new ToneQuantiser();
+        quantiser.setCandidateBeatsPerMinute(60);
+        float[] hz = {Note.A4.hz, Note.B4.hz, Note.C5.hz, Note.A4.hz};
+        float[] seconds = {1.5f, 1.5f, 1.5f, 1.0f};
+        ToneSequence seq = quantiser.quantise("x", hz, seconds);
+        // The default duration cannot be dotted, so the dotted quarters count as quarters
+        Assert.assertEquals(Duration.QUARTER, seq.defaultDuration);
+        Assert.assertEquals(seq, new RTTTLParser().parse(new RTTTLEncoder().encode(seq)));
+    }
+
+    @Test
+    public void testNoisyTimingFindsTempo() {
+        Random random = new Random(7);
+        int count = 2000;
+        float[] hz = new float[count];
+        float[] seconds = new float[count];
+        float beat = 60.0f / 100;
+        float[] beats = {0.5f, 1.0f, 1.5f, 2.0f, 0.25f};
+        for (int i = 0; i < count; i++) {
+            hz[i] = Note.findNoteFromSemitone(60 + random.nextInt(24)).hz;
+            seconds[i] = beats[random.nextInt(beats.length)] * beat * (1.0f + 0.02f * (float) random.nextGaussian());
+        }
+        ToneSequence seq = new ToneQuantiser().quantise("noisy", hz, seconds);
+        Assert.assertEquals(100, seq.beatsPerMinute);
+        Assert.assertTrue(seq.toneList.size() >= count * 0.95);
+    }
+
+    @Test
+    public void testRange() {
+        ToneQuantiser quantiser = new ToneQuantiser();
+        float[] hz = {Note.A4.hz, Note.B4.hz, Note.C5.hz};
+        float[] seconds = {1.0f, 1.0f, 1.0f};
+        ToneSequence seq = quantiser.quantise("range", hz, seconds, 1, 2);
+        Assert.assertEquals(Note.B4, seq.toneList.get(0).note);
+        Assert.assertEquals(Note.C5, seq.toneList.get(seq.toneList.size() - 1).note);
+        Assert.assertEquals(0, quantiser.quantise("empty", hz, seconds, 3, 0).toneList.size());
+    }
+
+    @Test
+    public void testToneCount() {
+        Assert.assertEquals(1, ToneQuantiser.toneCount(4));
+        Assert.assertEquals(2, ToneQuantiser.toneCount(10));
+        Assert.assertEquals(1, ToneQuantiser.toneCount(192));
+        Assert.assertEquals(2, ToneQuantiser.toneCount(320));
+        Assert.assertEquals(12, ToneQuantiser.toneCount(192 * 10 + 36));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        ToneQuantiser quantiser = new ToneQuantiser();
+        try {
+            quantiser.quantise("x", new float[] {440.0f}, new float[] {0.0f});
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            quantiser.quantise("x", new float[] {440.0f}, new float[] {1.0f, 1.0f});
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            quantiser.setCandidateBeatsPerMinute();
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
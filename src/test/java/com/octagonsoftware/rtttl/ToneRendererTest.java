@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for ToneRenderer
+ */
+public class ToneRendererTest
+{
+    @Test
+    public void testSampleCount()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,b=60:c,2d,8e.,p");
+        // 1 + 2 + 0.75 + 1 beats at one beat per second
+        Assert.assertEquals(38000, renderer.sampleCount(seq));
+        Assert.assertEquals(38000, renderer.render(seq).length);
+    }
+
+    @Test
+    public void testRestIsSilent()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE);
+        short[] samples = renderer.render(new RTTTLParser().parse("name:b=120:c,p"));
+        Assert.assertEquals(8000, samples.length);
+        for (int i = 4000; i < 8000; i++) {
+            Assert.assertEquals(0, samples[i]);
+        }
+    }
+
+    @Test
+    public void testSquareWave() {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE, 1.0f, 0.0f);
+        short[] samples = new short[16];
+        // A4 has a period of just over 18 samples at 8 kHz
+        renderer.renderTone(new Tone(Note.A4, Duration.QUARTER), 8000, 0, samples, 0, samples.length,
+            new float[ToneRenderer.BLOCK_SIZE]);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Short.MAX_VALUE, samples[i]);
+        }
+        for (int i = 10; i < 16; i++) {
+            Assert.assertEquals(-Short.MAX_VALUE, samples[i]);
+        }
+    }
+
+    @Test
+    public void testAmplitudeAndEnvelope()
+        throws ParseException
+    {
+        for (Waveform waveform : Waveform.values()) {
+            ToneRenderer renderer = new ToneRenderer(44100, waveform, 0.25f, 0.01f);
+            short[] samples = renderer.render(new RTTTLParser().parse("name:b=200:c,e,g"));
+            int peak = 0;
+            for (short sample : samples) {
+                peak = Math.max(peak, Math.abs(sample));
+            }
+            Assert.assertTrue(waveform.name(), peak <= Short.MAX_VALUE / 4 + 1);
+            Assert.assertTrue(waveform.name(), peak > Short.MAX_VALUE / 5);
+            Assert.assertEquals(waveform.name(), 0, samples[0]);
+        }
+    }
+
+    @Test
+    public void testBlockBoundariesDoNotAffectOutput() {
+        ToneRenderer renderer = new ToneRenderer(44100, Waveform.TRIANGLE);
+        Tone tone = new Tone(Note.CS5, Duration.HALF);
+        float[] block = new float[ToneRenderer.BLOCK_SIZE];
+        short[] whole = new short[1000];
+        renderer.renderTone(tone, 20000, 0, whole, 0, whole.length, block);
+        short[] parts = new short[1000];
+        renderer.renderTone(tone, 20000, 0, parts, 0, 333, block);
+        renderer.renderTone(tone, 20000, 333, parts, 333, 667, block);
+        Assert.assertArrayEquals(whole, parts);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new ToneRenderer(0, Waveform.SINE);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new ToneRenderer(8000, Waveform.SINE, 1.5f, 0.0f);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SINE);
+        Assert.assertEquals(renderer, new ToneRenderer(8000, Waveform.SINE));
+        Assert.assertEquals(renderer.hashCode(), new ToneRenderer(8000, Waveform.SINE).hashCode());
+        Assert.assertNotEquals(renderer, new ToneRenderer(8001, Waveform.SINE));
+        Assert.assertNotEquals(renderer, new ToneRenderer(8000, Waveform.SQUARE));
+        Assert.assertNotEquals(renderer, new ToneRenderer(8000, Waveform.SINE, 0.4f, ToneRenderer.DEFAULT_RAMP_SECONDS));
+        Assert.assertNotEquals(renderer, new ToneRenderer(8000, Waveform.SINE, ToneRenderer.DEFAULT_AMPLITUDE, 0.0f));
+    }
+
+    @Test
+    public void testRenderRange()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(11025, Waveform.SAWTOOTH);
+        ToneSequence seq = new RTTTLParser().parse("name:d=8,o=5,b=140:c,e,g,p,2c6,16b,a.,32c,32d");
+        short[] expected = renderer.render(seq);
+        ToneTimeline timeline = new ToneTimeline(seq, 11025);
+
+        long[] starts = {0, 1, 2362, 2363, 9000, expected.length - 10};
+        for (long start : starts) {
+            short[] actual = new short[3000];
+            int count = renderer.render(timeline, start, actual, 0, actual.length);
+            Assert.assertEquals(Math.min(3000, expected.length - start), count);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals("sample " + (start + i), expected[(int) start + i], actual[i]);
+            }
+        }
+
+        Assert.assertArrayEquals(Arrays.copyOfRange(expected, 100, 150), renderer.render(seq, 100, 50));
+        Assert.assertEquals(0, renderer.render(seq, expected.length, 10).length);
+    }
+}
@@ -97,6 +97,24 @@ public class ToneSequenceTest {
         }
     }
 
+    @Test
+    public void testTranspose() {
+        ToneSequence seq = new ToneSequence("name", createToneList(), 4, Duration.EIGHTH, 100);
+        ToneSequence up = seq.transpose(14);
+        Assert.assertEquals(Note.B5, up.toneList.get(0).note);
+        Assert.assertTrue(up.toneList.get(1).isRest());
+        Assert.assertEquals(Duration.QUARTER, up.toneList.get(0).duration);
+        Assert.assertEquals(5, up.defaultOctave);
+        Assert.assertEquals(100, up.beatsPerMinute);
+        Assert.assertEquals(seq, up.transpose(-14));
+        try {
+            seq.transpose(100);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
     private List<Tone> createToneList() {
         List<Tone> result = new ArrayList<Tone>();
         result.add(new Tone(Note.A4, Duration.QUARTER));
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+
+/**
+ * Unit tests for ToneStream
+ */
+public class ToneStreamTest
+{
+    @Test
+    public void testReadMatchesRender()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(22050, Waveform.BANDLIMITED_SAWTOOTH);
+        ToneSequence seq = new RTTTLParser().parse("name:d=8,o=5,b=140:c,e,g,p,2c6,16b,a.");
+        short[] expected = renderer.render(seq);
+
+        ToneStream stream = renderer.open(seq);
+        Assert.assertEquals(expected.length, stream.length());
+        short[] actual = new short[expected.length];
+        int count;
+        while ((count = stream.read(actual, (int) stream.position(), 1000)) != -1) {
+            Assert.assertTrue(count > 0);
+        }
+        Assert.assertEquals(0, stream.remaining());
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testEmptySequence() {
+        ToneStream stream = new ToneRenderer().open(new ToneSequence("name", new ArrayList<Tone>()));
+        Assert.assertEquals(0, stream.length());
+        Assert.assertEquals(-1, stream.read(new short[10], 0, 10));
+    }
+
+    @Test
+    public void testSkip()
+        throws ParseException
+    {
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE);
+        ToneSequence seq = new RTTTLParser().parse("name:d=8,o=5,b=140:c,e,g,p,2c6,16b,a.");
+        short[] expected = renderer.render(seq);
+
+        ToneStream stream = renderer.open(seq);
+        Assert.assertEquals(3000, stream.skip(3000));
+        short[] actual = new short[500];
+        Assert.assertEquals(500, stream.read(actual, 0, actual.length));
+        for (int i = 0; i < actual.length; i++) {
+            Assert.assertEquals(expected[3000 + i], actual[i]);
+        }
+        Assert.assertEquals(expected.length - 3500, stream.skip(Long.MAX_VALUE));
+        Assert.assertEquals(-1, stream.read(actual, 0, actual.length));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+/**
+ * Unit tests for ToneTimeline
+ */
+public class ToneTimelineTest
+{
+    @Test
+    public void testBoundaries()
+        throws ParseException
+    {
+        ToneTimeline timeline = new ToneTimeline(new RTTTLParser().parse("name:d=4,b=60:c,2d,8e.,p"), 8000);
+        Assert.assertEquals(4, timeline.toneCount());
+        Assert.assertEquals(38000, timeline.length());
+        Assert.assertEquals(0, timeline.toneStart(0));
+        Assert.assertEquals(8000, timeline.toneEnd(0));
+        Assert.assertEquals(8000, timeline.toneStart(1));
+        Assert.assertEquals(24000, timeline.toneStart(2));
+        Assert.assertEquals(30000, timeline.toneStart(3));
+        Assert.assertEquals(38000, timeline.toneEnd(3));
+    }
+
+    @Test
+    public void testToneIndexAt()
+        throws ParseException
+    {
+        ToneTimeline timeline = new ToneTimeline(new RTTTLParser().parse("name:d=4,b=60:c,2d,8e.,p"), 8000);
+        Assert.assertEquals(-1, timeline.toneIndexAt(-1));
+        Assert.assertEquals(0, timeline.toneIndexAt(0));
+        Assert.assertEquals(0, timeline.toneIndexAt(7999));
+        Assert.assertEquals(1, timeline.toneIndexAt(8000));
+        Assert.assertEquals(2, timeline.toneIndexAt(29999));
+        Assert.assertEquals(3, timeline.toneIndexAt(30000));
+        Assert.assertEquals(3, timeline.toneIndexAt(37999));
+        Assert.assertEquals(-1, timeline.toneIndexAt(38000));
+    }
+}
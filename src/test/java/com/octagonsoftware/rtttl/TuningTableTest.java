@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+/**
+ * Unit tests for TuningTable
+ */
+public class TuningTableTest
+{
+    private static final float EPSILON = 0.01f;
+
+    private static double cents(float hz, float referenceHz) {
+        return 1200.0 * Math.log(hz / referenceHz) / Math.log(2);
+    }
+
+    @Test
+    public void testStandardMatchesNote() {
+        for (Note note : Note.values()) {
+            Assert.assertEquals(note.name(), note.hz, TuningTable.STANDARD.hz(note), 0.0f);
+        }
+        for (float hz = 10.0f; hz < 10000.0f; hz *= 1.013f) {
+            Assert.assertEquals(Float.toString(hz), Note.findClosestNote(hz), TuningTable.STANDARD.findClosestNote(hz));
+        }
+    }
+
+    @Test
+    public void testReferencePitch() {
+        TuningTable table = new TuningTable(432.0f);
+        Assert.assertEquals(432.0f, table.hz(Note.A4), EPSILON);
+        Assert.assertEquals(864.0f, table.hz(Note.A5), EPSILON);
+        Assert.assertEquals(Note.A4.hz * 432.0f / 440.0f, table.hz(Note.C5) * Note.A4.hz / Note.C5.hz, EPSILON);
+        Assert.assertEquals(Note.A4, table.findClosestNote(432.0f));
+        Assert.assertEquals(Note.A4, Note.findClosestNote(440.0f, table));
+        Assert.assertEquals(Note.AS4, Note.findClosestNote(460.0f, table));
+        Assert.assertEquals(Note.C0, table.findClosestNote(0.0f));
+        Assert.assertEquals(Note.B8, table.findClosestNote(99999.0f));
+    }
+
+    @Test
+    public void testTemperaments() {
+        TuningTable just = new TuningTable(440.0f, TuningTable.Temperament.JUST, 0, 0.0f);
+        // The tonic keeps its equal tempered frequency
+        Assert.assertEquals(Note.C4.hz, just.hz(Note.C4), EPSILON);
+        Assert.assertEquals(Note.C4.hz * 5 / 4, just.hz(Note.E4), EPSILON);
+        Assert.assertEquals(Note.C4.hz * 3 / 2, just.hz(Note.G4), EPSILON);
+        Assert.assertEquals(Note.C4.hz * 5 / 3, just.hz(Note.A4), EPSILON);
+        Assert.assertEquals(Note.C4.hz * 5 / 2, just.hz(Note.E5), EPSILON);
+
+        TuningTable pythagorean = new TuningTable(440.0f, TuningTable.Temperament.PYTHAGOREAN, 9, 0.0f);
+        Assert.assertEquals(440.0f, pythagorean.hz(Note.A4), EPSILON);
+        Assert.assertEquals(440.0f * 3 / 2, pythagorean.hz(Note.E5), EPSILON);
+        Assert.assertEquals(440.0f * 81 / 64, pythagorean.hz(Note.CS5), EPSILON);
+        Assert.assertEquals(440.0f * 27 / 32, pythagorean.hz(Note.FS4), EPSILON);
+
+        TuningTable detuned = new TuningTable(440.0f, TuningTable.Temperament.EQUAL, 0, -25.0f);
+        for (Note note : Note.values()) {
+            Assert.assertEquals(note.name(), -25.0, cents(detuned.hz(note), note.hz), 0.001);
+        }
+    }
+
+    @Test
+    public void testRenderer()
+        throws ParseException
+    {
+        ToneSequence seq = new RTTTLParser().parse("name:d=4,o=5,b=120:a,c6");
+        ToneRenderer standard = new ToneRenderer(8000, Waveform.SINE);
+        Assert.assertEquals(TuningTable.STANDARD, standard.tuning);
+        Assert.assertArrayEquals(standard.render(seq), new ToneRenderer(8000, Waveform.SINE,
+            ToneRenderer.DEFAULT_AMPLITUDE, ToneRenderer.DEFAULT_RAMP_SECONDS, new TuningTable(440.0f)).render(seq));
+
+        // A tune in the standard tuning renders the same as the same tune a semitone up, detuned by -100 cents
+        TuningTable down = new TuningTable(440.0f, TuningTable.Temperament.EQUAL, 0, -100.0f);
+        ToneRenderer renderer = new ToneRenderer(8000, Waveform.SQUARE, 0.5f, 0.0f, down);
+        Assert.assertFalse(renderer.equals(new ToneRenderer(8000, Waveform.SQUARE, 0.5f, 0.0f)));
+        short[] expected = new ToneRenderer(8000, Waveform.SQUARE, 0.5f, 0.0f)
+            .render(new RTTTLParser().parse("name:d=4,o=5,b=120:g#,b"));
+        short[] actual = renderer.render(seq);
+        int differences = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                differences++;
+            }
+        }
+        // Rounding of the phase increments may move a few edges by a sample
+        Assert.assertTrue(differences < expected.length / 100);
+    }
+
+    @Test
+    public void testTimerTable() {
+        int[] prescalers = {1, 8, 64, 256, 1024};
+        TuningTable table = new TuningTable(442.0f);
+        TimerTableGenerator generator = new TimerTableGenerator(16000000, prescalers, 16, table);
+        Assert.assertEquals(442.0f, generator.settingForNote(Note.A4).hz, 0.1f);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new TuningTable(0.0f);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new TuningTable(440.0f, TuningTable.Temperament.JUST, 12, 0.0f);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new TuningTable(440.0f, TuningTable.Temperament.EQUAL, 0, Float.NaN);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new ToneRenderer(8000, Waveform.SINE, 0.5f, 0.0f, null);
+            Assert.fail("Should have failed with IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2017 Octagon Software, LLC
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.octagonsoftware.rtttl.cli;
+
+import com.octagonsoftware.rtttl.MidiReader;
+import com.octagonsoftware.rtttl.RTTTLParser;
+import com.octagonsoftware.rtttl.ToneSequence;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for BatchConverter
+ */
+public class BatchConverterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String text)
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private File createInputs()
+        throws IOException
+    {
+        File input = folder.newFolder("in");
+        write(new File(input, "one.rtttl"), "one:d=4,o=5,b=100:c,e,g\n");
+        write(new File(input, "sub/two.txt"), " two:d=8:c6,p,c6\n\n");
+        write(new File(input, "sub/bad.rtx"), "bad:x");
+        write(new File(input, "sub/ignored.md"), "not a tune");
+        return input;
+    }
+
+    @Test
+    public void testConvertTree()
+        throws Exception
+    {
+        File input = createInputs();
+        File output = new File(folder.getRoot(), "out");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = BatchConverter.run(new String[] {"-j", "2", "-o", output.getPath(), input.getPath()},
+            new PrintStream(err, true));
+        Assert.assertEquals(1, status);
+
+        Assert.assertEquals("one:o=5,b=100:c,e,g\n", read(new File(output, "one.rtttl")));
+        Assert.assertEquals(new RTTTLParser().parse("two:d=8:c6,p,c6"),
+            new RTTTLParser().parse(read(new File(output, "sub/two.rtttl")).trim()));
+        Assert.assertFalse(new File(output, "sub/bad.rtttl").exists());
+        Assert.assertFalse(new File(output, "sub/ignored.rtttl").exists());
+        String report = err.toString("UTF-8");
+        Assert.assertTrue(report, report.contains("bad.rtx"));
+        Assert.assertTrue(report, report.contains("3/3 files (1 failed, 0 skipped)"));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint()
+        throws Exception
+    {
+        File input = createInputs();
+        File output = new File(folder.getRoot(), "out");
+        // A previous run converted one file, and was stopped while recording another
+        File checkpoint = new File(output, BatchConverter.DEFAULT_CHECKPOINT_NAME);
+        BatchConverter converter = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        String header = converter.checkpointHeader() + "\n";
+        write(checkpoint, header + new File(output, "one.rtttl").getAbsolutePath() + "\n/partial/pa");
+
+        converter.convert(Collections.singletonList(input));
+        Assert.assertEquals(1, converter.skippedCount());
+        Assert.assertEquals(1, converter.convertedCount());
+        Assert.assertEquals(1, converter.failureCount());
+        Assert.assertFalse(new File(output, "one.rtttl").exists());
+        Assert.assertTrue(new File(output, "sub/two.rtttl").exists());
+        Assert.assertEquals(header + new File(output, "one.rtttl").getAbsolutePath() + "\n/partial/pa\n" +
+            new File(output, "sub/two.rtttl").getAbsolutePath() + "\n", read(checkpoint));
+
+        // Only the failed file is retried
+        converter.convert(Collections.singletonList(input));
+        Assert.assertEquals(2, converter.skippedCount());
+        Assert.assertEquals(0, converter.convertedCount());
+        Assert.assertEquals(1, converter.failureCount());
+    }
+
+    @Test
+    public void testCheckpointSettingsMismatch()
+        throws Exception
+    {
+        File input = createInputs();
+        File output = new File(folder.getRoot(), "out");
+        BatchConverter converter = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        converter.convert(Collections.singletonList(input));
+        Assert.assertEquals(2, converter.convertedCount());
+
+        BatchConverter transposed = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        transposed.setTranspose(2);
+        Assert.assertFalse(converter.checkpointHeader().equals(transposed.checkpointHeader()));
+        try {
+            transposed.convert(Collections.singletonList(input));
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+        Assert.assertEquals("one:o=5,b=100:c,e,g\n", read(new File(output, "one.rtttl")));
+
+        // A checkpoint without a complete header is started again
+        File checkpoint = new File(output, BatchConverter.DEFAULT_CHECKPOINT_NAME);
+        write(checkpoint, "# rtttl-check");
+        transposed.convert(Collections.singletonList(input));
+        Assert.assertEquals(0, transposed.skippedCount());
+        Assert.assertEquals(2, transposed.convertedCount());
+        Assert.assertEquals("one:o=5,b=100:d,f#,a\n", read(new File(output, "one.rtttl")));
+        Assert.assertTrue(read(checkpoint).startsWith(transposed.checkpointHeader() + "\n"));
+    }
+
+    @Test
+    public void testOutputCollision()
+        throws Exception
+    {
+        File input = folder.newFolder("in");
+        write(new File(input, "a.rtttl"), "a:d=4,o=5,b=100:c");
+        write(new File(input, "a.txt"), "a:d=4,o=5,b=100:e");
+        File output = new File(folder.getRoot(), "out");
+        BatchConverter converter = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        try {
+            converter.convert(Collections.singletonList(input));
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+        Assert.assertFalse(new File(output, "a.rtttl").exists());
+
+        // The same input given twice is converted once
+        File other = folder.newFolder("other");
+        File tune = new File(other, "b.rtttl");
+        write(tune, "b:d=4,o=5,b=100:c");
+        converter.convert(Arrays.asList(other, tune));
+        Assert.assertEquals(1, converter.convertedCount());
+        Assert.assertEquals(0, converter.failureCount());
+    }
+
+    @Test
+    public void testFormatsAndTransforms()
+        throws Exception
+    {
+        File input = new File(folder.getRoot(), "tune.rtttl");
+        write(input, "tune:d=4,o=5,b=120:c,e,g");
+        File output = folder.newFolder("mid");
+
+        BatchConverter converter = new BatchConverter(output, BatchConverter.Format.MIDI);
+        converter.setTranspose(2);
+        converter.setBeatsPerMinute(90);
+        converter.convert(Collections.singletonList(input));
+        InputStream in = new FileInputStream(new File(output, "tune.mid"));
+        try {
+            ToneSequence seq = new MidiReader().read(in);
+            Assert.assertEquals(new RTTTLParser().parse("tune:d=4,o=5,b=90:d,f#,a").toneList, seq.toneList);
+            Assert.assertEquals(90, seq.beatsPerMinute);
+        } finally {
+            in.close();
+        }
+
+        // Each format has its own output directory, since the checkpoint records the settings
+        output = folder.newFolder("wav");
+        converter = new BatchConverter(output, BatchConverter.Format.WAV);
+        converter.convert(Collections.singletonList(input));
+        AudioInputStream audio = AudioSystem.getAudioInputStream(new File(output, "tune.wav"));
+        try {
+            Assert.assertEquals(44100 * 3 / 2, audio.getFrameLength());
+        } finally {
+            audio.close();
+        }
+
+        output = folder.newFolder("bin");
+        converter = new BatchConverter(output, BatchConverter.Format.TIMER);
+        converter.convert(Collections.singletonList(input));
+        Assert.assertEquals(3 * 7, new File(output, "tune.bin").length());
+
+        output = folder.newFolder("rtttl");
+        converter = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        converter.setTranspose(100);
+        converter.convert(Collections.singletonList(input));
+        Assert.assertEquals(1, converter.failureCount());
+    }
+
+    @Test
+    public void testFailureRemovesTemporaryFile()
+        throws Exception
+    {
+        File input = new File(folder.getRoot(), "tune.rtttl");
+        write(input, "tune:d=4,o=5,b=120:c,e,g");
+        File output = folder.newFolder("out");
+        // A directory in the way of the output cannot be replaced
+        write(new File(output, "tune.rtttl/keep"), "");
+        BatchConverter converter = new BatchConverter(output, BatchConverter.Format.RTTTL);
+        try {
+            converter.convertFile(input, new File(output, "tune.rtttl"));
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+        Assert.assertFalse(new File(output, "tune.rtttl.part").exists());
+    }
+
+    @Test
+    public void testUsage() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Assert.assertEquals(2, BatchConverter.run(new String[0], new PrintStream(err, true)));
+        Assert.assertTrue(err.toString().contains("Usage:"));
+        Assert.assertEquals(2, BatchConverter.run(new String[] {"-f", "mp3", "-o", "x", "y"},
+            new PrintStream(new ByteArrayOutputStream(), true)));
+        Assert.assertEquals(2, BatchConverter.run(new String[] {"-o"},
+            new PrintStream(new ByteArrayOutputStream(), true)));
+    }
+}